@@ -0,0 +1,85 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * Bounded in-memory LRU cache of decoded clips, sized by PCM bytes.
+ */
+public class PcmCache {
+
+    public static final int DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static PcmCache sDefaultCache;
+
+
+    public static synchronized PcmCache getDefault() {
+        if (sDefaultCache == null) {
+            sDefaultCache = new PcmCache(DEFAULT_MAX_BYTES);
+        }
+
+        return sDefaultCache;
+    }
+
+
+    private final LruCache<String, PcmClip> mCache;
+
+
+    public PcmCache(int maxBytes) {
+        mCache = new LruCache<String, PcmClip>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, PcmClip clip) {
+                return clip.getSizeInBytes();
+            }
+        };
+    }
+
+    public PcmClip get(String key) {
+        return key != null ? mCache.get(key) : null;
+    }
+
+    /**
+     * Only complete, successfully decoded clips are kept.
+     */
+    public void put(String key, PcmClip clip) {
+        if (key != null && clip.isComplete() && !clip.isFailed()) {
+            mCache.put(key, clip);
+        }
+    }
+
+    public void remove(String key) {
+        mCache.remove(key);
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    public int getSizeInBytes() {
+        return mCache.size();
+    }
+
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+}
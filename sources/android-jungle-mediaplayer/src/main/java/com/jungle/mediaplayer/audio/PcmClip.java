@@ -0,0 +1,155 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Decoded 16 bit PCM of a clip, interleaved by channel.
+ * <p>
+ * A clip can be read while it is still being decoded: readers take a snapshot of
+ * {@link #getSamples()} and {@link #getLength()}; samples below the length never change,
+ * even when the array is replaced to grow.
+ */
+public class PcmClip {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+
+    private int mSampleRate;
+    private int mChannelCount;
+    private short[] mSamples;
+    private int mLength;
+    private long mExpectedDurationUs = -1;
+    private boolean mComplete;
+    private boolean mFailed;
+
+
+    public PcmClip() {
+        mSamples = new short[INITIAL_CAPACITY];
+    }
+
+    /**
+     * A complete clip of existing samples, which are not copied.
+     */
+    public PcmClip(short[] samples, int length, int sampleRate, int channelCount) {
+        mSamples = samples;
+        mLength = length;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mComplete = true;
+    }
+
+    public synchronized void setFormat(int sampleRate, int channelCount) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        notifyAll();
+    }
+
+    public synchronized boolean hasFormat() {
+        return mSampleRate > 0 && mChannelCount > 0;
+    }
+
+    public synchronized int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public synchronized int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public synchronized void setExpectedDurationUs(long durationUs) {
+        mExpectedDurationUs = durationUs;
+    }
+
+    public synchronized void append(ShortBuffer source) {
+        int count = source.remaining();
+        if (mLength + count > mSamples.length) {
+            mSamples = Arrays.copyOf(mSamples, Math.max(mSamples.length * 2, mLength + count));
+        }
+
+        source.get(mSamples, mLength, count);
+        mLength += count;
+        notifyAll();
+    }
+
+    /**
+     * Ends decoding. A complete clip drops its spare capacity.
+     */
+    public synchronized void finish(boolean failed) {
+        mFailed = failed;
+        mComplete = true;
+        if (!failed && mSamples.length > mLength) {
+            mSamples = Arrays.copyOf(mSamples, mLength);
+        }
+
+        notifyAll();
+    }
+
+    public synchronized boolean isComplete() {
+        return mComplete;
+    }
+
+    public synchronized boolean isFailed() {
+        return mFailed;
+    }
+
+    public synchronized short[] getSamples() {
+        return mSamples;
+    }
+
+    public synchronized int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for the clip to reach {@code minLength} samples
+     * or to be complete.
+     *
+     * @return the current length.
+     */
+    public synchronized int awaitLength(int minLength, long timeoutMillis)
+            throws InterruptedException {
+
+        if (mLength < minLength && !mComplete) {
+            wait(timeoutMillis);
+        }
+
+        return mLength;
+    }
+
+    /**
+     * @return duration decoded so far, or the expected duration while still decoding.
+     */
+    public synchronized int getDurationMs() {
+        if (!mComplete && mExpectedDurationUs > 0) {
+            return (int) (mExpectedDurationUs / 1000);
+        }
+
+        if (mSampleRate <= 0 || mChannelCount <= 0) {
+            return 0;
+        }
+
+        return (int) ((long) mLength / mChannelCount * 1000 / mSampleRate);
+    }
+
+    public synchronized int getSizeInBytes() {
+        return mSamples.length * 2;
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import com.jungle.mediaplayer.base.BufferVideoInfo;
+import com.jungle.mediaplayer.base.VideoInfo;
+import com.jungle.mediaplayer.player.ByteBufferMediaDataSource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decodes the first audio track of a clip to 16 bit PCM with {@link MediaExtractor} and
+ * {@link MediaCodec}, either appending to a {@link PcmClip} as it goes, so the clip can
+ * be played before it is fully decoded, or streaming to a {@link Sink}.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+public class PcmDecoder {
+
+    public static final int DEFAULT_MAX_DURATION_MS = 5 * 60 * 1000;
+
+    private static final long DEQUEUE_TIMEOUT_US = 10 * 1000;
+
+
+    public interface Listener {
+        /**
+         * Called on the decoding thread once the PCM format is known.
+         */
+        void onFormatReady(PcmClip clip);
+    }
+
+
+    /**
+     * Receives decoded PCM on the decoding thread.
+     */
+    public interface Sink {
+        /**
+         * Called once, before any samples.
+         *
+         * @param durationUs -1 if unknown.
+         */
+        void onFormat(int sampleRate, int channelCount, long durationUs);
+
+        /**
+         * @param samples interleaved, only valid during the call.
+         */
+        void onSamples(ShortBuffer samples) throws IOException;
+    }
+
+
+    private class ClipSink implements Sink {
+
+        private final Listener mListener;
+        private long mMaxSamples;
+
+
+        ClipSink(Listener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onFormat(int sampleRate, int channelCount, long durationUs) {
+            mClip.setExpectedDurationUs(durationUs);
+            mClip.setFormat(sampleRate, channelCount);
+            mMaxSamples = (long) mMaxDurationMs * sampleRate / 1000 * channelCount;
+            if (mListener != null) {
+                mListener.onFormatReady(mClip);
+            }
+        }
+
+        @Override
+        public void onSamples(ShortBuffer samples) throws IOException {
+            mClip.append(samples);
+            if (mClip.getLength() > mMaxSamples) {
+                throw new IOException("Clip longer than " + mMaxDurationMs + "ms.");
+            }
+        }
+    }
+
+
+    private final Context mContext;
+    private final VideoInfo mVideoInfo;
+    private PcmClip mClip;
+    private int mMaxDurationMs = DEFAULT_MAX_DURATION_MS;
+    private volatile boolean mCancelled;
+
+
+    public PcmDecoder(Context context, VideoInfo videoInfo) {
+        mContext = context;
+        mVideoInfo = videoInfo;
+    }
+
+    /**
+     * @return clip of {@link #decode(Listener)}, null before.
+     */
+    public PcmClip getClip() {
+        return mClip;
+    }
+
+    /**
+     * Longer clips fail to decode to a {@link PcmClip}, they do not belong in memory.
+     */
+    public void setMaxDurationMs(int maxDurationMs) {
+        mMaxDurationMs = maxDurationMs;
+    }
+
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Decodes to a {@link PcmClip} on the calling thread. The clip is finished (as failed
+     * unless everything was decoded) whatever happens.
+     */
+    public void decode(Listener listener) throws IOException {
+        mClip = new PcmClip();
+        boolean decoded = false;
+        try {
+            decoded = decodeTo(new ClipSink(listener));
+        } finally {
+            mClip.finish(!decoded);
+        }
+    }
+
+    /**
+     * Streams PCM to {@code sink} on the calling thread, without keeping any of it.
+     *
+     * @return false if cancelled before the end.
+     */
+    public boolean decodeTo(Sink sink) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        File tempFile = null;
+        MediaCodec codec = null;
+        try {
+            tempFile = setDataSource(extractor);
+            int track = selectAudioTrack(extractor);
+            if (track < 0) {
+                throw new IOException("No audio track.");
+            }
+
+            MediaFormat format = extractor.getTrackFormat(track);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            return decodeTrack(extractor, codec, format, sink);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    // Failed before start.
+                }
+                codec.release();
+            }
+
+            extractor.release();
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return temp file to delete when done, if one was needed.
+     */
+    private File setDataSource(MediaExtractor extractor) throws IOException {
+        if (!(mVideoInfo instanceof BufferVideoInfo)) {
+            extractor.setDataSource(mContext, Uri.parse(mVideoInfo.getStreamUrl()), null);
+            return null;
+        }
+
+        BufferVideoInfo bufferInfo = (BufferVideoInfo) mVideoInfo;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            extractor.setDataSource(new ByteBufferMediaDataSource(bufferInfo.getBuffer()));
+            return null;
+        }
+
+        File file = File.createTempFile("pcm", null, mContext.getCacheDir());
+        bufferInfo.writeTo(file);
+        FileInputStream input = new FileInputStream(file);
+        try {
+            extractor.setDataSource(input.getFD());
+        } finally {
+            input.close();
+        }
+
+        return file;
+    }
+
+    private static int selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); ++i) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean decodeTrack(
+            MediaExtractor extractor, MediaCodec codec, MediaFormat trackFormat,
+            Sink sink) throws IOException {
+
+        ByteBuffer[] inputBuffers = codec.getInputBuffers();
+        ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+        boolean formatKnown = false;
+        long durationUs = trackFormat.containsKey(MediaFormat.KEY_DURATION)
+                ? trackFormat.getLong(MediaFormat.KEY_DURATION) : -1;
+
+        while (!mCancelled) {
+            if (!inputDone) {
+                int index = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (index >= 0) {
+                    int size = extractor.readSampleData(inputBuffers[index], 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(index, 0, 0, 0,
+                                MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int index = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+            if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                outputBuffers = codec.getOutputBuffers();
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                if (!formatKnown) {
+                    formatKnown = true;
+                    onFormat(codec.getOutputFormat(), durationUs, sink);
+                }
+            } else if (index >= 0) {
+                if (!formatKnown) {
+                    // Some decoders never report an output format.
+                    formatKnown = true;
+                    onFormat(trackFormat, durationUs, sink);
+                }
+
+                try {
+                    if (info.size > 0) {
+                        ByteBuffer output = outputBuffers[index];
+                        output.position(info.offset);
+                        output.limit(info.offset + info.size);
+                        sink.onSamples(
+                                output.slice().order(ByteOrder.nativeOrder()).asShortBuffer());
+                    }
+                } finally {
+                    codec.releaseOutputBuffer(index, false);
+                }
+
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static void onFormat(MediaFormat format, long durationUs, Sink sink) {
+        sink.onFormat(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), durationUs);
+    }
+}
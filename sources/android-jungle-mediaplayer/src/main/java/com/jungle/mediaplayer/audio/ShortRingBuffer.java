@@ -0,0 +1,110 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer / single-consumer ring buffer of 16 bit samples.
+ * <p>
+ * Only one thread may write and only one thread may read. Indices grow monotonically and
+ * are published with ordered writes, so neither side ever blocks the other; a full or
+ * empty buffer simply makes {@link #write} / {@link #read} transfer fewer samples.
+ */
+public class ShortRingBuffer {
+
+    private final short[] mBuffer;
+    private final int mMask;
+    private final AtomicLong mWriteIndex = new AtomicLong();
+    private final AtomicLong mReadIndex = new AtomicLong();
+
+
+    /**
+     * @param minCapacity rounded up to a power of two.
+     */
+    public ShortRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        mBuffer = new short[capacity];
+        mMask = capacity - 1;
+    }
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * @return samples readable now.
+     */
+    public int available() {
+        return (int) (mWriteIndex.get() - mReadIndex.get());
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return samples written, less than {@code count} when the buffer is full.
+     */
+    public int write(short[] source, int offset, int count) {
+        long write = mWriteIndex.get();
+        int free = mBuffer.length - (int) (write - mReadIndex.get());
+        int total = Math.min(count, free);
+        if (total <= 0) {
+            return 0;
+        }
+
+        int start = (int) write & mMask;
+        int first = Math.min(total, mBuffer.length - start);
+        System.arraycopy(source, offset, mBuffer, start, first);
+        if (first < total) {
+            System.arraycopy(source, offset + first, mBuffer, 0, total - first);
+        }
+
+        mWriteIndex.lazySet(write + total);
+        return total;
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return samples read, less than {@code count} when the buffer runs empty.
+     */
+    public int read(short[] target, int offset, int count) {
+        long read = mReadIndex.get();
+        int total = Math.min(count, (int) (mWriteIndex.get() - read));
+        if (total <= 0) {
+            return 0;
+        }
+
+        int start = (int) read & mMask;
+        int first = Math.min(total, mBuffer.length - start);
+        System.arraycopy(mBuffer, start, target, offset, first);
+        if (first < total) {
+            System.arraycopy(mBuffer, 0, target, offset + first, total - first);
+        }
+
+        mReadIndex.lazySet(read + total);
+        return total;
+    }
+
+    /**
+     * Consumer side: drops everything readable. The producer must not be writing.
+     */
+    public void clear() {
+        mReadIndex.lazySet(mWriteIndex.get());
+    }
+}
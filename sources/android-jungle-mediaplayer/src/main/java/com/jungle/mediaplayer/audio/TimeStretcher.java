@@ -0,0 +1,329 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+/**
+ * Pitch-preserving time stretch of interleaved 16 bit PCM (WSOLA).
+ * <p>
+ * Input is cut into overlapping segments; each segment is taken at its nominal position
+ * scaled by the speed, moved within a small seek window to the offset that best matches
+ * the tail of the previous segment, and cross-faded onto it. At speed 1 the seek is
+ * skipped and the output equals the input sample for sample.
+ * <p>
+ * All buffers are allocated in the constructor, processing never allocates.
+ * Not thread safe.
+ */
+public class TimeStretcher {
+
+    public static final float MIN_SPEED = 0.5f;
+    public static final float MAX_SPEED = 3f;
+
+    private static final int SEQUENCE_MS = 40;
+    private static final int SEEK_MS = 15;
+    private static final int OVERLAP_MS = 10;
+    private static final int COARSE_STEP = 4;
+
+
+    private final int mChannels;
+    private final int mSequence;
+    private final int mSeek;
+    private final int mOverlap;
+
+    private final short[] mInput;
+    private int mInputStart;
+    private int mInputEnd;
+
+    private final short[] mOutput;
+    private int mOutputStart;
+    private int mOutputEnd;
+
+    private final short[] mMid;
+    private final long[] mEnergy;
+
+    private float mSpeed = 1f;
+    private double mSkipFraction;
+    private long mInputPosition;
+    private boolean mFirst = true;
+    private boolean mFinished;
+
+
+    public TimeStretcher(int sampleRate, int channelCount) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException("Invalid PCM format.");
+        }
+
+        mChannels = channelCount;
+        mSequence = sampleRate * SEQUENCE_MS / 1000;
+        mSeek = sampleRate * SEEK_MS / 1000;
+        mOverlap = Math.max(1, sampleRate * OVERLAP_MS / 1000);
+
+        int inputFrames = Math.max(mSeek + mSequence,
+                (int) Math.ceil(MAX_SPEED * (mSequence - mOverlap)) + 1) + mSequence;
+        mInput = new short[inputFrames * channelCount];
+        mOutput = new short[(inputFrames + mSequence) * channelCount];
+        mMid = new short[mOverlap * channelCount];
+        mEnergy = new long[mSeek + mOverlap + 1];
+    }
+
+    public int getChannelCount() {
+        return mChannels;
+    }
+
+    /**
+     * Takes effect from the next segment, clamped to [{@link #MIN_SPEED}, {@link #MAX_SPEED}].
+     */
+    public void setSpeed(float speed) {
+        mSpeed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return frames of input that can be taken by {@link #putInput} now.
+     */
+    public int getInputSpace() {
+        return (mInput.length - (mInputEnd - mInputStart)) / mChannels;
+    }
+
+    /**
+     * @return frames taken, less than {@code frames} when the input buffer is full;
+     * call {@link #receiveOutput} to make room.
+     */
+    public int putInput(short[] source, int offset, int frames) {
+        if (mFinished) {
+            throw new IllegalStateException("Input already finished.");
+        }
+
+        if (mInputEnd + frames * mChannels > mInput.length) {
+            compactInput();
+        }
+
+        int count = Math.min(frames, (mInput.length - mInputEnd) / mChannels) * mChannels;
+        System.arraycopy(source, offset, mInput, mInputEnd, count);
+        mInputEnd += count;
+        return count / mChannels;
+    }
+
+    /**
+     * No more input will come, the buffered rest is flushed by {@link #receiveOutput}.
+     */
+    public void finish() {
+        mFinished = true;
+    }
+
+    /**
+     * @return frames written to {@code dest}.
+     */
+    public int receiveOutput(short[] dest, int offset, int maxFrames) {
+        int maxCount = maxFrames * mChannels;
+        while (mOutputEnd - mOutputStart < maxCount && processSegment()) {
+            // Produce until enough output, or not enough input.
+        }
+
+        int count = Math.min(maxCount, mOutputEnd - mOutputStart);
+        System.arraycopy(mOutput, mOutputStart, dest, offset, count);
+        mOutputStart += count;
+        return count / mChannels;
+    }
+
+    /**
+     * @return true if all input was finished and received.
+     */
+    public boolean isDrained() {
+        return mFinished && mInputEnd == mInputStart && mOutputEnd == mOutputStart;
+    }
+
+    /**
+     * @return input frame the next received output frame roughly corresponds to,
+     * counted from the first input frame since {@link #reset()}.
+     */
+    public long getInputPosition() {
+        long queued = (mOutputEnd - mOutputStart) / mChannels;
+        return Math.max(0, mInputPosition - (long) (queued * mSpeed));
+    }
+
+    /**
+     * Drops all buffered audio, the speed is kept.
+     */
+    public void reset() {
+        mInputStart = 0;
+        mInputEnd = 0;
+        mOutputStart = 0;
+        mOutputEnd = 0;
+        mSkipFraction = 0;
+        mInputPosition = 0;
+        mFirst = true;
+        mFinished = false;
+    }
+
+    /**
+     * @return false if there is not enough input or output space for a segment.
+     */
+    private boolean processSegment() {
+        int hop = mSequence - mOverlap;
+        int available = (mInputEnd - mInputStart) / mChannels;
+        double nominalSkip = mSkipFraction + mSpeed * hop;
+        int skip = (int) nominalSkip;
+        if (available < Math.max(mSeek + mSequence, skip)) {
+            return mFinished && flushTail();
+        }
+
+        if (mOutput.length - mOutputEnd < hop * mChannels) {
+            compactOutput();
+            if (mOutput.length - mOutputEnd < hop * mChannels) {
+                return false;
+            }
+        }
+
+        if (mFirst) {
+            // Nothing to fade from, fade the segment start onto itself.
+            System.arraycopy(mInput, mInputStart, mMid, 0, mMid.length);
+            mFirst = false;
+        }
+
+        int offset = mSpeed == 1f ? 0 : findBestOffset();
+        int start = mInputStart + offset * mChannels;
+
+        // Cross-fade the tail of the previous segment into this one.
+        int overlapCount = mOverlap * mChannels;
+        for (int frame = 0, i = 0; frame < mOverlap; ++frame) {
+            int fadeOut = mOverlap - frame;
+            for (int c = 0; c < mChannels; ++c, ++i) {
+                mOutput[mOutputEnd + i] = (short)
+                        ((mMid[i] * fadeOut + mInput[start + i] * frame) / mOverlap);
+            }
+        }
+
+        int middleCount = (mSequence - 2 * mOverlap) * mChannels;
+        System.arraycopy(mInput, start + overlapCount, mOutput, mOutputEnd + overlapCount,
+                middleCount);
+        mOutputEnd += overlapCount + middleCount;
+
+        System.arraycopy(mInput, start + overlapCount + middleCount, mMid, 0, overlapCount);
+
+        mSkipFraction = nominalSkip - skip;
+        mInputStart += skip * mChannels;
+        mInputPosition += skip;
+        return true;
+    }
+
+    /**
+     * Emits the last faded tail and the unprocessed input as is.
+     */
+    private boolean flushTail() {
+        if (mInputEnd == mInputStart) {
+            return false;
+        }
+
+        compactOutput();
+        int count = mInputEnd - mInputStart;
+        if (mOutput.length - mOutputEnd < mMid.length + count) {
+            return false;
+        }
+
+        if (mFirst) {
+            System.arraycopy(mInput, mInputStart, mOutput, mOutputEnd, count);
+            mOutputEnd += count;
+        } else {
+            System.arraycopy(mMid, 0, mOutput, mOutputEnd, mMid.length);
+            mOutputEnd += mMid.length;
+            if (count > mMid.length) {
+                System.arraycopy(mInput, mInputStart + mMid.length, mOutput, mOutputEnd,
+                        count - mMid.length);
+                mOutputEnd += count - mMid.length;
+            }
+        }
+
+        mInputPosition += count / mChannels;
+        mInputStart = mInputEnd;
+        return true;
+    }
+
+    /**
+     * Offset in [0, seek) whose overlap correlates best with the previous tail, searched
+     * coarse to fine.
+     */
+    private int findBestOffset() {
+        // Prefix sums of frame energy, for the normalization of every offset.
+        long[] energy = mEnergy;
+        energy[0] = 0;
+        for (int frame = 0, i = mInputStart; frame < mSeek + mOverlap; ++frame) {
+            long sum = 0;
+            for (int c = 0; c < mChannels; ++c, ++i) {
+                sum += mInput[i] * mInput[i];
+            }
+
+            energy[frame + 1] = energy[frame] + sum;
+        }
+
+        int best = 0;
+        double bestScore = -Double.MAX_VALUE;
+        for (int offset = 0; offset < mSeek; offset += COARSE_STEP) {
+            double score = score(offset);
+            if (score > bestScore) {
+                bestScore = score;
+                best = offset;
+            }
+        }
+
+        int from = Math.max(0, best - COARSE_STEP + 1);
+        int to = Math.min(mSeek - 1, best + COARSE_STEP - 1);
+        for (int offset = from; offset <= to; ++offset) {
+            if (offset == best) {
+                continue;
+            }
+
+            double score = score(offset);
+            if (score > bestScore) {
+                bestScore = score;
+                best = offset;
+            }
+        }
+
+        return best;
+    }
+
+    private double score(int offset) {
+        short[] input = mInput;
+        short[] mid = mMid;
+        int base = mInputStart + offset * mChannels;
+        long correlation = 0;
+        for (int i = 0; i < mid.length; ++i) {
+            correlation += mid[i] * input[base + i];
+        }
+
+        long energy = mEnergy[offset + mOverlap] - mEnergy[offset];
+        return energy > 0 ? correlation / Math.sqrt(energy) : 0;
+    }
+
+    private void compactInput() {
+        int count = mInputEnd - mInputStart;
+        System.arraycopy(mInput, mInputStart, mInput, 0, count);
+        mInputStart = 0;
+        mInputEnd = count;
+    }
+
+    private void compactOutput() {
+        int count = mOutputEnd - mOutputStart;
+        System.arraycopy(mOutput, mOutputStart, mOutput, 0, count);
+        mOutputStart = 0;
+        mOutputEnd = count;
+    }
+}
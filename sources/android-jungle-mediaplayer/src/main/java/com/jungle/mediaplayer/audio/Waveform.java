@@ -0,0 +1,152 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Downsampled min / max peaks of a clip, 8 bits each, over all channels.
+ * <p>
+ * Persisted as a small binary sidecar: magic, version, the length and modified time of
+ * the source it was computed from, the duration, then the peaks.
+ */
+public class Waveform {
+
+    private static final String TAG = "Waveform";
+
+    private static final int MAGIC = 0x4A574650; // "JWFP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int MAX_PEAK_COUNT = 1024 * 1024;
+
+
+    private final byte[] mPeaks;
+    private final int mDurationMs;
+
+
+    /**
+     * @param peaks min and max of each peak, interleaved; not copied.
+     */
+    public Waveform(byte[] peaks, int durationMs) {
+        if ((peaks.length & 1) != 0) {
+            throw new IllegalArgumentException("Peaks must be min / max pairs.");
+        }
+
+        mPeaks = peaks;
+        mDurationMs = durationMs;
+    }
+
+    public int getPeakCount() {
+        return mPeaks.length / 2;
+    }
+
+    /**
+     * @return in [-1, 1].
+     */
+    public float getMin(int index) {
+        return mPeaks[index * 2] / 128f;
+    }
+
+    /**
+     * @return in [-1, 1].
+     */
+    public float getMax(int index) {
+        return mPeaks[index * 2 + 1] / 128f;
+    }
+
+    public int getDurationMs() {
+        return mDurationMs;
+    }
+
+    public int getSizeInBytes() {
+        return mPeaks.length;
+    }
+
+    /**
+     * @param sourceLength / sourceModified identify the source, {@link #readFrom} rejects
+     * the sidecar once they change.
+     */
+    public void writeTo(File file, long sourceLength, long sourceModified) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), HEADER_SIZE + mPeaks.length));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(sourceLength);
+            output.writeLong(sourceModified);
+            output.writeInt(mDurationMs);
+            output.writeInt(getPeakCount());
+            output.write(mPeaks);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * @return null if missing, corrupt, or computed from another version of the source.
+     */
+    public static Waveform readFrom(File file, long sourceLength, long sourceModified) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                return read(input, sourceLength, sourceModified);
+            } finally {
+                input.close();
+            }
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Read waveform failed.", e);
+            return null;
+        }
+    }
+
+    private static Waveform read(
+            DataInputStream input, long sourceLength, long sourceModified) throws IOException {
+
+        if (input.readInt() != MAGIC || input.readInt() != VERSION
+                || input.readLong() != sourceLength || input.readLong() != sourceModified) {
+            return null;
+        }
+
+        int durationMs = input.readInt();
+        int count = input.readInt();
+        if (count < 0 || count > MAX_PEAK_COUNT) {
+            return null;
+        }
+
+        byte[] peaks = new byte[count * 2];
+        input.readFully(peaks);
+        return new Waveform(peaks, durationMs);
+    }
+}
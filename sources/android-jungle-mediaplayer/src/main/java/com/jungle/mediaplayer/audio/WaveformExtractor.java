@@ -0,0 +1,147 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Computes a {@link Waveform} in one streaming pass over PCM, in memory fixed by the
+ * peak count whatever the clip length.
+ * <p>
+ * With a known duration each peak covers {@code duration / peakCount}, and frames past
+ * the duration (e.g. AAC priming / padding) are folded into the last peak; otherwise peaks
+ * start one frame wide and adjacent pairs are merged whenever the buffer fills up, so
+ * the result has between half and all of the requested peaks.
+ */
+public class WaveformExtractor implements PcmDecoder.Sink {
+
+    private final int mMaxPeakCount;
+    private final short[] mMins;
+    private final short[] mMaxs;
+    private int mPeakCount;
+    private int mChannelCount = 1;
+    private int mSampleRate;
+    private long mFramesPerPeak = 1;
+    private boolean mDurationKnown;
+    private long mFrameInPeak;
+    private long mFrames;
+    private short mMin;
+    private short mMax;
+
+
+    public WaveformExtractor(int peakCount) {
+        if (peakCount < 2) {
+            throw new IllegalArgumentException("Need at least 2 peaks.");
+        }
+
+        mMaxPeakCount = peakCount;
+        mMins = new short[peakCount];
+        mMaxs = new short[peakCount];
+        resetPeak();
+    }
+
+    @Override
+    public void onFormat(int sampleRate, int channelCount, long durationUs) {
+        mSampleRate = sampleRate;
+        mChannelCount = Math.max(1, channelCount);
+        if (durationUs > 0 && sampleRate > 0) {
+            long frames = durationUs * sampleRate / 1000000;
+            mFramesPerPeak = Math.max(1, (frames + mMaxPeakCount - 1) / mMaxPeakCount);
+            mDurationKnown = true;
+        }
+    }
+
+    @Override
+    public void onSamples(ShortBuffer samples) {
+        int channels = mChannelCount;
+        int end = samples.limit() - channels + 1;
+        for (int i = samples.position(); i < end; i += channels) {
+            for (int c = 0; c < channels; ++c) {
+                short sample = samples.get(i + c);
+                if (sample < mMin) {
+                    mMin = sample;
+                }
+                if (sample > mMax) {
+                    mMax = sample;
+                }
+            }
+
+            ++mFrames;
+            if (++mFrameInPeak >= mFramesPerPeak) {
+                addPeak();
+            }
+        }
+    }
+
+    public Waveform getWaveform() {
+        if (mFrameInPeak > 0) {
+            addPeak();
+        }
+
+        byte[] peaks = new byte[mPeakCount * 2];
+        for (int i = 0; i < mPeakCount; ++i) {
+            peaks[i * 2] = (byte) (mMins[i] >> 8);
+            peaks[i * 2 + 1] = (byte) (mMaxs[i] >> 8);
+        }
+
+        int durationMs = mSampleRate > 0 ? (int) (mFrames * 1000 / mSampleRate) : 0;
+        return new Waveform(peaks, durationMs);
+    }
+
+    private void addPeak() {
+        if (mPeakCount == mMaxPeakCount) {
+            if (mDurationKnown) {
+                int last = mPeakCount - 1;
+                mMins[last] = (short) Math.min(mMins[last], mMin);
+                mMaxs[last] = (short) Math.max(mMaxs[last], mMax);
+                resetPeak();
+                return;
+            }
+
+            mergePairs();
+        }
+
+        mMins[mPeakCount] = mMin;
+        mMaxs[mPeakCount] = mMax;
+        ++mPeakCount;
+        resetPeak();
+    }
+
+    private void mergePairs() {
+        int count = mPeakCount / 2;
+        for (int i = 0; i < count; ++i) {
+            mMins[i] = (short) Math.min(mMins[i * 2], mMins[i * 2 + 1]);
+            mMaxs[i] = (short) Math.max(mMaxs[i * 2], mMaxs[i * 2 + 1]);
+        }
+
+        if ((mPeakCount & 1) != 0) {
+            mMins[count] = mMins[mPeakCount - 1];
+            mMaxs[count] = mMaxs[mPeakCount - 1];
+            ++count;
+        }
+
+        mPeakCount = count;
+        mFramesPerPeak *= 2;
+    }
+
+    private void resetPeak() {
+        mFrameInPeak = 0;
+        mMin = Short.MAX_VALUE;
+        mMax = Short.MIN_VALUE;
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.RequiresApi;
+import android.support.v4.util.LruCache;
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.base.VideoInfo;
+import com.jungle.mediaplayer.cache.CacheKeys;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waveforms of audio clips, e.g. recorded voice messages, for drawing in lists.
+ * <p>
+ * A waveform is computed once in a streaming pass on a background thread, persisted as a
+ * sidecar and kept in an LRU memory cache. The sidecar of a local file sits next to it
+ * ({@code <file>.peaks}), falling back to the sidecar directory when that is not
+ * writable; other sources always use the sidecar directory. Requests of the same source
+ * are merged. Callbacks and {@link #getCached(String)} are for the main thread.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+public class WaveformService {
+
+    private static final String TAG = "WaveformService";
+
+    public static final int DEFAULT_PEAK_COUNT = 256;
+    public static final int DEFAULT_MAX_CACHE_BYTES = 256 * 1024;
+
+    private static final String SIDECAR_SUFFIX = ".peaks";
+    private static final String SIDECAR_DIR_NAME = "waveforms";
+
+    private static WaveformService sDefaultService;
+
+
+    public static synchronized WaveformService getDefault(Context context) {
+        if (sDefaultService == null) {
+            Context appContext = context.getApplicationContext();
+            sDefaultService = new WaveformService(appContext,
+                    new File(appContext.getCacheDir(), SIDECAR_DIR_NAME),
+                    DEFAULT_PEAK_COUNT, DEFAULT_MAX_CACHE_BYTES);
+        }
+
+        return sDefaultService;
+    }
+
+
+    public interface Callback {
+        void onWaveformReady(String source, Waveform waveform);
+
+        void onWaveformFailed(String source);
+    }
+
+
+    private final Context mContext;
+    private final File mSidecarDir;
+    private final int mPeakCount;
+    private final LruCache<String, Waveform> mCache;
+    private final Map<String, List<Callback>> mPending = new HashMap<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+
+
+    /**
+     * @param peakCount peaks of a waveform, whatever the clip length.
+     */
+    public WaveformService(Context context, File sidecarDir, int peakCount, int maxCacheBytes) {
+        mContext = context;
+        mSidecarDir = sidecarDir;
+        mPeakCount = peakCount;
+        mCache = new LruCache<String, Waveform>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Waveform waveform) {
+                return waveform.getSizeInBytes();
+            }
+        };
+
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "JungleMediaPlayer-Waveform-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param source file path or url.
+     * @return null if not in memory, then use {@link #load}.
+     */
+    public Waveform getCached(String source) {
+        return mCache.get(source);
+    }
+
+    /**
+     * Calls back at once if cached in memory, otherwise after reading the sidecar or
+     * computing the waveform.
+     */
+    public void load(final String source, Callback callback) {
+        Waveform waveform = mCache.get(source);
+        if (waveform != null) {
+            callback.onWaveformReady(source, waveform);
+            return;
+        }
+
+        List<Callback> callbacks = mPending.get(source);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+
+        callbacks = new ArrayList<>(2);
+        callbacks.add(callback);
+        mPending.put(source, callbacks);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Waveform waveform = loadOrCompute(source);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(source, waveform);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * The waveform is still computed and cached, only the callback is dropped; e.g. when
+     * a list item is recycled.
+     */
+    public void cancel(String source, Callback callback) {
+        List<Callback> callbacks = mPending.get(source);
+        if (callbacks != null) {
+            callbacks.remove(callback);
+        }
+    }
+
+    /**
+     * Forgets the waveform of a deleted or re-recorded clip, sidecar included.
+     */
+    public void remove(final String source) {
+        mCache.remove(source);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File localFile = getLocalFile(source);
+                if (localFile != null) {
+                    new File(localFile.getPath() + SIDECAR_SUFFIX).delete();
+                }
+
+                getSidecarInDir(source).delete();
+            }
+        });
+    }
+
+    private void onLoaded(String source, Waveform waveform) {
+        if (waveform != null) {
+            mCache.put(source, waveform);
+        }
+
+        List<Callback> callbacks = mPending.remove(source);
+        if (callbacks == null) {
+            return;
+        }
+
+        for (Callback callback : callbacks) {
+            if (waveform != null) {
+                callback.onWaveformReady(source, waveform);
+            } else {
+                callback.onWaveformFailed(source);
+            }
+        }
+    }
+
+    private Waveform loadOrCompute(String source) {
+        File localFile = getLocalFile(source);
+        long length = localFile != null ? localFile.length() : 0;
+        long modified = localFile != null ? localFile.lastModified() : 0;
+        File sidecar = localFile != null
+                ? new File(localFile.getPath() + SIDECAR_SUFFIX) : null;
+
+        Waveform waveform = sidecar != null ? Waveform.readFrom(sidecar, length, modified) : null;
+        if (waveform == null) {
+            waveform = Waveform.readFrom(getSidecarInDir(source), length, modified);
+        }
+
+        if (waveform != null) {
+            return waveform;
+        }
+
+        WaveformExtractor extractor = new WaveformExtractor(mPeakCount);
+        try {
+            new PcmDecoder(mContext, new VideoInfo(source)).decodeTo(extractor);
+        } catch (Exception e) {
+            // MediaCodec reports failures with IllegalStateException as well.
+            PlayerLog.e(TAG, "Compute waveform failed.", e);
+            return null;
+        }
+
+        waveform = extractor.getWaveform();
+        if (sidecar == null || !writeSidecar(waveform, sidecar, length, modified)) {
+            mSidecarDir.mkdirs();
+            writeSidecar(waveform, getSidecarInDir(source), length, modified);
+        }
+
+        return waveform;
+    }
+
+    /**
+     * Written to a temp file and renamed, a crash never leaves a torn sidecar.
+     */
+    private static boolean writeSidecar(
+            Waveform waveform, File sidecar, long length, long modified) {
+
+        File tempFile = new File(sidecar.getPath() + ".tmp");
+        try {
+            waveform.writeTo(tempFile, length, modified);
+            if (tempFile.renameTo(sidecar)) {
+                return true;
+            }
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Write waveform sidecar failed.", e);
+        }
+
+        tempFile.delete();
+        return false;
+    }
+
+    private File getSidecarInDir(String source) {
+        return new File(mSidecarDir, CacheKeys.hash(source) + SIDECAR_SUFFIX);
+    }
+
+    private static File getLocalFile(String source) {
+        String path = source.startsWith("file://") ? source.substring(7) : source;
+        return path.startsWith("/") ? new File(path) : null;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+/**
+ * Estimates network bandwidth from the last transfers seen, as total bits over total
+ * transfer time of a sliding window of samples. Thread-safe.
+ */
+public class BandwidthEstimator {
+
+    public static final int DEFAULT_WINDOW_SIZE = 16;
+
+    private static BandwidthEstimator sDefaultEstimator;
+
+
+    public static synchronized BandwidthEstimator getDefault() {
+        if (sDefaultEstimator == null) {
+            sDefaultEstimator = new BandwidthEstimator(DEFAULT_WINDOW_SIZE);
+        }
+
+        return sDefaultEstimator;
+    }
+
+
+    private final long[] mSampleBytes;
+    private final long[] mSampleNanos;
+    private int mCount;
+    private int mNext;
+    private long mTotalBytes;
+    private long mTotalNanos;
+
+
+    public BandwidthEstimator(int windowSize) {
+        mSampleBytes = new long[Math.max(1, windowSize)];
+        mSampleNanos = new long[mSampleBytes.length];
+    }
+
+    /**
+     * @param elapsedNanos time spent receiving {@code bytes}.
+     */
+    public synchronized void addSample(long bytes, long elapsedNanos) {
+        if (bytes <= 0 || elapsedNanos <= 0) {
+            return;
+        }
+
+        if (mCount == mSampleBytes.length) {
+            mTotalBytes -= mSampleBytes[mNext];
+            mTotalNanos -= mSampleNanos[mNext];
+        } else {
+            ++mCount;
+        }
+
+        mSampleBytes[mNext] = bytes;
+        mSampleNanos[mNext] = elapsedNanos;
+        mTotalBytes += bytes;
+        mTotalNanos += elapsedNanos;
+        mNext = (mNext + 1) % mSampleBytes.length;
+    }
+
+    /**
+     * @return estimated bandwidth in bits per second, -1 if nothing was measured yet.
+     */
+    public synchronized long getEstimate() {
+        if (mCount == 0) {
+            return -1;
+        }
+
+        return (long) (mTotalBytes * 8 * 1e9 / mTotalNanos);
+    }
+
+    public synchronized int getSampleCount() {
+        return mCount;
+    }
+
+    public synchronized void reset() {
+        mCount = 0;
+        mNext = 0;
+        mTotalBytes = 0;
+        mTotalNanos = 0;
+    }
+}
@@ -32,6 +32,11 @@ public interface BaseMediaPlayerInterface {
 
     void setVolume(float volume);
 
+    /**
+     * @param speed 1 for normal speed, the pitch is kept.
+     */
+    void setPlaybackSpeed(float speed);
+
     int getDuration();
 
     int getCurrentPosition();
@@ -0,0 +1,79 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A clip already in memory, e.g. a downloaded voice message or a just recorded clip.
+ * <p>
+ * The bytes between the buffer's position and limit are shared, not copied; they must
+ * not change while the clip is played. Its stream url is a unique "buffer://" id, so it
+ * can not be parcelled to another process.
+ */
+public class BufferVideoInfo extends VideoInfo {
+
+    public static final String URL_SCHEME = "buffer://";
+
+    private static final AtomicInteger sNextId = new AtomicInteger();
+
+
+    private final ByteBuffer mBuffer;
+
+
+    public BufferVideoInfo(ByteBuffer buffer) {
+        super(URL_SCHEME + sNextId.incrementAndGet());
+        mBuffer = buffer.slice();
+    }
+
+    public BufferVideoInfo(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @return a view of the clip bytes with its own position, from 0 to the clip size.
+     */
+    public ByteBuffer getBuffer() {
+        return mBuffer.duplicate();
+    }
+
+    public int getSize() {
+        return mBuffer.limit();
+    }
+
+    /**
+     * Writes the clip to {@code file}, for APIs that can only read files.
+     */
+    public void writeTo(File file) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            ByteBuffer buffer = getBuffer();
+            FileChannel channel = output.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            output.close();
+        }
+    }
+}
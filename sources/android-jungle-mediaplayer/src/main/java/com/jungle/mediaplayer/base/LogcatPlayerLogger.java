@@ -0,0 +1,55 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import android.util.Log;
+
+/**
+ * Writes records with a priority of at least {@code minLevel} to logcat.
+ */
+public class LogcatPlayerLogger implements PlayerLogger {
+
+    private volatile int mMinLevel;
+
+
+    public LogcatPlayerLogger(int minLevel) {
+        mMinLevel = minLevel;
+    }
+
+    public void setMinLevel(int minLevel) {
+        mMinLevel = minLevel;
+    }
+
+    public int getMinLevel() {
+        return mMinLevel;
+    }
+
+    @Override
+    public boolean isLoggable(int level) {
+        return level >= mMinLevel;
+    }
+
+    @Override
+    public void log(int level, String tag, String message, Throwable tr) {
+        if (tr != null) {
+            message = message + '\n' + Log.getStackTraceString(tr);
+        }
+
+        Log.println(level, tag, message);
+    }
+}
@@ -0,0 +1,530 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persists resume positions of videos, keyed by normalized stream url.
+ * <p>
+ * Positions live in a hash map, so lookups at play time are O(1). Updates only touch the
+ * map and are appended in batches to a memory-mapped log on a background thread. Mapped
+ * pages belong to the kernel once written, so a batch survives the process being killed
+ * without any fsync; only the updates of the last flush interval may be lost. The log is
+ * compacted to the live entries when it grows to several times their size; the new log
+ * is written and synced without holding the lock, so lookups never wait for the fsync.
+ * <p>
+ * Record layout: mark(1) keyLength(2) position(4) crc(4) key(keyLength, UTF-8). The mark
+ * is written last, so a record torn by process death is never read back.
+ */
+public class PlaybackPositionStore {
+
+    private static final String TAG = "PlaybackPositionStore";
+
+    public static final long DEFAULT_FLUSH_DELAY = 5 * 1000;
+
+    private static final String LOG_FILE_NAME = "positions.log";
+    private static final String COMPACT_FILE_NAME = "positions.log.tmp";
+    private static final int MAGIC = 0x4A505053;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte RECORD_MARK = (byte) 0xA5;
+    private static final int RECORD_HEADER_SIZE = 11;
+    private static final int MAX_KEY_LENGTH = 4096;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MIN_COMPACT_SIZE = 256 * 1024;
+    private static final int REMOVED = -1;
+
+
+    private final File mDirectory;
+    private final File mLogFile;
+    private final Map<String, Integer> mPositions = new HashMap<>();
+    private final Map<String, Integer> mPending = new LinkedHashMap<>();
+    private final Map<String, Integer> mAppendedWhileCompacting = new HashMap<>();
+    private final CRC32 mCrc = new CRC32();
+    private final ScheduledThreadPoolExecutor mExecutor;
+    private RandomAccessFile mFile;
+    private MappedByteBuffer mBuffer;
+    private int mWritePosition;
+    private int mCompactedSize;
+    private boolean mLoaded;
+    private boolean mFlushScheduled;
+    private boolean mCompacting;
+    private long mFlushDelay = DEFAULT_FLUSH_DELAY;
+    private boolean mIgnoreQuery;
+
+    private Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+
+    public PlaybackPositionStore(File directory) {
+        mDirectory = directory;
+        mLogFile = new File(directory, LOG_FILE_NAME);
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "JungleMediaPlayer-PositionStore");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        // Load in the background, so the first lookup rarely waits for disk.
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PlaybackPositionStore.this) {
+                    ensureLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Query strings are ignored in keys, e.g. when stream urls carry expiring signatures.
+     * Should be set before the store is used.
+     */
+    public synchronized void setIgnoreQuery(boolean ignoreQuery) {
+        mIgnoreQuery = ignoreQuery;
+    }
+
+    public synchronized void setFlushDelay(long delayMillis) {
+        mFlushDelay = Math.max(0, delayMillis);
+    }
+
+    /**
+     * @return saved position in milliseconds, 0 if none.
+     */
+    public synchronized int getPosition(String url) {
+        ensureLoaded();
+        String key = normalizeUrl(url, mIgnoreQuery);
+        Integer position = key != null ? mPositions.get(key) : null;
+        return position != null ? position : 0;
+    }
+
+    public int getPosition(VideoInfo videoInfo) {
+        return getPosition(getKeyUrl(videoInfo));
+    }
+
+    /**
+     * Cheap enough to be called on every progress tick, the write happens later.
+     */
+    public synchronized void setPosition(String url, int positionMillis) {
+        ensureLoaded();
+        String key = normalizeUrl(url, mIgnoreQuery);
+        if (key == null || key.length() > MAX_KEY_LENGTH) {
+            return;
+        }
+
+        int position = Math.max(0, positionMillis);
+        Integer old = mPositions.put(key, position);
+        if (old == null || old != position) {
+            mPending.put(key, position);
+            scheduleFlush();
+        }
+    }
+
+    public void setPosition(VideoInfo videoInfo, int positionMillis) {
+        setPosition(getKeyUrl(videoInfo), positionMillis);
+    }
+
+    public synchronized void remove(String url) {
+        ensureLoaded();
+        String key = normalizeUrl(url, mIgnoreQuery);
+        if (key != null && mPositions.remove(key) != null) {
+            mPending.put(key, REMOVED);
+            scheduleFlush();
+        }
+    }
+
+    public void remove(VideoInfo videoInfo) {
+        remove(getKeyUrl(videoInfo));
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return mPositions.size();
+    }
+
+    /**
+     * Writes pending updates now, e.g. when the app goes to background.
+     */
+    public void flush() {
+        Map<String, Integer> snapshot;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mPending.isEmpty() || !ensureLoaded()) {
+                return;
+            }
+
+            try {
+                appendPending();
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Write position log failed.", e);
+                closeFile();
+                return;
+            }
+
+            if (mCompacting || mWritePosition <= Math.max(MIN_COMPACT_SIZE, mCompactedSize * 4)) {
+                return;
+            }
+
+            mCompacting = true;
+            snapshot = new HashMap<>(mPositions);
+        }
+
+        compact(snapshot);
+    }
+
+    public synchronized void close() {
+        flush();
+        closeFile();
+        mExecutor.shutdown();
+    }
+
+    private void scheduleFlush() {
+        if (!mFlushScheduled && !mExecutor.isShutdown()) {
+            mFlushScheduled = true;
+            mExecutor.schedule(mFlushRunnable, mFlushDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Renditions of a video have different urls, the lowest one identifies the video.
+     */
+    private static String getKeyUrl(VideoInfo videoInfo) {
+        if (videoInfo == null) {
+            return null;
+        }
+
+        return videoInfo.hasRenditions()
+                ? videoInfo.getRenditions().get(0).getUrl() : videoInfo.getStreamUrl();
+    }
+
+    /**
+     * @return true if the log file is usable.
+     */
+    private boolean ensureLoaded() {
+        if (!mLoaded) {
+            mLoaded = true;
+            try {
+                openFile();
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Open position log failed, positions will not persist.", e);
+                closeFile();
+            }
+        }
+
+        return mBuffer != null;
+    }
+
+    private void openFile() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+
+        mFile = new RandomAccessFile(mLogFile, "rw");
+        long length = mFile.length();
+        if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+            resetFile();
+            return;
+        }
+
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            resetFile();
+            return;
+        }
+
+        int position = HEADER_SIZE;
+        int limit = mBuffer.capacity();
+        while (position + RECORD_HEADER_SIZE <= limit && mBuffer.get(position) == RECORD_MARK) {
+            int keyLength = mBuffer.getShort(position + 1) & 0xFFFF;
+            int end = position + RECORD_HEADER_SIZE + keyLength;
+            if (keyLength == 0 || keyLength > MAX_KEY_LENGTH || end > limit) {
+                break;
+            }
+
+            int value = mBuffer.getInt(position + 3);
+            byte[] key = new byte[keyLength];
+            mBuffer.position(position + RECORD_HEADER_SIZE);
+            mBuffer.get(key);
+            if (checksum(mCrc, key, value) != mBuffer.getInt(position + 7)) {
+                break;
+            }
+
+            String url = new String(key, "UTF-8");
+            if (value == REMOVED) {
+                mPositions.remove(url);
+            } else {
+                mPositions.put(url, value);
+            }
+
+            position = end;
+        }
+
+        mWritePosition = position;
+        mCompactedSize = position;
+        if (PlayerLog.isLoggable(Log.DEBUG)) {
+            PlayerLog.d(TAG, "Loaded " + mPositions.size() + " positions, log size " + position);
+        }
+    }
+
+    private void resetFile() throws IOException {
+        mFile.setLength(INITIAL_CAPACITY);
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY);
+        for (int i = 0; i < INITIAL_CAPACITY; ++i) {
+            mBuffer.put(i, (byte) 0);
+        }
+
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mWritePosition = HEADER_SIZE;
+        mCompactedSize = HEADER_SIZE;
+    }
+
+    private void appendPending() throws IOException {
+        for (Map.Entry<String, Integer> entry : mPending.entrySet()) {
+            appendRecord(entry.getKey(), entry.getValue());
+            if (mCompacting) {
+                // Not in the snapshot being compacted, appended again to the new log.
+                mAppendedWhileCompacting.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        mPending.clear();
+    }
+
+    private void appendRecord(String url, int value) throws IOException {
+        byte[] key = toBytes(url);
+        int size = RECORD_HEADER_SIZE + key.length;
+        ensureCapacity(mWritePosition + size + 1);
+
+        int position = mWritePosition;
+        mBuffer.position(position + RECORD_HEADER_SIZE);
+        mBuffer.put(key);
+        mBuffer.putInt(position + 3, value);
+        mBuffer.putInt(position + 7, checksum(mCrc, key, value));
+        mBuffer.putShort(position + 1, (short) key.length);
+        // Whatever follows is not a record until its mark is written.
+        mBuffer.put(position + size, (byte) 0);
+        mBuffer.put(position, RECORD_MARK);
+        mWritePosition = position + size;
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        int capacity = mBuffer.capacity();
+        if (required <= capacity) {
+            return;
+        }
+
+        while (capacity < required) {
+            capacity *= 2;
+        }
+
+        mFile.setLength(capacity);
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Rewrites {@code snapshot} of the live positions to a new log without holding the
+     * lock, then replaces the old log with it atomically under the lock.
+     */
+    private void compact(Map<String, Integer> snapshot) {
+        File compactFile = new File(mDirectory, COMPACT_FILE_NAME);
+        boolean written = false;
+        try {
+            writeLog(compactFile, snapshot);
+            written = true;
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Compact position log failed.", e);
+        }
+
+        synchronized (this) {
+            mCompacting = false;
+            try {
+                if (written && mBuffer != null) {
+                    replaceLog(compactFile);
+                }
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Replace position log failed.", e);
+                closeFile();
+            } finally {
+                mAppendedWhileCompacting.clear();
+            }
+        }
+
+        if (compactFile.exists()) {
+            compactFile.delete();
+        }
+    }
+
+    private static void writeLog(File logFile, Map<String, Integer> positions) throws IOException {
+        CRC32 crc = new CRC32();
+        RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        try {
+            file.setLength(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            for (Map.Entry<String, Integer> entry : positions.entrySet()) {
+                byte[] key = toBytes(entry.getKey());
+                int value = entry.getValue();
+                file.writeByte(RECORD_MARK);
+                file.writeShort(key.length);
+                file.writeInt(value);
+                file.writeInt(checksum(crc, key, value));
+                file.write(key);
+            }
+
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void replaceLog(File compactFile) throws IOException {
+        Map<String, Integer> positions = new HashMap<>(mPositions);
+        closeFile();
+        if (!compactFile.renameTo(mLogFile)) {
+            throw new IOException("Rename " + compactFile + " failed.");
+        }
+
+        // Reopening maps the new log, memory stays the source of truth.
+        mLoaded = false;
+        ensureLoaded();
+        mPositions.clear();
+        mPositions.putAll(positions);
+
+        // Updates appended to the old log since the snapshot go to the new one too.
+        for (Map.Entry<String, Integer> entry : mAppendedWhileCompacting.entrySet()) {
+            if (!mPending.containsKey(entry.getKey())) {
+                mPending.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (mBuffer != null) {
+            appendPending();
+            mCompactedSize = mWritePosition;
+        }
+
+        if (PlayerLog.isLoggable(Log.DEBUG)) {
+            PlayerLog.d(TAG, "Compacted position log to " + mWritePosition + " bytes.");
+        }
+    }
+
+    private void closeFile() {
+        mBuffer = null;
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Close position log failed.", e);
+            }
+
+            mFile = null;
+        }
+    }
+
+    private static int checksum(CRC32 crc, byte[] key, int value) {
+        crc.reset();
+        crc.update(key, 0, key.length);
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] toBytes(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Drops the fragment (and query if asked), lower-cases scheme and host, and drops
+     * default ports, so equivalent urls share one key.
+     */
+    static String normalizeUrl(String url, boolean ignoreQuery) {
+        if (url == null || url.length() == 0) {
+            return null;
+        }
+
+        int end = url.indexOf('#');
+        if (end < 0) {
+            end = url.length();
+        }
+
+        if (ignoreQuery) {
+            int query = url.indexOf('?');
+            if (query >= 0 && query < end) {
+                end = query;
+            }
+        }
+
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd <= 0 || schemeEnd >= end) {
+            return url.substring(0, end);
+        }
+
+        int hostStart = schemeEnd + 3;
+        int hostEnd = hostStart;
+        while (hostEnd < end && "/?".indexOf(url.charAt(hostEnd)) < 0) {
+            ++hostEnd;
+        }
+
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.US);
+        String host = url.substring(hostStart, hostEnd).toLowerCase(Locale.US);
+        if (("http".equals(scheme) && host.endsWith(":80"))
+                || ("https".equals(scheme) && host.endsWith(":443"))) {
+            host = host.substring(0, host.lastIndexOf(':'));
+        }
+
+        return scheme + "://" + host + url.substring(hostEnd, end);
+    }
+}
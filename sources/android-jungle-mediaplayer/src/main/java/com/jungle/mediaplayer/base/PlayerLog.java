@@ -0,0 +1,91 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import android.util.Log;
+
+/**
+ * Logging entry of the player stack. Only constant messages are accepted here, so a
+ * disabled level costs a volatile read and a compare; messages that must be built
+ * are guarded by the caller:
+ * <pre>
+ * if (PlayerLog.isLoggable(Log.DEBUG)) {
+ *     PlayerLog.d(TAG, "Seek to " + position);
+ * }
+ * </pre>
+ * Defaults to logcat at {@link Log#WARN}.
+ */
+public final class PlayerLog {
+
+    private static volatile PlayerLogger sLogger = new LogcatPlayerLogger(Log.WARN);
+
+
+    private PlayerLog() {
+    }
+
+    /**
+     * @param logger null to turn logging off.
+     */
+    public static void setLogger(PlayerLogger logger) {
+        sLogger = logger;
+    }
+
+    public static PlayerLogger getLogger() {
+        return sLogger;
+    }
+
+    public static boolean isLoggable(int level) {
+        PlayerLogger logger = sLogger;
+        return logger != null && logger.isLoggable(level);
+    }
+
+    public static void v(String tag, String message) {
+        log(Log.VERBOSE, tag, message, null);
+    }
+
+    public static void d(String tag, String message) {
+        log(Log.DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message) {
+        log(Log.INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        log(Log.WARN, tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable tr) {
+        log(Log.WARN, tag, message, tr);
+    }
+
+    public static void e(String tag, String message) {
+        log(Log.ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable tr) {
+        log(Log.ERROR, tag, message, tr);
+    }
+
+    public static void log(int level, String tag, String message, Throwable tr) {
+        PlayerLogger logger = sLogger;
+        if (logger != null && logger.isLoggable(level)) {
+            logger.log(level, tag, message, tr);
+        }
+    }
+}
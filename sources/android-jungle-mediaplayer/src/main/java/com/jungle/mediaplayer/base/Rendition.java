@@ -0,0 +1,83 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * One encoding of a video, e.g. its 720p file.
+ */
+public class Rendition implements Parcelable {
+
+    private String mUrl;
+    private int mBitrate;
+    private int mWidth;
+    private int mHeight;
+
+
+    /**
+     * @param bitrate average bitrate in bits per second.
+     */
+    public Rendition(String url, int bitrate, int width, int height) {
+        mUrl = url;
+        mBitrate = bitrate;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public int getBitrate() {
+        return mBitrate;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mUrl);
+        dest.writeInt(mBitrate);
+        dest.writeInt(mWidth);
+        dest.writeInt(mHeight);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static Creator<Rendition> CREATOR = new Creator<Rendition>() {
+        public Rendition createFromParcel(Parcel source) {
+            return new Rendition(source.readString(),
+                    source.readInt(), source.readInt(), source.readInt());
+        }
+
+        public Rendition[] newArray(int size) {
+            return new Rendition[size];
+        }
+    };
+}
@@ -0,0 +1,154 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Keeps the last N records in preallocated arrays, so they can be attached to a
+ * crash report with {@link #dump()}. Records are optionally forwarded to another
+ * logger (usually a {@link LogcatPlayerLogger}), which keeps its own level.
+ */
+public class RingBufferPlayerLogger implements PlayerLogger {
+
+    private static final String LEVEL_CHARS = "??VDIWEA";
+
+    private final long[] mTimes;
+    private final int[] mLevels;
+    private final String[] mTags;
+    private final String[] mMessages;
+    private final Throwable[] mThrowables;
+    private final PlayerLogger mDelegate;
+    private volatile int mMinLevel;
+    private int mNext;
+    private int mCount;
+
+
+    public RingBufferPlayerLogger(int capacity, int minLevel) {
+        this(capacity, minLevel, null);
+    }
+
+    public RingBufferPlayerLogger(int capacity, int minLevel, PlayerLogger delegate) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        mTimes = new long[capacity];
+        mLevels = new int[capacity];
+        mTags = new String[capacity];
+        mMessages = new String[capacity];
+        mThrowables = new Throwable[capacity];
+        mMinLevel = minLevel;
+        mDelegate = delegate;
+    }
+
+    public void setMinLevel(int minLevel) {
+        mMinLevel = minLevel;
+    }
+
+    public int getMinLevel() {
+        return mMinLevel;
+    }
+
+    public int getCapacity() {
+        return mTimes.length;
+    }
+
+    public synchronized int size() {
+        return mCount;
+    }
+
+    @Override
+    public boolean isLoggable(int level) {
+        return level >= mMinLevel || (mDelegate != null && mDelegate.isLoggable(level));
+    }
+
+    @Override
+    public void log(int level, String tag, String message, Throwable tr) {
+        if (level >= mMinLevel) {
+            record(level, tag, message, tr);
+        }
+
+        if (mDelegate != null && mDelegate.isLoggable(level)) {
+            mDelegate.log(level, tag, message, tr);
+        }
+    }
+
+    private synchronized void record(int level, String tag, String message, Throwable tr) {
+        int index = mNext;
+        mTimes[index] = System.currentTimeMillis();
+        mLevels[index] = level;
+        mTags[index] = tag;
+        mMessages[index] = message;
+        mThrowables[index] = tr;
+
+        mNext = (index + 1) % mTimes.length;
+        if (mCount < mTimes.length) {
+            ++mCount;
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mTimes.length; ++i) {
+            mTags[i] = null;
+            mMessages[i] = null;
+            mThrowables[i] = null;
+        }
+
+        mNext = 0;
+        mCount = 0;
+    }
+
+    /**
+     * @return the buffered records, oldest first, one per line.
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        dump(builder);
+        return builder.toString();
+    }
+
+    public synchronized void dump(StringBuilder builder) {
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        Date date = new Date();
+        int capacity = mTimes.length;
+        int first = (mNext - mCount + capacity) % capacity;
+
+        for (int i = 0; i < mCount; ++i) {
+            int index = (first + i) % capacity;
+            int level = mLevels[index];
+
+            date.setTime(mTimes[index]);
+            builder.append(format.format(date))
+                    .append(' ')
+                    .append(level >= 0 && level < LEVEL_CHARS.length() ? LEVEL_CHARS.charAt(level) : '?')
+                    .append('/')
+                    .append(mTags[index])
+                    .append(": ")
+                    .append(mMessages[index])
+                    .append('\n');
+
+            Throwable tr = mThrowables[index];
+            if (tr != null) {
+                builder.append("    ").append(tr).append('\n');
+            }
+        }
+    }
+}
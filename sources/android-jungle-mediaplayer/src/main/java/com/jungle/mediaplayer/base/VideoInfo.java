@@ -22,10 +22,17 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.text.TextUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 public class VideoInfo implements Parcelable {
 
     private String mStreamUrl;
     private int mCurrentPosition;
+    private List<Rendition> mRenditions = Collections.emptyList();
+    private Rendition mSelectedRendition;
 
     public VideoInfo() {
     }
@@ -35,9 +42,15 @@ public class VideoInfo implements Parcelable {
         mCurrentPosition = 0;
     }
 
+    public VideoInfo(List<Rendition> renditions) {
+        setRenditions(renditions);
+    }
+
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(mStreamUrl);
         dest.writeInt(mCurrentPosition);
+        dest.writeTypedList(mRenditions);
+        dest.writeInt(mRenditions.indexOf(mSelectedRendition));
     }
 
     public static boolean validate(VideoInfo videoInfo) {
@@ -56,8 +69,17 @@ public class VideoInfo implements Parcelable {
     public static Creator<VideoInfo> CREATOR = new Creator<VideoInfo>() {
         public VideoInfo createFromParcel(Parcel source) {
             VideoInfo info = new VideoInfo(source.readString());
-            info.mStreamUrl = source.readString();
             info.mCurrentPosition = source.readInt();
+
+            List<Rendition> renditions = source.createTypedArrayList(Rendition.CREATOR);
+            int selected = source.readInt();
+            if (!renditions.isEmpty()) {
+                info.mRenditions = Collections.unmodifiableList(renditions);
+                if (selected >= 0 && selected < renditions.size()) {
+                    info.mSelectedRendition = renditions.get(selected);
+                }
+            }
+
             return info;
         }
 
@@ -77,4 +99,46 @@ public class VideoInfo implements Parcelable {
     public void setCurrentPosition(int currentPosition) {
         mCurrentPosition = currentPosition;
     }
+
+    /**
+     * Sets the renditions (e.g. 360p / 540p / 720p / 1080p files) of this video. They
+     * are kept in ascending bitrate order, and the lowest one is selected until
+     * {@link #selectRendition(Rendition)} is called.
+     */
+    public void setRenditions(List<Rendition> renditions) {
+        List<Rendition> sorted = new ArrayList<>(renditions);
+        Collections.sort(sorted, new Comparator<Rendition>() {
+            @Override
+            public int compare(Rendition lhs, Rendition rhs) {
+                return lhs.getBitrate() < rhs.getBitrate()
+                        ? -1 : (lhs.getBitrate() == rhs.getBitrate() ? 0 : 1);
+            }
+        });
+
+        mRenditions = Collections.unmodifiableList(sorted);
+        mSelectedRendition = null;
+        if (!sorted.isEmpty()) {
+            selectRendition(sorted.get(0));
+        }
+    }
+
+    public List<Rendition> getRenditions() {
+        return mRenditions;
+    }
+
+    public boolean hasRenditions() {
+        return !mRenditions.isEmpty();
+    }
+
+    /**
+     * @return the rendition {@link #getStreamUrl()} points to, null if there are none.
+     */
+    public Rendition getSelectedRendition() {
+        return mSelectedRendition;
+    }
+
+    public void selectRendition(Rendition rendition) {
+        mSelectedRendition = rendition;
+        mStreamUrl = rendition.getUrl();
+    }
 }
@@ -0,0 +1,272 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parcels a whole playlist of {@link VideoInfo} as one byte array, instead of one
+ * parcelable per video.
+ * <p>
+ * Urls of a playlist mostly share a few directories, so each url is split into its
+ * directory prefix (up to the last '/'), stored once in a table, and the rest. Numbers
+ * are varints. Layout:
+ * <pre>
+ * version prefixCount prefix* videoCount video*
+ * video:     url position renditionCount rendition* (selected + 1)
+ * rendition: url bitrate width height
+ * url:       (prefixIndex + 1 | 0) string
+ * string:    (byteLength + 1 | 0 for null) utf8Bytes
+ * </pre>
+ */
+public class VideoInfoList implements Parcelable {
+
+    private static final int VERSION = 1;
+
+
+    private final List<VideoInfo> mVideos;
+
+
+    public VideoInfoList(List<VideoInfo> videos) {
+        mVideos = videos;
+    }
+
+    public List<VideoInfo> getVideos() {
+        return mVideos;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeByteArray(encode(mVideos));
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static Creator<VideoInfoList> CREATOR = new Creator<VideoInfoList>() {
+        public VideoInfoList createFromParcel(Parcel source) {
+            return new VideoInfoList(decode(source.createByteArray()));
+        }
+
+        public VideoInfoList[] newArray(int size) {
+            return new VideoInfoList[size];
+        }
+    };
+
+    static byte[] encode(List<VideoInfo> videos) {
+        Writer body = new Writer(videos.size() * 48);
+        Map<String, Integer> prefixIndexes = new HashMap<>();
+        List<String> prefixes = new ArrayList<>();
+
+        body.writeVarInt(videos.size());
+        for (VideoInfo video : videos) {
+            body.writeUrl(video.getStreamUrl(), prefixIndexes, prefixes);
+            body.writeVarInt(Math.max(0, video.getCurrentPosition()));
+
+            List<Rendition> renditions = video.getRenditions();
+            body.writeVarInt(renditions.size());
+            for (Rendition rendition : renditions) {
+                body.writeUrl(rendition.getUrl(), prefixIndexes, prefixes);
+                body.writeVarInt(rendition.getBitrate());
+                body.writeVarInt(rendition.getWidth());
+                body.writeVarInt(rendition.getHeight());
+            }
+
+            body.writeVarInt(renditions.indexOf(video.getSelectedRendition()) + 1);
+        }
+
+        Writer output = new Writer(body.mLength + prefixes.size() * 32 + 8);
+        output.writeVarInt(VERSION);
+        output.writeVarInt(prefixes.size());
+        for (String prefix : prefixes) {
+            output.writeString(prefix);
+        }
+
+        output.write(body.mBuffer, body.mLength);
+        return Arrays.copyOf(output.mBuffer, output.mLength);
+    }
+
+    static List<VideoInfo> decode(byte[] data) {
+        Reader input = new Reader(data);
+        if (input.readVarInt() != VERSION) {
+            throw new IllegalArgumentException("Unknown VideoInfoList version.");
+        }
+
+        String[] prefixes = new String[input.readVarInt()];
+        for (int i = 0; i < prefixes.length; ++i) {
+            prefixes[i] = input.readString();
+        }
+
+        int count = input.readVarInt();
+        List<VideoInfo> videos = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            VideoInfo video = new VideoInfo(input.readUrl(prefixes));
+            video.setCurrentPosition(input.readVarInt());
+
+            int renditionCount = input.readVarInt();
+            if (renditionCount > 0) {
+                List<Rendition> renditions = new ArrayList<>(renditionCount);
+                for (int j = 0; j < renditionCount; ++j) {
+                    renditions.add(new Rendition(input.readUrl(prefixes),
+                            input.readVarInt(), input.readVarInt(), input.readVarInt()));
+                }
+
+                video.setRenditions(renditions);
+                int selected = input.readVarInt() - 1;
+                if (selected >= 0) {
+                    video.selectRendition(video.getRenditions().get(selected));
+                }
+            } else {
+                input.readVarInt();
+            }
+
+            videos.add(video);
+        }
+
+        return videos;
+    }
+
+    private static class Writer {
+
+        byte[] mBuffer;
+        int mLength;
+
+
+        Writer(int capacity) {
+            mBuffer = new byte[Math.max(16, capacity)];
+        }
+
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                mBuffer[mLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            mBuffer[mLength++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            byte[] bytes = toBytes(value);
+            writeVarInt(bytes.length + 1);
+            write(bytes, bytes.length);
+        }
+
+        void writeUrl(String url, Map<String, Integer> prefixIndexes, List<String> prefixes) {
+            int slash = url != null ? url.lastIndexOf('/') : -1;
+            if (slash <= 0) {
+                writeVarInt(0);
+                writeString(url);
+                return;
+            }
+
+            String prefix = url.substring(0, slash + 1);
+            Integer index = prefixIndexes.get(prefix);
+            if (index == null) {
+                index = prefixes.size();
+                prefixIndexes.put(prefix, index);
+                prefixes.add(prefix);
+            }
+
+            writeVarInt(index + 1);
+            writeString(url.substring(slash + 1));
+        }
+
+        void write(byte[] bytes, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, 0, mBuffer, mLength, length);
+            mLength += length;
+        }
+
+        private void ensureCapacity(int count) {
+            if (mLength + count > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mLength + count));
+            }
+        }
+    }
+
+
+    private static class Reader {
+
+        final byte[] mBuffer;
+        int mPosition;
+
+
+        Reader(byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mBuffer[mPosition++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            return value;
+        }
+
+        String readString() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+
+            try {
+                String value = new String(mBuffer, mPosition, length, "UTF-8");
+                mPosition += length;
+                return value;
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String readUrl(String[] prefixes) {
+            int prefix = readVarInt() - 1;
+            String rest = readString();
+            return prefix >= 0 ? prefixes[prefix] + (rest != null ? rest : "") : rest;
+        }
+    }
+
+
+    private static byte[] toBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
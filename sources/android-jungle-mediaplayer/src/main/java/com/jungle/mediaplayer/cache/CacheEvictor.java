@@ -0,0 +1,367 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+import android.os.Process;
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a store within a byte and an entry budget. The store reports puts / accesses /
+ * removals, and the evictor deletes items chosen by an {@link EvictionPolicy} through
+ * {@link Storage}.
+ * <p>
+ * Eviction runs on a low priority background thread, a few items per step, so it never
+ * blocks the read path. Pinned items (e.g. the stream the active player reads) are
+ * never evicted.
+ */
+public class CacheEvictor {
+
+    private static final String TAG = "CacheEvictor";
+
+    private static final int EVICT_BATCH = 4;
+
+
+    public interface Storage {
+        /**
+         * @return false if the item is in use and was kept.
+         */
+        boolean delete(String key);
+    }
+
+
+    private final Storage mStorage;
+    private final EvictionPolicy mPolicy;
+    private final Map<String, CacheItem> mItems = new HashMap<>();
+    private final ThreadPoolExecutor mExecutor;
+    private long mMaxBytes;
+    private int mMaxEntries;
+    private long mTotalBytes;
+    private boolean mTrimScheduled;
+
+    private long mHitBytes;
+    private long mMissBytes;
+    private long mBytesEvicted;
+    private int mEntriesEvicted;
+    private long mEvictionTimeNs;
+
+
+    /**
+     * @param maxEntries 0 for no entry budget.
+     */
+    public CacheEvictor(Storage storage, EvictionPolicy policy, long maxBytes, int maxEntries) {
+        mStorage = storage;
+        mPolicy = policy;
+        mMaxBytes = maxBytes;
+        mMaxEntries = maxEntries;
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "JungleMediaPlayer-CacheEvictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public EvictionPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    public void setBudget(long maxBytes, int maxEntries) {
+        synchronized (this) {
+            mMaxBytes = maxBytes;
+            mMaxEntries = maxEntries;
+        }
+
+        requestTrim();
+    }
+
+    /**
+     * Runs {@code runnable} on the eviction thread, e.g. to load existing items.
+     */
+    public void post(Runnable runnable) {
+        mExecutor.execute(runnable);
+    }
+
+    /**
+     * Reports an item found on startup, keeps what is already known of it.
+     */
+    public synchronized void onLoad(String key, long size, long lastAccessTime) {
+        if (mItems.containsKey(key)) {
+            return;
+        }
+
+        CacheItem item = new CacheItem(key, size, lastAccessTime);
+        mItems.put(key, item);
+        mTotalBytes += size;
+    }
+
+    public synchronized void onPut(String key, long size) {
+        CacheItem item = getOrCreateItem(key);
+        mTotalBytes += size - item.mSize;
+        item.mSize = size;
+        item.mLastAccessTime = now();
+
+        if (isOverBudget()) {
+            scheduleTrim();
+        }
+    }
+
+    public synchronized void onAccess(String key) {
+        CacheItem item = getOrCreateItem(key);
+        item.mLastAccessTime = now();
+        ++item.mAccessCount;
+    }
+
+    public synchronized void onRemove(String key) {
+        CacheItem item = mItems.remove(key);
+        if (item != null) {
+            mTotalBytes -= item.mSize;
+        }
+    }
+
+    public synchronized void pin(String key) {
+        ++getOrCreateItem(key).mPinCount;
+    }
+
+    public synchronized void unpin(String key) {
+        CacheItem item = mItems.get(key);
+        if (item != null && item.mPinCount > 0) {
+            --item.mPinCount;
+        }
+    }
+
+    public synchronized boolean isPinned(String key) {
+        CacheItem item = mItems.get(key);
+        return item != null && item.isPinned();
+    }
+
+    public synchronized void recordHit(long bytes) {
+        mHitBytes += bytes;
+    }
+
+    public synchronized void recordMiss(long bytes) {
+        mMissBytes += bytes;
+    }
+
+    /**
+     * Evicts over-budget / expired items in the background.
+     */
+    public synchronized void requestTrim() {
+        scheduleTrim();
+    }
+
+    /**
+     * Evicts on the calling thread until within budget, for low storage situations.
+     */
+    public void trimNow() {
+        while (trimStep()) {
+            // Continue.
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return mItems.size();
+    }
+
+    public synchronized long getHitBytes() {
+        return mHitBytes;
+    }
+
+    public synchronized long getMissBytes() {
+        return mMissBytes;
+    }
+
+    /**
+     * @return bytes served from cache / all bytes served, 0 if nothing served yet.
+     */
+    public synchronized float getHitRatio() {
+        long total = mHitBytes + mMissBytes;
+        return total > 0 ? (float) mHitBytes / total : 0;
+    }
+
+    public synchronized long getBytesEvicted() {
+        return mBytesEvicted;
+    }
+
+    public synchronized int getEntriesEvicted() {
+        return mEntriesEvicted;
+    }
+
+    public synchronized long getEvictionTimeMs() {
+        return TimeUnit.NANOSECONDS.toMillis(mEvictionTimeNs);
+    }
+
+    public synchronized void resetStatistics() {
+        mHitBytes = 0;
+        mMissBytes = 0;
+        mBytesEvicted = 0;
+        mEntriesEvicted = 0;
+        mEvictionTimeNs = 0;
+    }
+
+    private CacheItem getOrCreateItem(String key) {
+        CacheItem item = mItems.get(key);
+        if (item == null) {
+            item = new CacheItem(key, 0, now());
+            mItems.put(key, item);
+        }
+
+        return item;
+    }
+
+    private boolean isOverBudget() {
+        return mTotalBytes > mMaxBytes || (mMaxEntries > 0 && mItems.size() > mMaxEntries);
+    }
+
+    private void scheduleTrim() {
+        if (!mTrimScheduled) {
+            mTrimScheduled = true;
+            mExecutor.execute(mTrimRunnable);
+        }
+    }
+
+    private Runnable mTrimRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (trimStep()) {
+                // One batch at a time, let other work on this thread go in between.
+                mExecutor.execute(this);
+            }
+        }
+    };
+
+    /**
+     * @return true if there is more to evict.
+     */
+    private boolean trimStep() {
+        List<CacheItem> victims = selectVictims();
+        if (victims.isEmpty()) {
+            return false;
+        }
+
+        long startTime = System.nanoTime();
+        int evicted = 0;
+        for (CacheItem victim : victims) {
+            boolean deleted = mStorage.delete(victim.getKey());
+            synchronized (this) {
+                if (!deleted) {
+                    // In use, try others first next time.
+                    victim.mLastAccessTime = now();
+                    continue;
+                }
+
+                if (mItems.get(victim.getKey()) == victim) {
+                    mItems.remove(victim.getKey());
+                    mTotalBytes -= victim.mSize;
+                }
+
+                mBytesEvicted += victim.mSize;
+                ++mEntriesEvicted;
+                ++evicted;
+            }
+        }
+
+        synchronized (this) {
+            mEvictionTimeNs += System.nanoTime() - startTime;
+            if (evicted == 0) {
+                // Everything left is in use, wait for the next request.
+                mTrimScheduled = false;
+                PlayerLog.w(TAG, "Over budget, but all candidates are in use.");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private synchronized List<CacheItem> selectVictims() {
+        List<CacheItem> victims = new ArrayList<>(EVICT_BATCH);
+        long now = now();
+
+        for (CacheItem item : mItems.values()) {
+            if (victims.size() >= EVICT_BATCH) {
+                break;
+            }
+
+            if (!item.isPinned() && mPolicy.isExpired(item, now)) {
+                victims.add(item);
+            }
+        }
+
+        long bytes = mTotalBytes;
+        int entries = mItems.size();
+        for (CacheItem victim : victims) {
+            bytes -= victim.mSize;
+            --entries;
+        }
+
+        while (victims.size() < EVICT_BATCH
+                && (bytes > mMaxBytes || (mMaxEntries > 0 && entries > mMaxEntries))) {
+            CacheItem candidate = null;
+            for (CacheItem item : mItems.values()) {
+                if (item.isPinned() || victims.contains(item)) {
+                    continue;
+                }
+
+                if (candidate == null || mPolicy.compare(item, candidate, now) < 0) {
+                    candidate = item;
+                }
+            }
+
+            if (candidate == null) {
+                break;
+            }
+
+            victims.add(candidate);
+            bytes -= candidate.mSize;
+            --entries;
+        }
+
+        if (victims.isEmpty()) {
+            mTrimScheduled = false;
+        }
+
+        return victims;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+/**
+ * What {@link CacheEvictor} knows of one cached entry. Times are wall clock milliseconds.
+ */
+public class CacheItem {
+
+    private final String mKey;
+    long mSize;
+    long mCreateTime;
+    long mLastAccessTime;
+    int mAccessCount;
+    int mPinCount;
+
+
+    CacheItem(String key, long size, long now) {
+        mKey = key;
+        mSize = size;
+        mCreateTime = now;
+        mLastAccessTime = now;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public long getCreateTime() {
+        return mCreateTime;
+    }
+
+    public long getLastAccessTime() {
+        return mLastAccessTime;
+    }
+
+    public int getAccessCount() {
+        return mAccessCount;
+    }
+
+    public boolean isPinned() {
+        return mPinCount > 0;
+    }
+}
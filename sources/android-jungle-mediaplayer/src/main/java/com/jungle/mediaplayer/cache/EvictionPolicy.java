@@ -0,0 +1,34 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+/**
+ * Orders cached items for {@link CacheEvictor}.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * @return negative if {@code a} should be evicted before {@code b}.
+     */
+    int compare(CacheItem a, CacheItem b, long now);
+
+    /**
+     * @return true if {@code item} should be evicted even within budget.
+     */
+    boolean isExpired(CacheItem item, long now);
+}
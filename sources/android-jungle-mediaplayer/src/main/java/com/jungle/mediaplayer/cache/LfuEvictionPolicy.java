@@ -0,0 +1,40 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+/**
+ * Evicts the least frequently used item first, the least recently used of equally
+ * used ones.
+ */
+public class LfuEvictionPolicy implements EvictionPolicy {
+
+    @Override
+    public int compare(CacheItem a, CacheItem b, long now) {
+        int result = LruEvictionPolicy.compareLong(a.getAccessCount(), b.getAccessCount());
+        if (result != 0) {
+            return result;
+        }
+
+        return LruEvictionPolicy.compareLong(a.getLastAccessTime(), b.getLastAccessTime());
+    }
+
+    @Override
+    public boolean isExpired(CacheItem item, long now) {
+        return false;
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sorted, non-overlapping {@code [start, end)} byte ranges of a sparse content file,
+ * kept in a memory-mapped index file:
+ * <pre>
+ * | magic | version | content length | range count | mime length | mime ... | (256 bytes)
+ * | start 0 | end 0 | start 1 | end 1 | ...                                  (16 bytes each)
+ * </pre>
+ * Queries binary search the mapped ranges, so they are O(log n) and need no syscalls.
+ * Adjacent / overlapping ranges are merged on {@link #add(long, long)}.
+ * <p>
+ * Not thread safe.
+ */
+public class RangeIndex implements Closeable {
+
+    private static final int MAGIC = 0x4A524958;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 256;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CONTENT_LENGTH = 8;
+    private static final int OFFSET_COUNT = 16;
+    private static final int OFFSET_MIME_LENGTH = 20;
+    private static final int OFFSET_MIME = 22;
+    private static final int MAX_MIME_LENGTH = HEADER_SIZE - OFFSET_MIME;
+
+    private static final int RANGE_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 64;
+
+
+    private final RandomAccessFile mFile;
+    private MappedByteBuffer mBuffer;
+    private int mCapacity;
+    private int mCount;
+    private long mCachedBytes;
+
+
+    /**
+     * Maps {@code file}, creating it if needed. An index which is corrupted, or claims
+     * bytes beyond {@code dataLength}, is dropped.
+     */
+    public RangeIndex(File file, long dataLength) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            long length = mFile.length();
+            int capacity = length > HEADER_SIZE ? (int) ((length - HEADER_SIZE) / RANGE_SIZE) : 0;
+            map(Math.max(INITIAL_CAPACITY, capacity));
+            if (!recover(dataLength)) {
+                clear();
+            }
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                0, HEADER_SIZE + (long) capacity * RANGE_SIZE);
+        mCapacity = capacity;
+    }
+
+    private boolean recover(long dataLength) {
+        if (mBuffer.getInt(OFFSET_MAGIC) != MAGIC || mBuffer.getInt(OFFSET_VERSION) != VERSION) {
+            return false;
+        }
+
+        int count = mBuffer.getInt(OFFSET_COUNT);
+        if (count < 0 || count > mCapacity) {
+            return false;
+        }
+
+        long cachedBytes = 0;
+        long lastEnd = -1;
+        for (int i = 0; i < count; ++i) {
+            long start = getStart(i);
+            long end = getEnd(i);
+            if (start <= lastEnd || end <= start || end > dataLength) {
+                return false;
+            }
+
+            cachedBytes += end - start;
+            lastEnd = end;
+        }
+
+        mCount = count;
+        mCachedBytes = cachedBytes;
+        return true;
+    }
+
+    /**
+     * Drops all ranges and content info.
+     */
+    public void clear() {
+        mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        mBuffer.putInt(OFFSET_VERSION, VERSION);
+        mBuffer.putLong(OFFSET_CONTENT_LENGTH, -1);
+        mBuffer.putInt(OFFSET_COUNT, 0);
+        mBuffer.putShort(OFFSET_MIME_LENGTH, (short) 0);
+        mCount = 0;
+        mCachedBytes = 0;
+    }
+
+    public long getContentLength() {
+        return mBuffer.getLong(OFFSET_CONTENT_LENGTH);
+    }
+
+    public void setContentLength(long contentLength) {
+        mBuffer.putLong(OFFSET_CONTENT_LENGTH, contentLength);
+    }
+
+    public String getMimeType() {
+        int length = mBuffer.getShort(OFFSET_MIME_LENGTH);
+        if (length <= 0 || length > MAX_MIME_LENGTH) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = mBuffer.get(OFFSET_MIME + i);
+        }
+
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    public void setMimeType(String mimeType) {
+        byte[] bytes;
+        try {
+            bytes = mimeType != null ? mimeType.getBytes("UTF-8") : new byte[0];
+        } catch (UnsupportedEncodingException e) {
+            bytes = new byte[0];
+        }
+
+        int length = Math.min(bytes.length, MAX_MIME_LENGTH);
+        for (int i = 0; i < length; ++i) {
+            mBuffer.put(OFFSET_MIME + i, bytes[i]);
+        }
+
+        mBuffer.putShort(OFFSET_MIME_LENGTH, (short) length);
+    }
+
+    public int getRangeCount() {
+        return mCount;
+    }
+
+    public long getStart(int index) {
+        return mBuffer.getLong(HEADER_SIZE + index * RANGE_SIZE);
+    }
+
+    public long getEnd(int index) {
+        return mBuffer.getLong(HEADER_SIZE + index * RANGE_SIZE + 8);
+    }
+
+    /**
+     * @return total bytes covered by all ranges.
+     */
+    public long getCachedBytes() {
+        return mCachedBytes;
+    }
+
+    /**
+     * @return bytes cached contiguously from {@code position}, 0 if not cached.
+     */
+    public long getCachedLength(long position) {
+        int index = floorIndex(position);
+        if (index < 0) {
+            return 0;
+        }
+
+        long end = getEnd(index);
+        return position < end ? end - position : 0;
+    }
+
+    /**
+     * @return first cached position at or after {@code position}, or -1 if none.
+     */
+    public long getNextCachedPosition(long position) {
+        int index = floorIndex(position);
+        if (index >= 0 && position < getEnd(index)) {
+            return position;
+        }
+
+        return index + 1 < mCount ? getStart(index + 1) : -1;
+    }
+
+    /**
+     * Marks {@code [start, end)} cached, merging it with touching ranges.
+     */
+    public void add(long start, long end) throws IOException {
+        if (end <= start) {
+            return;
+        }
+
+        // First range which ends at or after start can merge with the new one.
+        int first = floorIndex(start);
+        if (first < 0 || getEnd(first) < start) {
+            ++first;
+        }
+
+        int last = first;
+        long newStart = start;
+        long newEnd = end;
+        long mergedBytes = 0;
+        while (last < mCount && getStart(last) <= end) {
+            long rangeStart = getStart(last);
+            long rangeEnd = getEnd(last);
+            newStart = Math.min(newStart, rangeStart);
+            newEnd = Math.max(newEnd, rangeEnd);
+            mergedBytes += rangeEnd - rangeStart;
+            ++last;
+        }
+
+        int merged = last - first;
+        if (merged == 0) {
+            ensureCapacity(mCount + 1);
+            for (int i = mCount - 1; i >= first; --i) {
+                putRange(i + 1, getStart(i), getEnd(i));
+            }
+        } else if (merged > 1) {
+            for (int i = last; i < mCount; ++i) {
+                putRange(i - merged + 1, getStart(i), getEnd(i));
+            }
+        }
+
+        putRange(first, newStart, newEnd);
+        mCount += 1 - merged;
+        mCachedBytes += newEnd - newStart - mergedBytes;
+        mBuffer.putInt(OFFSET_COUNT, mCount);
+    }
+
+    public void force() {
+        mBuffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mBuffer.force();
+        mFile.close();
+    }
+
+    /**
+     * @return index of the last range starting at or before {@code position}, or -1.
+     */
+    private int floorIndex(long position) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getStart(middle) <= position) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return high;
+    }
+
+    private void putRange(int index, long start, long end) {
+        mBuffer.putLong(HEADER_SIZE + index * RANGE_SIZE, start);
+        mBuffer.putLong(HEADER_SIZE + index * RANGE_SIZE + 8, end);
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (capacity <= mCapacity) {
+            return;
+        }
+
+        mBuffer.force();
+        map(Math.max(capacity, mCapacity * 2));
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+/**
+ * Items not accessed for {@code maxAge} are always evicted. Within budget pressure,
+ * the item with the largest {@code size * idle time} goes first, so big stale files
+ * free space before small recent ones.
+ */
+public class SizeAgeEvictionPolicy implements EvictionPolicy {
+
+    private final long mMaxAge;
+
+
+    public SizeAgeEvictionPolicy(long maxAgeMs) {
+        mMaxAge = maxAgeMs;
+    }
+
+    @Override
+    public int compare(CacheItem a, CacheItem b, long now) {
+        return Double.compare(score(b, now), score(a, now));
+    }
+
+    @Override
+    public boolean isExpired(CacheItem item, long now) {
+        return mMaxAge > 0 && now - item.getLastAccessTime() > mMaxAge;
+    }
+
+    private static double score(CacheItem item, long now) {
+        return (double) item.getSize() * Math.max(1, now - item.getLastAccessTime());
+    }
+}
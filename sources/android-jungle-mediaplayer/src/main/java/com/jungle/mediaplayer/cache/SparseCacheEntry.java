@@ -0,0 +1,176 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * One open entry of {@link SparseFileCache}, shared by everyone opening the same key.
+ * Thread safe.
+ */
+public class SparseCacheEntry implements Closeable {
+
+    private static final String TAG = "SparseCacheEntry";
+
+
+    private final SparseFileCache mCache;
+    private final String mName;
+    private final RandomAccessFile mData;
+    private final RangeIndex mIndex;
+    private final File mIndexFile;
+    private int mRefCount;
+
+
+    SparseCacheEntry(SparseFileCache cache, String name, File dataFile, File indexFile)
+            throws IOException {
+
+        mCache = cache;
+        mName = name;
+        mIndexFile = indexFile;
+        mData = new RandomAccessFile(dataFile, "rw");
+        try {
+            mIndex = new RangeIndex(indexFile, mData.length());
+        } catch (IOException e) {
+            mData.close();
+            throw e;
+        }
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    void retain() {
+        ++mRefCount;
+    }
+
+    /**
+     * @return true if it was the last reference.
+     */
+    boolean releaseRef() {
+        return --mRefCount == 0;
+    }
+
+    public synchronized long getContentLength() {
+        return mIndex.getContentLength();
+    }
+
+    public synchronized String getMimeType() {
+        return mIndex.getMimeType();
+    }
+
+    /**
+     * Cached ranges are dropped if the content length differs from the known one, the
+     * content must have changed upstream.
+     */
+    public synchronized void setContentInfo(long contentLength, String mimeType)
+            throws IOException {
+
+        long oldLength = mIndex.getContentLength();
+        if (oldLength >= 0 && oldLength != contentLength) {
+            mIndex.clear();
+            mData.setLength(0);
+        }
+
+        mIndex.setContentLength(contentLength);
+        mIndex.setMimeType(mimeType);
+    }
+
+    public synchronized long getCachedLength(long position) {
+        return mIndex.getCachedLength(position);
+    }
+
+    public synchronized long getNextCachedPosition(long position) {
+        return mIndex.getNextCachedPosition(position);
+    }
+
+    public synchronized long getCachedBytes() {
+        return mIndex.getCachedBytes();
+    }
+
+    public synchronized boolean isComplete() {
+        long contentLength = mIndex.getContentLength();
+        return contentLength >= 0 && mIndex.getCachedLength(0) >= contentLength;
+    }
+
+    /**
+     * @return bytes read, or -1 if {@code position} is not cached.
+     */
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        int read;
+        synchronized (this) {
+            long cached = mIndex.getCachedLength(position);
+            if (cached <= 0) {
+                return -1;
+            }
+
+            mData.seek(position);
+            read = mData.read(buffer, offset, (int) Math.min(length, cached));
+        }
+
+        if (read > 0) {
+            mCache.onEntryRead(read);
+        }
+
+        return read;
+    }
+
+    public void write(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+
+        long cachedBytes;
+        synchronized (this) {
+            // Data first, so the index never claims bytes which were not written.
+            mData.seek(position);
+            mData.write(buffer, offset, length);
+            mIndex.add(position, position + length);
+            cachedBytes = mIndex.getCachedBytes();
+        }
+
+        mCache.onEntryWritten(this, length, cachedBytes);
+    }
+
+    @Override
+    public void close() {
+        mCache.release(this);
+    }
+
+    synchronized void closeFiles() {
+        try {
+            mIndex.close();
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Close range index failed.", e);
+        }
+
+        try {
+            mData.close();
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Close cache data failed.", e);
+        }
+
+        // The index mtime tells the last access time after restart.
+        mIndexFile.setLastModified(System.currentTimeMillis());
+    }
+}
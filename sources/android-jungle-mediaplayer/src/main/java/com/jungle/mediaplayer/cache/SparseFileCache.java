@@ -0,0 +1,224 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.cache;
+
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Disk cache of partially downloaded content. Every key has a sparse data file, where
+ * bytes are written at their own offsets, and a {@link RangeIndex} telling which ranges
+ * of it are valid. Opening an entry only maps its index, content files are never
+ * scanned.
+ * <p>
+ * With an {@link EvictionPolicy}, the cache is kept within its budgets by a
+ * {@link CacheEvictor}. Open and {@link #pin(String) pinned} entries are never evicted.
+ */
+public class SparseFileCache {
+
+    private static final String TAG = "SparseFileCache";
+
+    static final String DATA_SUFFIX = ".data";
+    static final String INDEX_SUFFIX = ".idx";
+
+
+    private final File mDirectory;
+    private final Map<String, SparseCacheEntry> mOpenEntries = new HashMap<>();
+    private final CacheEvictor mEvictor;
+
+
+    public SparseFileCache(File directory) {
+        mDirectory = directory;
+        mEvictor = null;
+    }
+
+    /**
+     * @param maxEntries 0 for no entry budget.
+     */
+    public SparseFileCache(File directory, EvictionPolicy policy, long maxBytes, int maxEntries) {
+        mDirectory = directory;
+        mEvictor = new CacheEvictor(new CacheEvictor.Storage() {
+            @Override
+            public boolean delete(String name) {
+                return deleteFiles(name);
+            }
+        }, policy, maxBytes, maxEntries);
+
+        mEvictor.post(new Runnable() {
+            @Override
+            public void run() {
+                loadItems();
+            }
+        });
+    }
+
+    /**
+     * @return null if the cache has no eviction policy.
+     */
+    public CacheEvictor getEvictor() {
+        return mEvictor;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Every successful open must be paired with {@link SparseCacheEntry#close()}.
+     */
+    public synchronized SparseCacheEntry open(String key) throws IOException {
+        String name = CacheKeys.hash(key);
+        SparseCacheEntry entry = mOpenEntries.get(name);
+        if (entry == null) {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Cannot create cache directory: " + mDirectory);
+            }
+
+            entry = new SparseCacheEntry(this, name,
+                    new File(mDirectory, name + DATA_SUFFIX),
+                    new File(mDirectory, name + INDEX_SUFFIX));
+            mOpenEntries.put(name, entry);
+        }
+
+        entry.retain();
+        if (mEvictor != null) {
+            mEvictor.pin(name);
+            mEvictor.onAccess(name);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Keeps {@code key} from being evicted until {@link #unpin(String)}, even while no
+     * entry of it is open.
+     */
+    public void pin(String key) {
+        if (mEvictor != null) {
+            mEvictor.pin(CacheKeys.hash(key));
+        }
+    }
+
+    public void unpin(String key) {
+        if (mEvictor != null) {
+            mEvictor.unpin(CacheKeys.hash(key));
+            mEvictor.requestTrim();
+        }
+    }
+
+    public synchronized boolean isOpen(String key) {
+        return mOpenEntries.containsKey(CacheKeys.hash(key));
+    }
+
+    /**
+     * Deletes the cached content of {@code key}.
+     *
+     * @return false if the entry is open now and was kept.
+     */
+    public boolean remove(String key) {
+        String name = CacheKeys.hash(key);
+        if (!deleteFiles(name)) {
+            return false;
+        }
+
+        if (mEvictor != null) {
+            mEvictor.onRemove(name);
+        }
+
+        return true;
+    }
+
+    private synchronized boolean deleteFiles(String name) {
+        if (mOpenEntries.containsKey(name) || (mEvictor != null && mEvictor.isPinned(name))) {
+            return false;
+        }
+
+        new File(mDirectory, name + DATA_SUFFIX).delete();
+        new File(mDirectory, name + INDEX_SUFFIX).delete();
+        return true;
+    }
+
+    synchronized void release(SparseCacheEntry entry) {
+        if (mEvictor != null) {
+            mEvictor.unpin(entry.getName());
+        }
+
+        if (entry.releaseRef()) {
+            mOpenEntries.remove(entry.getName());
+            entry.closeFiles();
+            if (mEvictor != null) {
+                mEvictor.requestTrim();
+            }
+        }
+    }
+
+    void onEntryRead(int bytes) {
+        if (mEvictor != null) {
+            mEvictor.recordHit(bytes);
+        }
+    }
+
+    void onEntryWritten(SparseCacheEntry entry, int bytes, long cachedBytes) {
+        if (mEvictor != null) {
+            mEvictor.recordMiss(bytes);
+            mEvictor.onPut(entry.getName(), cachedBytes);
+        }
+    }
+
+    /**
+     * Reports entries already on disk to the evictor, from their index files only.
+     */
+    private void loadItems() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.endsWith(INDEX_SUFFIX)) {
+                continue;
+            }
+
+            String name = fileName.substring(0, fileName.length() - INDEX_SUFFIX.length());
+            synchronized (this) {
+                if (mOpenEntries.containsKey(name)) {
+                    continue;
+                }
+
+                File dataFile = new File(mDirectory, name + DATA_SUFFIX);
+                try {
+                    RangeIndex index = new RangeIndex(file, dataFile.length());
+                    long cachedBytes = index.getCachedBytes();
+                    index.close();
+                    mEvictor.onLoad(name, cachedBytes, file.lastModified());
+                } catch (IOException e) {
+                    PlayerLog.w(TAG, "Load cache index failed, drop it.", e);
+                    file.delete();
+                    dataFile.delete();
+                }
+            }
+        }
+
+        mEvictor.requestTrim();
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.hls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Segments of an HLS media playlist, kept in flat arrays: start times, durations, and
+ * the raw URI bytes of all segments in one shared buffer. Segment URLs are only decoded
+ * and resolved when asked for.
+ */
+public class HlsMediaPlaylist {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+
+    private final String mBaseUrl;
+    private URL mBase;
+    private int mCount;
+    private long[] mStartTimesUs = new long[INITIAL_CAPACITY];
+    private long[] mDurationsUs = new long[INITIAL_CAPACITY];
+    private int[] mUriOffsets = new int[INITIAL_CAPACITY];
+    private int[] mUriLengths = new int[INITIAL_CAPACITY];
+    private byte[] mUriData = new byte[INITIAL_CAPACITY * 32];
+    private int mUriDataLength;
+    private long mDurationUs;
+    private int mTargetDuration;
+    private long mMediaSequence;
+    private boolean mEndList;
+    private String mFirstVariantUrl;
+
+
+    private HlsMediaPlaylist(String baseUrl) {
+        mBaseUrl = baseUrl;
+    }
+
+    /**
+     * @param baseUrl url of the playlist, relative segment URIs are resolved against it.
+     */
+    public static HlsMediaPlaylist parse(InputStream input, String baseUrl) throws IOException {
+        return parse(new M3u8Parser(), input, baseUrl);
+    }
+
+    public static HlsMediaPlaylist parse(
+            M3u8Parser parser, InputStream input, String baseUrl) throws IOException {
+
+        final HlsMediaPlaylist playlist = new HlsMediaPlaylist(baseUrl);
+        parser.parse(input, new M3u8Parser.Handler() {
+            @Override
+            public void onVariant(
+                    int bandwidth, int width, int height, byte[] uri, int offset, int length) {
+                if (playlist.mFirstVariantUrl == null) {
+                    playlist.mFirstVariantUrl = playlist.resolve(
+                            M3u8Parser.decode(uri, offset, length));
+                }
+            }
+
+            @Override
+            public void onTargetDuration(int seconds) {
+                playlist.mTargetDuration = seconds;
+            }
+
+            @Override
+            public void onMediaSequence(long sequence) {
+                playlist.mMediaSequence = sequence;
+            }
+
+            @Override
+            public void onSegment(long durationUs, byte[] uri, int offset, int length) {
+                playlist.addSegment(durationUs, uri, offset, length);
+            }
+
+            @Override
+            public void onEndList() {
+                playlist.mEndList = true;
+            }
+        });
+
+        return playlist;
+    }
+
+    private void addSegment(long durationUs, byte[] uri, int offset, int length) {
+        if (mCount == mDurationsUs.length) {
+            int capacity = mCount * 2;
+            mStartTimesUs = Arrays.copyOf(mStartTimesUs, capacity);
+            mDurationsUs = Arrays.copyOf(mDurationsUs, capacity);
+            mUriOffsets = Arrays.copyOf(mUriOffsets, capacity);
+            mUriLengths = Arrays.copyOf(mUriLengths, capacity);
+        }
+
+        if (mUriDataLength + length > mUriData.length) {
+            mUriData = Arrays.copyOf(mUriData, Math.max(mUriData.length * 2, mUriDataLength + length));
+        }
+
+        System.arraycopy(uri, offset, mUriData, mUriDataLength, length);
+        mStartTimesUs[mCount] = mDurationUs;
+        mDurationsUs[mCount] = durationUs;
+        mUriOffsets[mCount] = mUriDataLength;
+        mUriLengths[mCount] = length;
+        mUriDataLength += length;
+        mDurationUs += durationUs;
+        ++mCount;
+    }
+
+    /**
+     * A master playlist has variants instead of segments.
+     */
+    public boolean isMaster() {
+        return mFirstVariantUrl != null;
+    }
+
+    /**
+     * For a master playlist, url of its first variant, which players start with.
+     */
+    public String getFirstVariantUrl() {
+        return mFirstVariantUrl;
+    }
+
+    public String getBaseUrl() {
+        return mBaseUrl;
+    }
+
+    public int getSegmentCount() {
+        return mCount;
+    }
+
+    public long getSegmentStartTimeUs(int index) {
+        return mStartTimesUs[index];
+    }
+
+    public long getSegmentDurationUs(int index) {
+        return mDurationsUs[index];
+    }
+
+    public String getSegmentUri(int index) {
+        return M3u8Parser.decode(mUriData, mUriOffsets[index], mUriLengths[index]);
+    }
+
+    /**
+     * Absolute url of the segment, resolved against the playlist url.
+     */
+    public String getSegmentUrl(int index) {
+        return resolve(getSegmentUri(index));
+    }
+
+    private String resolve(String uri) {
+        try {
+            if (mBase == null) {
+                mBase = new URL(mBaseUrl);
+            }
+
+            return new URL(mBase, uri).toString();
+        } catch (MalformedURLException e) {
+            return uri;
+        }
+    }
+
+    /**
+     * Index of the segment playing at {@code positionUs}, -1 if the playlist is empty.
+     */
+    public int getSegmentIndex(long positionUs) {
+        if (mCount == 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = mCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mStartTimesUs[mid] <= positionUs) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    public int getTargetDuration() {
+        return mTargetDuration;
+    }
+
+    public long getMediaSequence() {
+        return mMediaSequence;
+    }
+
+    /**
+     * True for VOD playlists, whose segment list is complete.
+     */
+    public boolean isEndList() {
+        return mEndList;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.hls;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Rewrites the URIs of an M3U8 playlist, e.g. to route segments through a local proxy.
+ * Relative URIs are resolved against the playlist url first, so the rewritten playlist
+ * no longer depends on where it is served from.
+ */
+public final class HlsPlaylistRewriter {
+
+    public static final String MIME_TYPE = "application/vnd.apple.mpegurl";
+
+    private static final String URI_ATTRIBUTE = "URI=\"";
+    private static final String TAG_KEY = "#EXT-X-KEY:";
+    private static final String TAG_SESSION_KEY = "#EXT-X-SESSION-KEY:";
+
+
+    public interface UrlMapper {
+        String map(String absoluteUrl);
+    }
+
+
+    private HlsPlaylistRewriter() {
+    }
+
+    public static String rewrite(String playlist, String baseUrl, UrlMapper mapper) {
+        URL base;
+        try {
+            base = new URL(baseUrl);
+        } catch (MalformedURLException e) {
+            base = null;
+        }
+
+        StringBuilder builder = new StringBuilder(playlist.length() * 2);
+        int start = 0;
+        int length = playlist.length();
+        while (start < length) {
+            int end = playlist.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+
+            int lineEnd = end > start && playlist.charAt(end - 1) == '\r' ? end - 1 : end;
+            String line = playlist.substring(start, lineEnd).trim();
+            if (line.length() == 0) {
+                // Keep blank lines as they are.
+            } else if (line.charAt(0) != '#') {
+                builder.append(mapper.map(resolve(base, line)));
+            } else {
+                appendTag(builder, line, base, mapper);
+            }
+
+            builder.append('\n');
+            start = end + 1;
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Tags such as EXT-X-KEY / EXT-X-MAP / EXT-X-MEDIA reference URIs as URI="...".
+     * Key URIs are only resolved, never mapped: keys must not end up in a cache, and
+     * their servers often check auth the proxy doesn't forward.
+     */
+    private static void appendTag(StringBuilder builder, String line, URL base, UrlMapper mapper) {
+        int index = line.indexOf(URI_ATTRIBUTE);
+        int quote = index >= 0 ? line.indexOf('"', index + URI_ATTRIBUTE.length()) : -1;
+        if (quote < 0) {
+            builder.append(line);
+            return;
+        }
+
+        int valueStart = index + URI_ATTRIBUTE.length();
+        String url = resolve(base, line.substring(valueStart, quote));
+        boolean isKey = line.startsWith(TAG_KEY) || line.startsWith(TAG_SESSION_KEY);
+        builder.append(line, 0, valueStart);
+        builder.append(isKey ? url : mapper.map(url));
+        builder.append(line, quote, line.length());
+    }
+
+    private static String resolve(URL base, String uri) {
+        if (base == null) {
+            return uri;
+        }
+
+        try {
+            return new URL(base, uri).toString();
+        } catch (MalformedURLException e) {
+            return uri;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.hls;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import com.jungle.mediaplayer.base.BaseMediaPlayerInterface;
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.proxy.StreamPrefetcher;
+import com.jungle.mediaplayer.proxy.StreamProxy;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the next few segments of an HLS stream, played through a {@link StreamProxy},
+ * downloaded into the proxy cache ahead of the playhead.
+ * <p>
+ * The playhead is polled from the player on the main thread. Segments left behind are
+ * no longer fetched. Only VOD playlists (with EXT-X-ENDLIST) are prefetched; for a
+ * master playlist the first variant is used, which is the one players start with.
+ * <p>
+ * A {@link StreamPrefetcher} passed in may be shared, only the segment requests made
+ * here are cancelled, and it is not shut down with this.
+ */
+public class HlsSegmentPrefetcher {
+
+    private static final String TAG = "HlsSegmentPrefetcher";
+
+    public static final int DEFAULT_SEGMENTS_AHEAD = 3;
+
+    private static final int POLL_INTERVAL = 1000;
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT = 15 * 1000;
+
+
+    private final StreamPrefetcher mPrefetcher;
+    private final boolean mOwnsPrefetcher;
+    private final Set<String> mRequestedUrls = new HashSet<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private final M3u8Parser mParser = new M3u8Parser();
+    private int mSegmentsAhead = DEFAULT_SEGMENTS_AHEAD;
+    private HlsMediaPlaylist mPlaylist;
+    private BaseMediaPlayerInterface mPlayer;
+    private int mGeneration;
+    private int mFirstIndex = -1;
+
+    private Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mPlayer != null) {
+                updatePlayhead(mPlayer.getCurrentPosition());
+                mHandler.postDelayed(this, POLL_INTERVAL);
+            }
+        }
+    };
+
+
+    public HlsSegmentPrefetcher(StreamProxy proxy) {
+        this(new StreamPrefetcher(proxy), true);
+    }
+
+    public HlsSegmentPrefetcher(StreamPrefetcher prefetcher) {
+        this(prefetcher, false);
+    }
+
+    private HlsSegmentPrefetcher(StreamPrefetcher prefetcher, boolean ownsPrefetcher) {
+        mPrefetcher = prefetcher;
+        mOwnsPrefetcher = ownsPrefetcher;
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "JungleMediaPlayer-HlsPlaylist");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setSegmentsAhead(int count) {
+        mSegmentsAhead = Math.max(0, count);
+        mFirstIndex = -1;
+    }
+
+    public int getSegmentsAhead() {
+        return mSegmentsAhead;
+    }
+
+    /**
+     * Loads {@code playlistUrl} (the origin url, not the proxied one) and follows the
+     * playhead of {@code player}. Must be called on the main thread.
+     */
+    public void start(final String playlistUrl, BaseMediaPlayerInterface player) {
+        stop();
+
+        mPlayer = player;
+        final int generation = mGeneration;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final HlsMediaPlaylist playlist = loadMediaPlaylist(playlistUrl);
+                if (playlist == null) {
+                    return;
+                }
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mPlaylist = playlist;
+                            mPollRunnable.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public void stop() {
+        ++mGeneration;
+        mHandler.removeCallbacks(mPollRunnable);
+        mPlayer = null;
+        mPlaylist = null;
+        mFirstIndex = -1;
+
+        for (String url : mRequestedUrls) {
+            mPrefetcher.cancelUrl(url);
+        }
+
+        mRequestedUrls.clear();
+    }
+
+    public void shutdown() {
+        stop();
+        if (mOwnsPrefetcher) {
+            mPrefetcher.shutdown();
+        }
+
+        mExecutor.shutdown();
+    }
+
+    public HlsMediaPlaylist getPlaylist() {
+        return mPlaylist;
+    }
+
+    /**
+     * Prefetches the segments after the one playing at {@code positionMs}.
+     */
+    public void updatePlayhead(int positionMs) {
+        HlsMediaPlaylist playlist = mPlaylist;
+        if (playlist == null) {
+            return;
+        }
+
+        int index = playlist.getSegmentIndex(positionMs * 1000L);
+        if (index < 0 || index == mFirstIndex) {
+            return;
+        }
+
+        mFirstIndex = index;
+        int end = Math.min(playlist.getSegmentCount(), index + 1 + mSegmentsAhead);
+        Set<String> urls = new HashSet<>();
+        for (int i = index + 1; i < end; ++i) {
+            urls.add(playlist.getSegmentUrl(i));
+        }
+
+        // Segments left behind are cancelled, other requests of the prefetcher are kept.
+        Iterator<String> iterator = mRequestedUrls.iterator();
+        while (iterator.hasNext()) {
+            String url = iterator.next();
+            if (!urls.contains(url)) {
+                iterator.remove();
+                mPrefetcher.cancelUrl(url);
+            }
+        }
+
+        for (int i = index + 1; i < end; ++i) {
+            String url = playlist.getSegmentUrl(i);
+            mRequestedUrls.add(url);
+            mPrefetcher.prefetchUrl(url, StreamPrefetcher.WHOLE_STREAM);
+        }
+    }
+
+    private HlsMediaPlaylist loadMediaPlaylist(String url) {
+        try {
+            HlsMediaPlaylist playlist = loadPlaylist(url);
+            if (playlist.isMaster()) {
+                playlist = loadPlaylist(playlist.getFirstVariantUrl());
+            }
+
+            if (!playlist.isEndList()) {
+                PlayerLog.i(TAG, "Not a VOD media playlist, segments are not prefetched.");
+                return null;
+            }
+
+            return playlist;
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Load HLS playlist failed.", e);
+            return null;
+        }
+    }
+
+    private HlsMediaPlaylist loadPlaylist(String url) throws IOException {
+        HttpURLConnection connection = openConnection(url);
+        try {
+            return HlsMediaPlaylist.parse(
+                    mParser, connection.getInputStream(), connection.getURL().toString());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Playlist responded " + code + " for " + url);
+        }
+
+        return connection;
+    }
+}
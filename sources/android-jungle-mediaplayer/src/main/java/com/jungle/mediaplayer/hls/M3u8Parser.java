@@ -0,0 +1,291 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.hls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Streaming parser of M3U8 master and media playlists.
+ * <p>
+ * Tags are matched and numbers parsed directly on the bytes of each line, and results
+ * are pushed to a {@link Handler} as they are read, no intermediate line strings or
+ * tag objects are built. URIs are handed over as a slice of an internal buffer, which
+ * is only valid during the callback. A parser can be reused, but not concurrently.
+ */
+public class M3u8Parser {
+
+    public interface Handler {
+        /**
+         * A variant stream of a master playlist. {@code width} / {@code height} are 0 if
+         * no RESOLUTION is given.
+         */
+        void onVariant(int bandwidth, int width, int height, byte[] uri, int offset, int length);
+
+        void onTargetDuration(int seconds);
+
+        void onMediaSequence(long sequence);
+
+        void onSegment(long durationUs, byte[] uri, int offset, int length);
+
+        void onEndList();
+    }
+
+
+    private static final byte[] TAG_EXTINF = ascii("#EXTINF:");
+    private static final byte[] TAG_STREAM_INF = ascii("#EXT-X-STREAM-INF:");
+    private static final byte[] TAG_TARGET_DURATION = ascii("#EXT-X-TARGETDURATION:");
+    private static final byte[] TAG_MEDIA_SEQUENCE = ascii("#EXT-X-MEDIA-SEQUENCE:");
+    private static final byte[] TAG_ENDLIST = ascii("#EXT-X-ENDLIST");
+    private static final byte[] ATTR_BANDWIDTH = ascii("BANDWIDTH=");
+    private static final byte[] ATTR_RESOLUTION = ascii("RESOLUTION=");
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+
+    private final byte[] mReadBuffer = new byte[READ_BUFFER_SIZE];
+    private byte[] mLine = new byte[256];
+    private int mLineLength;
+    private int mPosition;
+
+    private long mPendingDurationUs;
+    private boolean mPendingVariant;
+    private int mPendingBandwidth;
+    private int mPendingWidth;
+    private int mPendingHeight;
+
+
+    public void parse(InputStream input, Handler handler) throws IOException {
+        mLineLength = 0;
+        mPendingDurationUs = -1;
+        mPendingVariant = false;
+
+        int read;
+        while ((read = input.read(mReadBuffer)) >= 0) {
+            int lineStart = 0;
+            for (int i = 0; i < read; ++i) {
+                byte b = mReadBuffer[i];
+                if (b == '\n' || b == '\r') {
+                    appendLine(lineStart, i);
+                    lineStart = i + 1;
+                    if (mLineLength > 0) {
+                        handleLine(handler);
+                        mLineLength = 0;
+                    }
+                }
+            }
+
+            appendLine(lineStart, read);
+        }
+
+        if (mLineLength > 0) {
+            handleLine(handler);
+            mLineLength = 0;
+        }
+    }
+
+    private void appendLine(int start, int end) {
+        int count = end - start;
+        if (count <= 0) {
+            return;
+        }
+
+        if (mLineLength + count > mLine.length) {
+            byte[] line = new byte[Math.max(mLine.length * 2, mLineLength + count)];
+            System.arraycopy(mLine, 0, line, 0, mLineLength);
+            mLine = line;
+        }
+
+        System.arraycopy(mReadBuffer, start, mLine, mLineLength, count);
+        mLineLength += count;
+    }
+
+    private void handleLine(Handler handler) {
+        int length = mLineLength;
+        while (length > 0 && mLine[length - 1] <= ' ') {
+            --length;
+        }
+
+        int start = 0;
+        while (start < length && mLine[start] <= ' ') {
+            ++start;
+        }
+
+        if (start >= length) {
+            return;
+        }
+
+        if (mLine[start] != '#') {
+            handleUri(handler, start, length - start);
+            return;
+        }
+
+        if (startsWith(start, length, TAG_EXTINF)) {
+            mPosition = start + TAG_EXTINF.length;
+            mPendingDurationUs = parseDecimalUs(length);
+        } else if (startsWith(start, length, TAG_STREAM_INF)) {
+            mPendingVariant = true;
+            mPendingBandwidth = 0;
+            mPendingWidth = 0;
+            mPendingHeight = 0;
+
+            int index = indexOfAttribute(start + TAG_STREAM_INF.length, length, ATTR_BANDWIDTH);
+            if (index >= 0) {
+                mPosition = index + ATTR_BANDWIDTH.length;
+                mPendingBandwidth = (int) parseLong(length);
+            }
+
+            index = indexOfAttribute(start + TAG_STREAM_INF.length, length, ATTR_RESOLUTION);
+            if (index >= 0) {
+                mPosition = index + ATTR_RESOLUTION.length;
+                mPendingWidth = (int) parseLong(length);
+                if (mPosition < length && (mLine[mPosition] == 'x' || mLine[mPosition] == 'X')) {
+                    ++mPosition;
+                    mPendingHeight = (int) parseLong(length);
+                }
+            }
+        } else if (startsWith(start, length, TAG_TARGET_DURATION)) {
+            mPosition = start + TAG_TARGET_DURATION.length;
+            handler.onTargetDuration((int) parseLong(length));
+        } else if (startsWith(start, length, TAG_MEDIA_SEQUENCE)) {
+            mPosition = start + TAG_MEDIA_SEQUENCE.length;
+            handler.onMediaSequence(parseLong(length));
+        } else if (startsWith(start, length, TAG_ENDLIST)) {
+            handler.onEndList();
+        }
+    }
+
+    private void handleUri(Handler handler, int offset, int length) {
+        if (mPendingVariant) {
+            handler.onVariant(mPendingBandwidth, mPendingWidth, mPendingHeight,
+                    mLine, offset, length);
+        } else if (mPendingDurationUs >= 0) {
+            handler.onSegment(mPendingDurationUs, mLine, offset, length);
+        }
+
+        mPendingVariant = false;
+        mPendingDurationUs = -1;
+    }
+
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; ++i) {
+            if (mLine[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds attribute {@code name} in the list starting at {@code start}, only where an
+     * attribute begins, so "BANDWIDTH=" doesn't match the tail of "AVERAGE-BANDWIDTH=".
+     */
+    private int indexOfAttribute(int start, int end, byte[] name) {
+        for (int i = start; i <= end - name.length; ++i) {
+            if ((i == start || mLine[i - 1] == ',' || mLine[i - 1] == ':')
+                    && startsWith(i, end, name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private long parseLong(int end) {
+        long value = 0;
+        while (mPosition < end) {
+            int digit = mLine[mPosition] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+
+            value = value * 10 + digit;
+            ++mPosition;
+        }
+
+        return value;
+    }
+
+    /**
+     * Parses "12.345" at the current position into microseconds.
+     */
+    private long parseDecimalUs(int end) {
+        long value = parseLong(end) * 1000000L;
+        if (mPosition < end && mLine[mPosition] == '.') {
+            ++mPosition;
+            long scale = 100000L;
+            while (mPosition < end) {
+                int digit = mLine[mPosition] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+
+                value += digit * scale;
+                scale /= 10;
+                ++mPosition;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Decodes a URI slice handed to a {@link Handler}.
+     */
+    public static String decode(byte[] buffer, int offset, int length) {
+        try {
+            return new String(buffer, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static boolean isPlaylistUrl(String url) {
+        if (url == null) {
+            return false;
+        }
+
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+
+        return url.regionMatches(true, end - 5, ".m3u8", 0, 5);
+    }
+
+    private static byte[] ascii(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+
+        return bytes;
+    }
+}
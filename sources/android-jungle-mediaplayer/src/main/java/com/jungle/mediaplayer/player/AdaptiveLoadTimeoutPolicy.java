@@ -0,0 +1,124 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import java.util.Arrays;
+
+/**
+ * Derives the deadline from the p95 of recently observed prepare times, so a real
+ * failure surfaces quickly on a good network, while a slow network gets more time.
+ * The deadline is also pushed out while buffering still makes progress.
+ * <p>
+ * Prepare times mostly depend on the network, so by default all players share
+ * {@link #getDefault()}.
+ */
+public class AdaptiveLoadTimeoutPolicy implements LoadTimeoutPolicy {
+
+    public static final long DEFAULT_TIMEOUT = 30 * 1000;
+    public static final long DEFAULT_MIN_TIMEOUT = 10 * 1000;
+    public static final long DEFAULT_MAX_TIMEOUT = 60 * 1000;
+    public static final long DEFAULT_PROGRESS_EXTENSION = 10 * 1000;
+    public static final long DEFAULT_MAX_LOAD_TIMEOUT = 120 * 1000;
+
+    private static final int SAMPLE_COUNT = 20;
+    private static final int MIN_SAMPLE_COUNT = 5;
+    private static final int TIMEOUT_MULTIPLIER = 3;
+
+    private static AdaptiveLoadTimeoutPolicy sDefaultPolicy;
+
+
+    public static synchronized AdaptiveLoadTimeoutPolicy getDefault() {
+        if (sDefaultPolicy == null) {
+            sDefaultPolicy = new AdaptiveLoadTimeoutPolicy();
+        }
+
+        return sDefaultPolicy;
+    }
+
+
+    private final long mMinTimeout;
+    private final long mMaxTimeout;
+    private final long mProgressExtension;
+    private final long mMaxLoadTimeout;
+    private final long[] mSamples = new long[SAMPLE_COUNT];
+    private final long[] mSortBuffer = new long[SAMPLE_COUNT];
+    private int mSampleIndex;
+    private int mSampleSize;
+    private long mTimeout = DEFAULT_TIMEOUT;
+
+
+    public AdaptiveLoadTimeoutPolicy() {
+        this(DEFAULT_MIN_TIMEOUT, DEFAULT_MAX_TIMEOUT,
+                DEFAULT_PROGRESS_EXTENSION, DEFAULT_MAX_LOAD_TIMEOUT);
+    }
+
+    public AdaptiveLoadTimeoutPolicy(
+            long minTimeout, long maxTimeout,
+            long progressExtension, long maxLoadTimeout) {
+
+        mMinTimeout = minTimeout;
+        mMaxTimeout = Math.max(minTimeout, maxTimeout);
+        mProgressExtension = progressExtension;
+        mMaxLoadTimeout = Math.max(mMaxTimeout, maxLoadTimeout);
+    }
+
+    @Override
+    public synchronized long getLoadTimeout() {
+        return mTimeout;
+    }
+
+    @Override
+    public long getProgressExtension() {
+        return mProgressExtension;
+    }
+
+    @Override
+    public long getMaxLoadTimeout() {
+        return mMaxLoadTimeout;
+    }
+
+    @Override
+    public synchronized void onPrepared(long prepareDurationMs) {
+        if (prepareDurationMs < 0) {
+            return;
+        }
+
+        mSamples[mSampleIndex] = prepareDurationMs;
+        mSampleIndex = (mSampleIndex + 1) % SAMPLE_COUNT;
+        mSampleSize = Math.min(mSampleSize + 1, SAMPLE_COUNT);
+
+        if (mSampleSize >= MIN_SAMPLE_COUNT) {
+            long timeout = getPercentile95() * TIMEOUT_MULTIPLIER;
+            mTimeout = Math.min(mMaxTimeout, Math.max(mMinTimeout, timeout));
+        }
+    }
+
+    public synchronized void reset() {
+        mSampleIndex = 0;
+        mSampleSize = 0;
+        mTimeout = DEFAULT_TIMEOUT;
+    }
+
+    private long getPercentile95() {
+        System.arraycopy(mSamples, 0, mSortBuffer, 0, mSampleSize);
+        Arrays.sort(mSortBuffer, 0, mSampleSize);
+
+        int index = (int) Math.ceil(mSampleSize * 0.95) - 1;
+        return mSortBuffer[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,846 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.Process;
+import android.support.annotation.RequiresApi;
+import com.jungle.mediaplayer.audio.PcmCache;
+import com.jungle.mediaplayer.audio.PcmClip;
+import com.jungle.mediaplayer.audio.PcmDecoder;
+import com.jungle.mediaplayer.audio.ShortRingBuffer;
+import com.jungle.mediaplayer.audio.TimeStretcher;
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.base.VideoInfo;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Low-latency player of short audio clips, e.g. voice messages.
+ * <p>
+ * A clip is decoded to PCM once and kept in a {@link PcmCache}, so replaying it skips the
+ * whole mediaserver setup. The first play starts as soon as the first PCM is decoded.
+ * Playback goes through an {@link AudioTrack} created up front and kept across clips:
+ * a feeder thread of the player copies PCM into a lock-free {@link ShortRingBuffer},
+ * blocking while it is full, and an audio thread drains it through a
+ * {@link TimeStretcher} into the track, which changes the playback speed without
+ * changing the pitch. The listener contract is that of the other players.
+ * <p>
+ * The track stays warm across {@link #play} calls. {@link #destroy()} frees it along
+ * with the audio thread, a player used again after creates them anew.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+public class AudioTrackMediaPlayer extends BaseMediaPlayer {
+
+    private static final String TAG = "AudioTrackMediaPlayer";
+
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+    public static final int DEFAULT_CHANNEL_COUNT = 1;
+
+    private static final int CHUNK_FRAMES = 1024;
+    private static final int RING_CAPACITY = 16 * 1024;
+    private static final long IDLE_PARK_NANOS = 2 * 1000 * 1000;
+    private static final long CLIP_WAIT_MILLIS = 20;
+    private static final long DRAIN_TIMEOUT_MILLIS = 1000;
+
+    private static final ThreadPoolExecutor sDecodeExecutor =
+            createExecutor("JungleMediaPlayer-PcmDecode", Process.THREAD_PRIORITY_DEFAULT, 2);
+
+
+    private static ThreadPoolExecutor createExecutor(
+            final String name, final int priority, int threadCount) {
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threadCount, threadCount, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(priority);
+                        runnable.run();
+                    }
+                }, name + "-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    private static final int CMD_PLAY = 1;
+    private static final int CMD_PAUSE = 2;
+    private static final int CMD_RESUME = 3;
+    private static final int CMD_STOP = 4;
+    private static final int CMD_VOLUME = 5;
+    private static final int CMD_SPEED = 6;
+    private static final int CMD_QUIT = 7;
+
+
+    private static class Command {
+
+        final int mType;
+        PcmClip mClip;
+        int mStartFrame;
+        int mToken;
+        boolean mPlay;
+        boolean mSeek;
+        float mValue;
+
+
+        Command(int type) {
+            mType = type;
+        }
+    }
+
+
+    /**
+     * Copies PCM of a clip into the ring, waiting for the decoder when it catches up.
+     * Parks while the ring is full, until the audio thread reads from it.
+     */
+    private class Feeder implements Runnable {
+
+        private final Thread mAudioThread;
+        private final PcmClip mClip;
+        private int mPosition;
+        private volatile Thread mThread;
+        private volatile boolean mCancelled;
+        private volatile boolean mFinished;
+
+
+        Feeder(Thread audioThread, PcmClip clip, int startSample) {
+            mAudioThread = audioThread;
+            mClip = clip;
+            mPosition = startSample;
+        }
+
+        @Override
+        public void run() {
+            mThread = Thread.currentThread();
+            try {
+                while (!mCancelled) {
+                    int length = mClip.awaitLength(mPosition + 1, CLIP_WAIT_MILLIS);
+                    if (mPosition >= length) {
+                        if (mClip.isComplete()) {
+                            break;
+                        }
+                        continue;
+                    }
+
+                    // Samples below the length never change, the snapshot is safe to read.
+                    short[] samples = mClip.getSamples();
+                    int written = mRing.write(samples, mPosition, length - mPosition);
+                    if (written == 0) {
+                        LockSupport.park(this);
+                    }
+
+                    mPosition += written;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mFinished = true;
+                LockSupport.unpark(mAudioThread);
+            }
+        }
+
+        /**
+         * Audio thread: space was made in the ring, or the feeder was cancelled.
+         */
+        void wake() {
+            Thread thread = mThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+
+    private class AudioThread extends Thread {
+
+        private final Queue<Command> mCommands = new ConcurrentLinkedQueue<>();
+        private final short[] mChunk = new short[CHUNK_FRAMES * 2];
+        private final short[] mStretched = new short[CHUNK_FRAMES * 2];
+        private final short[] mSilence = new short[CHUNK_FRAMES * 2];
+        private final ThreadPoolExecutor mFeedExecutor =
+                createExecutor("JungleMediaPlayer-PcmFeed", Process.THREAD_PRIORITY_AUDIO, 1);
+        private final int mWarmSampleRate;
+        private final int mWarmChannelCount;
+        private volatile AudioTrack mTrack;
+        private TimeStretcher mStretcher;
+        private volatile float mSpeed;
+        private volatile int mSampleRate;
+        private int mChannelCount;
+        private int mBufferFrames;
+        private Feeder mFeeder;
+        private boolean mPlaying;
+        private boolean mStartReported;
+        private boolean mInputFinished;
+        private int mToken;
+        private float mVolume;
+        private volatile int mStartFrame;
+        private volatile int mHeadBase;
+        private volatile long mWrittenFrames;
+        private volatile long mStretchedFrames;
+        private long mPaddedFrames;
+        private long mDrainStartTime;
+
+
+        AudioThread(int sampleRate, int channelCount, float volume, float speed) {
+            super("JungleMediaPlayer-AudioTrack");
+            mWarmSampleRate = sampleRate;
+            mWarmChannelCount = channelCount;
+            mVolume = volume;
+            mSpeed = speed;
+            setDaemon(true);
+        }
+
+        void post(Command command) {
+            mCommands.offer(command);
+            LockSupport.unpark(this);
+        }
+
+        /**
+         * Any thread: frame of the clip being heard now, -1 if not playing a clip.
+         */
+        int getPlayedFrame() {
+            AudioTrack track = mTrack;
+            if (track == null) {
+                return -1;
+            }
+
+            // Frames still queued in the track, mapped back to clip frames by the speed.
+            long written = mWrittenFrames;
+            long queued = written - Math.min(track.getPlaybackHeadPosition() - mHeadBase, written);
+            long played = mStretchedFrames - (long) (queued * mSpeed);
+            return mStartFrame + (int) Math.max(0, played);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            ensureTrack(mWarmSampleRate, mWarmChannelCount);
+
+            while (true) {
+                Command command;
+                while ((command = mCommands.poll()) != null) {
+                    if (command.mType == CMD_QUIT) {
+                        stopFeeder();
+                        releaseTrack();
+                        mFeedExecutor.shutdown();
+                        return;
+                    }
+
+                    handleCommand(command);
+                }
+
+                if (!mPlaying || mFeeder == null) {
+                    LockSupport.park(this);
+                } else if (!feed()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        }
+
+        /**
+         * @return false if there was nothing to do.
+         */
+        private boolean feed() {
+            int frames = Math.min(mRing.available() / mChannelCount,
+                    Math.min(mStretcher.getInputSpace(), CHUNK_FRAMES));
+            if (frames > 0) {
+                mRing.read(mChunk, 0, frames * mChannelCount);
+                mFeeder.wake();
+                mStretcher.putInput(mChunk, 0, frames);
+            } else if (mFeeder.mFinished && mRing.available() == 0 && !mInputFinished) {
+                mInputFinished = true;
+                mStretcher.finish();
+            }
+
+            int stretched = mStretcher.receiveOutput(mStretched, 0, CHUNK_FRAMES);
+            if (stretched > 0) {
+                write(mStretched, stretched * mChannelCount);
+                return true;
+            }
+
+            if (frames > 0) {
+                return true;
+            }
+
+            if (!mStretcher.isDrained()) {
+                return false;
+            }
+
+            // All written. Pad with silence until the track played it out, a streaming
+            // track may hold back a tail shorter than its start threshold.
+            long played = mTrack.getPlaybackHeadPosition() - mHeadBase;
+            if (played >= mWrittenFrames) {
+                onCompleted();
+                return true;
+            }
+
+            if (mDrainStartTime == 0) {
+                mDrainStartTime = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - mDrainStartTime > DRAIN_TIMEOUT_MILLIS) {
+                PlayerLog.w(TAG, "AudioTrack did not drain, complete anyway.");
+                onCompleted();
+                return true;
+            }
+
+            if (mPaddedFrames < mBufferFrames) {
+                int silence = Math.min(CHUNK_FRAMES, mSilence.length / mChannelCount);
+                mTrack.write(mSilence, 0, silence * mChannelCount);
+                mPaddedFrames += silence;
+                return true;
+            }
+
+            return false;
+        }
+
+        private void write(short[] samples, int count) {
+            int written = mTrack.write(samples, 0, count);
+            mStretchedFrames = mStretcher.getInputPosition();
+            if (written > 0) {
+                mWrittenFrames += written / mChannelCount;
+                if (!mStartReported) {
+                    mStartReported = true;
+                    postStarted(mToken);
+                }
+            }
+        }
+
+        private void onCompleted() {
+            mFeeder = null;
+            mPlaying = false;
+            mTrack.pause();
+            postCompleted(mToken);
+        }
+
+        private void handleCommand(Command command) {
+            switch (command.mType) {
+                case CMD_PLAY:
+                    startClip(command);
+                    break;
+                case CMD_PAUSE:
+                    if (mTrack != null) {
+                        mTrack.pause();
+                    }
+                    mPlaying = false;
+                    break;
+                case CMD_RESUME:
+                    if (mTrack != null && mFeeder != null) {
+                        mTrack.play();
+                        mPlaying = true;
+                    }
+                    break;
+                case CMD_STOP:
+                    stopFeeder();
+                    mRing.clear();
+                    if (mTrack != null) {
+                        mTrack.pause();
+                        mTrack.flush();
+                    }
+                    mPlaying = false;
+                    break;
+                case CMD_VOLUME:
+                    mVolume = command.mValue;
+                    applyVolume();
+                    break;
+                case CMD_SPEED:
+                    mSpeed = command.mValue;
+                    if (mStretcher != null) {
+                        mStretcher.setSpeed(mSpeed);
+                    }
+                    break;
+            }
+        }
+
+        private void startClip(Command command) {
+            stopFeeder();
+            mRing.clear();
+
+            PcmClip clip = command.mClip;
+            if (!ensureTrack(clip.getSampleRate(), clip.getChannelCount())) {
+                postFailed(command.mToken);
+                return;
+            }
+
+            mTrack.pause();
+            mTrack.flush();
+            mHeadBase = mTrack.getPlaybackHeadPosition();
+            mStretcher.reset();
+            mInputFinished = false;
+            mWrittenFrames = 0;
+            mStretchedFrames = 0;
+            mPaddedFrames = 0;
+            mDrainStartTime = 0;
+            mStartFrame = command.mStartFrame;
+            mToken = command.mToken;
+            mStartReported = false;
+
+            mFeeder = new Feeder(this, clip, command.mStartFrame * mChannelCount);
+            mFeedExecutor.execute(mFeeder);
+
+            mPlaying = command.mPlay;
+            if (mPlaying) {
+                mTrack.play();
+            }
+
+            postClipStarted(command.mToken, command.mSeek);
+        }
+
+        /**
+         * Waits for the feeder to exit, so the ring has a single writer again. It exits
+         * at the latest after its {@link PcmClip#awaitLength} wait.
+         */
+        private void stopFeeder() {
+            Feeder feeder = mFeeder;
+            mFeeder = null;
+            if (feeder == null) {
+                return;
+            }
+
+            feeder.mCancelled = true;
+            feeder.wake();
+            while (!feeder.mFinished) {
+                // Commands posted meanwhile stay queued, only the wake-up is consumed.
+                LockSupport.park(this);
+            }
+        }
+
+        private boolean ensureTrack(int sampleRate, int channelCount) {
+            if (mTrack != null && mSampleRate == sampleRate && mChannelCount == channelCount) {
+                return true;
+            }
+
+            releaseTrack();
+            if (sampleRate <= 0 || channelCount < 1 || channelCount > 2) {
+                PlayerLog.e(TAG, "Unsupported PCM format.");
+                return false;
+            }
+
+            int channelConfig = channelCount == 1
+                    ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+            int bufferSize = AudioTrack.getMinBufferSize(
+                    sampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+            if (bufferSize <= 0) {
+                PlayerLog.e(TAG, "Unsupported PCM format.");
+                return false;
+            }
+
+            AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate,
+                    channelConfig, AudioFormat.ENCODING_PCM_16BIT, bufferSize,
+                    AudioTrack.MODE_STREAM);
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                PlayerLog.e(TAG, "Create AudioTrack failed.");
+                track.release();
+                return false;
+            }
+
+            mSampleRate = sampleRate;
+            mChannelCount = channelCount;
+            mBufferFrames = bufferSize / 2 / channelCount;
+            mTrack = track;
+            mStretcher = new TimeStretcher(sampleRate, channelCount);
+            mStretcher.setSpeed(mSpeed);
+            applyVolume();
+            return true;
+        }
+
+        @SuppressWarnings("deprecation")
+        private void applyVolume() {
+            if (mTrack == null) {
+                return;
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                mTrack.setVolume(mVolume);
+            } else {
+                mTrack.setStereoVolume(mVolume, mVolume);
+            }
+        }
+
+        private void releaseTrack() {
+            AudioTrack track = mTrack;
+            mTrack = null;
+            if (track != null) {
+                track.release();
+            }
+        }
+    }
+
+
+    private final ShortRingBuffer mRing = new ShortRingBuffer(RING_CAPACITY);
+    private final int mWarmSampleRate;
+    private final int mWarmChannelCount;
+    private AudioThread mAudioThread;
+    private float mVolume = 1f;
+    private PcmCache mPcmCache;
+    private PcmDecoder mDecoder;
+    private PcmClip mClip;
+    private int mSession;
+    private int mPlayToken;
+    private int mSeekPosition = -1;
+
+
+    public AudioTrackMediaPlayer(Context context) {
+        this(context, DEFAULT_SAMPLE_RATE, DEFAULT_CHANNEL_COUNT, PcmCache.getDefault());
+    }
+
+    /**
+     * @param sampleRate format the track is pre-warmed with, clips of another format
+     * pay for creating a new track once.
+     */
+    public AudioTrackMediaPlayer(
+            Context context, int sampleRate, int channelCount, PcmCache cache) {
+
+        super(context);
+        mPcmCache = cache;
+        mWarmSampleRate = sampleRate;
+        mWarmChannelCount = channelCount;
+        ensureAudioThread();
+    }
+
+    public PcmCache getPcmCache() {
+        return mPcmCache;
+    }
+
+    @Override
+    public void play(VideoInfo videoInfo) {
+        stopClip();
+        super.play(videoInfo);
+
+        notifyStartPlay();
+        notifyLoading();
+
+        final String key = videoInfo.getStreamUrl();
+        PcmClip clip = mPcmCache.get(key);
+        if (clip != null) {
+            onClipReady(clip);
+            return;
+        }
+
+        final int session = mSession;
+        final PcmDecoder decoder = new PcmDecoder(mContext, videoInfo);
+        mDecoder = decoder;
+        sDecodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decoder.decode(new PcmDecoder.Listener() {
+                        @Override
+                        public void onFormatReady(final PcmClip clip) {
+                            mMainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (session == mSession) {
+                                        onClipReady(clip);
+                                    }
+                                }
+                            });
+                        }
+                    });
+
+                    mPcmCache.put(key, decoder.getClip());
+                } catch (Exception e) {
+                    if (decoder.isCancelled()) {
+                        return;
+                    }
+
+                    PlayerLog.e(TAG, "Decode clip failed.", e);
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (session == mSession) {
+                                stopClip();
+                                notifyError(MediaPlayer.MEDIA_ERROR_UNKNOWN,
+                                        MediaPlayer.MEDIA_ERROR_MALFORMED, true,
+                                        "Decode clip failed.");
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void onClipReady(PcmClip clip) {
+        PlayerLog.d(TAG, "**SUCCESS** Clip Prepared!");
+
+        mClip = clip;
+        mStateMachine.transitionTo(PlayerState.PREPARED);
+        mLoadTimeoutPolicy.onPrepared(
+                mStateMachine.getElapsedTime(PlayerState.PREPARING, PlayerState.PREPARED));
+
+        playWithMediaRender();
+        clearLoadingFailed();
+        notifyFinishLoading();
+    }
+
+    @Override
+    protected void playWithMediaRender() {
+        if (mClip == null || !mStateMachine.canTransitionTo(PlayerState.STARTED)) {
+            return;
+        }
+
+        mStateMachine.transitionTo(PlayerState.STARTED);
+        int startPosition = mVideoInfo != null ? mVideoInfo.getCurrentPosition() : 0;
+        startClip(startPosition, true, false);
+        scheduleSavePosition();
+    }
+
+    @Override
+    protected void surfaceHolderChanged() {
+    }
+
+    /**
+     * @param seek whether the clip is restarted by {@link #seekTo}, which is then reported
+     * completed once the clip plays from {@code positionMillis}.
+     */
+    private void startClip(int positionMillis, boolean play, boolean seek) {
+        Command command = new Command(CMD_PLAY);
+        command.mClip = mClip;
+        command.mStartFrame = (int) ((long) positionMillis * mClip.getSampleRate() / 1000);
+        command.mToken = ++mPlayToken;
+        command.mPlay = play;
+        command.mSeek = seek;
+        mSeekPosition = positionMillis;
+        ensureAudioThread().post(command);
+    }
+
+    private AudioThread ensureAudioThread() {
+        if (mAudioThread == null) {
+            mAudioThread = new AudioThread(
+                    mWarmSampleRate, mWarmChannelCount, mVolume, mPlaybackSpeed);
+            mAudioThread.start();
+        }
+
+        return mAudioThread;
+    }
+
+    private void postCommand(Command command) {
+        if (mAudioThread != null) {
+            mAudioThread.post(command);
+        }
+    }
+
+    /**
+     * Stops playback and decoding of the current clip, and drops its pending events.
+     */
+    private void stopClip() {
+        ++mSession;
+        ++mPlayToken;
+        mSeekPosition = -1;
+        mClip = null;
+        if (mDecoder != null) {
+            mDecoder.cancel();
+            mDecoder = null;
+        }
+
+        postCommand(new Command(CMD_STOP));
+    }
+
+    private void postStarted(final int token) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (token != mPlayToken) {
+                    return;
+                }
+
+                // Audio only, the first frame written to the track counts as the first frame.
+                mStateMachine.markFirstFrame();
+                if (mMetrics != null) {
+                    mMetrics.onPlayerInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+                }
+            }
+        });
+    }
+
+    private void postClipStarted(final int token, final boolean seek) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (token != mPlayToken) {
+                    return;
+                }
+
+                // The position is read from the track from now on.
+                mSeekPosition = -1;
+                if (seek) {
+                    notifySeekComplete();
+                }
+            }
+        });
+    }
+
+    private void postCompleted(final int token) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (token != mPlayToken) {
+                    return;
+                }
+
+                PlayerLog.d(TAG, "Clip Play Complete!");
+                mStateMachine.transitionTo(PlayerState.PLAYBACK_COMPLETED);
+                notifyPlayComplete();
+            }
+        });
+    }
+
+    private void postFailed(final int token) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (token == mPlayToken) {
+                    stopClip();
+                    notifyError(MediaPlayer.MEDIA_ERROR_UNKNOWN,
+                            MediaPlayer.MEDIA_ERROR_UNSUPPORTED, false,
+                            "AudioTrack can not play this clip.");
+                }
+            }
+        });
+    }
+
+    @Override
+    public void pause() {
+        if (mStateMachine.getState() == PlayerState.STARTED) {
+            mStateMachine.transitionTo(PlayerState.PAUSED);
+            postCommand(new Command(CMD_PAUSE));
+            notifyPaused();
+        }
+    }
+
+    @Override
+    public void resume() {
+        if (mClip == null || !mStateMachine.canTransitionTo(PlayerState.STARTED)) {
+            return;
+        }
+
+        boolean completed = mStateMachine.getState() == PlayerState.PLAYBACK_COMPLETED;
+        mStateMachine.transitionTo(PlayerState.STARTED);
+        if (completed) {
+            startClip(0, true, false);
+        } else {
+            postCommand(new Command(CMD_RESUME));
+        }
+
+        notifyResumed();
+    }
+
+    @Override
+    public void stop() {
+        savePosition();
+        if (mStateMachine.canTransitionTo(PlayerState.STOPPED)) {
+            mStateMachine.transitionTo(PlayerState.STOPPED);
+        }
+
+        stopClip();
+        notifyStopped();
+    }
+
+    @Override
+    public void seekTo(int millSeconds) {
+        if (mClip == null || !mStateMachine.isPrepared()) {
+            return;
+        }
+
+        int position = Math.max(0, Math.min(millSeconds, getDuration()));
+        boolean play = mStateMachine.getState() == PlayerState.STARTED;
+        if (mStateMachine.getState() == PlayerState.PLAYBACK_COMPLETED) {
+            mStateMachine.transitionTo(PlayerState.STARTED);
+            scheduleSavePosition();
+            play = true;
+        }
+
+        notifyStartSeek();
+        startClip(position, play, true);
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        mVolume = volume;
+        Command command = new Command(CMD_VOLUME);
+        command.mValue = volume;
+        postCommand(command);
+    }
+
+    @Override
+    protected void onPlaybackSpeedChanged(float speed) {
+        Command command = new Command(CMD_SPEED);
+        command.mValue = speed;
+        postCommand(command);
+    }
+
+    @Override
+    public int getDuration() {
+        return mClip != null ? mClip.getDurationMs() : 0;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (mClip == null || mStateMachine.getState() == PlayerState.PLAYBACK_COMPLETED) {
+            return 0;
+        }
+
+        if (mSeekPosition >= 0) {
+            return mSeekPosition;
+        }
+
+        int frame = mAudioThread != null ? mAudioThread.getPlayedFrame() : -1;
+        int sampleRate = mClip.getSampleRate();
+        return frame >= 0 && sampleRate > 0 ? (int) ((long) frame * 1000 / sampleRate) : 0;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mStateMachine.getState() == PlayerState.STARTED;
+    }
+
+    @Override
+    public boolean hasVideoPlay() {
+        return mClip != null || mDecoder != null;
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        stopClip();
+        postCommand(new Command(CMD_QUIT));
+        mAudioThread = null;
+        mStateMachine.transitionTo(PlayerState.END);
+    }
+}
@@ -21,24 +21,31 @@ package com.jungle.mediaplayer.player;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import com.jungle.mediaplayer.audio.TimeStretcher;
+import com.jungle.mediaplayer.base.BandwidthEstimator;
 import com.jungle.mediaplayer.base.BaseMediaPlayerInterface;
 import com.jungle.mediaplayer.base.BaseMediaPlayerListener;
+import com.jungle.mediaplayer.base.BufferVideoInfo;
 import com.jungle.mediaplayer.base.MediaSize;
+import com.jungle.mediaplayer.base.PlaybackPositionStore;
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.base.Rendition;
 import com.jungle.mediaplayer.base.VideoInfo;
 import com.jungle.mediaplayer.player.render.MediaRender;
 import com.jungle.mediaplayer.player.render.MockMediaRender;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public abstract class BaseMediaPlayer
         implements BaseMediaPlayerInterface, MediaRender.Listener {
 
     protected static final String TAG = "BaseMediaPlayer";
 
+    private static final int POSITION_SAVE_INTERVAL = 1000;
+
 
     protected interface NotifyListenerRunnable {
         void run(BaseMediaPlayerListener listener);
@@ -47,21 +54,31 @@ public abstract class BaseMediaPlayer
 
     protected Context mContext;
     protected MediaRender mMediaRender;
-    protected List<BaseMediaPlayerListener> mPlayerListeners = new ArrayList<>();
+    protected PlayerListenerRegistry mListenerRegistry = new PlayerListenerRegistry();
     protected Handler mMainHandler = new Handler(Looper.getMainLooper());
     protected VideoInfo mVideoInfo;
     protected int mVideoWidth;
     protected int mVideoHeight;
-    protected boolean mIsLoading;
-    protected boolean mIsLoadingFailed;
-    protected boolean mMediaPlayerIsPrepared;
+    protected PlayerStateMachine mStateMachine = new PlayerStateMachine();
+    protected boolean mIsBuffering;
     protected boolean mVideoSizeInitialized;
     protected int mBufferPercent;
     protected int mVideoContainerZoneWidth;
     protected int mVideoContainerZoneHeight;
     protected boolean mAutoPlayWhenHolderCreated;
     protected boolean mAutoResumeWhenHolderCreated = true;
-    protected boolean mIsPaused = false;
+    protected int mPreloadHitCount;
+    protected int mPreloadMissCount;
+    protected PlaybackMetrics mMetrics;
+    protected LoadTimeoutPolicy mLoadTimeoutPolicy = AdaptiveLoadTimeoutPolicy.getDefault();
+    protected PlaybackPositionStore mPositionStore;
+    protected RenditionSelector mRenditionSelector =
+            new RenditionSelector(BandwidthEstimator.getDefault());
+    protected volatile float mPlaybackSpeed = 1f;
+    protected int mLastErrorWhat;
+    protected int mLastErrorExtra;
+    private long mLoadStartTime;
+    private long mLoadDeadline;
 
 
     public BaseMediaPlayer(Context context) {
@@ -76,26 +93,288 @@ public abstract class BaseMediaPlayer
     }
 
     public void play(VideoInfo videoInfo) {
-        Log.e(TAG, "Pre-Play Video.");
+        PlayerLog.d(TAG, "Pre-Play Video.");
 
-        mIsPaused = false;
-        mIsLoading = true;
-        mIsLoadingFailed = false;
+        mIsBuffering = false;
         mVideoSizeInitialized = false;
-        mMediaPlayerIsPrepared = false;
         mVideoInfo = videoInfo;
+        restorePosition(videoInfo);
+        beginSession(videoInfo);
+        scheduleLoadTimeout();
+        mMainHandler.removeCallbacks(mSavePositionRunnable);
+    }
+
+    /**
+     * Positions of played videos are saved to {@code store}, and videos played from the
+     * beginning resume from their saved position. Null to disable.
+     */
+    public void setPositionStore(PlaybackPositionStore store) {
+        mPositionStore = store;
+    }
+
+    public PlaybackPositionStore getPositionStore() {
+        return mPositionStore;
+    }
+
+    /**
+     * Kept across videos, clamped to [{@link TimeStretcher#MIN_SPEED},
+     * {@link TimeStretcher#MAX_SPEED}].
+     */
+    @Override
+    public void setPlaybackSpeed(float speed) {
+        speed = Math.max(TimeStretcher.MIN_SPEED, Math.min(TimeStretcher.MAX_SPEED, speed));
+        if (speed != mPlaybackSpeed) {
+            mPlaybackSpeed = speed;
+            onPlaybackSpeedChanged(speed);
+        }
+    }
+
+    public float getPlaybackSpeed() {
+        return mPlaybackSpeed;
+    }
+
+    /**
+     * Applies a new playback speed, players that can't change it keep this no-op.
+     */
+    protected void onPlaybackSpeedChanged(float speed) {
+    }
+
+    private void restorePosition(VideoInfo videoInfo) {
+        if (mPositionStore == null || videoInfo == null || videoInfo.getCurrentPosition() > 0
+                || videoInfo instanceof BufferVideoInfo) {
+            return;
+        }
+
+        int position = mPositionStore.getPosition(videoInfo);
+        if (position > 0) {
+            videoInfo.setCurrentPosition(position);
+        }
+    }
+
+    protected void savePosition() {
+        if (mPositionStore == null || mVideoInfo == null || !mStateMachine.isPrepared()
+                || mStateMachine.getState() == PlayerState.PLAYBACK_COMPLETED
+                || mVideoInfo instanceof BufferVideoInfo) {
+            return;
+        }
+
+        int position = getCurrentPosition();
+        if (position > 0) {
+            mPositionStore.setPosition(mVideoInfo, position);
+        }
+    }
+
+    /**
+     * Saves the position periodically while playing. Call when playback (re)starts,
+     * the saving stops by itself once not playing.
+     */
+    protected void scheduleSavePosition() {
+        mMainHandler.removeCallbacks(mSavePositionRunnable);
+        if (mPositionStore != null) {
+            mMainHandler.postDelayed(mSavePositionRunnable, POSITION_SAVE_INTERVAL);
+        }
+    }
+
+    private Runnable mSavePositionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!isPlaying()) {
+                return;
+            }
+
+            savePosition();
+            mMainHandler.postDelayed(this, POSITION_SAVE_INTERVAL);
+        }
+    };
+
+    /**
+     * @param selector null to always play the selected rendition of a video as it is.
+     */
+    public void setRenditionSelector(RenditionSelector selector) {
+        mRenditionSelector = selector;
+    }
+
+    public RenditionSelector getRenditionSelector() {
+        return mRenditionSelector;
+    }
+
+    /**
+     * Switches a multi-rendition video to the rendition the current bandwidth sustains.
+     * Called before a video is prepared, so a reload picks again.
+     */
+    protected void selectRendition(VideoInfo videoInfo) {
+        if (mRenditionSelector == null || videoInfo == null || !videoInfo.hasRenditions()) {
+            return;
+        }
+
+        Rendition rendition = mRenditionSelector.select(videoInfo.getRenditions());
+        if (rendition != null && rendition != videoInfo.getSelectedRendition()) {
+            if (PlayerLog.isLoggable(Log.DEBUG)) {
+                PlayerLog.d(TAG, "Select rendition of " + rendition.getBitrate() + "bps.");
+            }
+
+            videoInfo.selectRendition(rendition);
+        }
+    }
+
+    /**
+     * @param policy null to use {@link AdaptiveLoadTimeoutPolicy#getDefault()}.
+     */
+    public void setLoadTimeoutPolicy(LoadTimeoutPolicy policy) {
+        mLoadTimeoutPolicy = policy != null ? policy : AdaptiveLoadTimeoutPolicy.getDefault();
+    }
+
+    public LoadTimeoutPolicy getLoadTimeoutPolicy() {
+        return mLoadTimeoutPolicy;
+    }
+
+    protected void scheduleLoadTimeout() {
+        mLoadStartTime = SystemClock.uptimeMillis();
+        setLoadDeadline(mLoadStartTime + mLoadTimeoutPolicy.getLoadTimeout());
+    }
+
+    protected void clearLoadingFailed() {
+        mLoadDeadline = 0;
+        mMainHandler.removeCallbacks(mLoadingFailedRunnable);
+    }
+
+    /**
+     * Called when more media data arrived, pushes the pending load deadline out.
+     */
+    protected void onLoadProgress() {
+        if (mLoadDeadline == 0) {
+            return;
+        }
+
+        long extension = mLoadTimeoutPolicy.getProgressExtension();
+        if (extension <= 0) {
+            return;
+        }
 
+        long deadline = Math.min(SystemClock.uptimeMillis() + extension,
+                mLoadStartTime + mLoadTimeoutPolicy.getMaxLoadTimeout());
+        if (deadline > mLoadDeadline) {
+            setLoadDeadline(deadline);
+        }
+    }
+
+    private void setLoadDeadline(long deadline) {
+        mLoadDeadline = deadline;
         mMainHandler.removeCallbacks(mLoadingFailedRunnable);
-        mMainHandler.postDelayed(mLoadingFailedRunnable, 30 * 1000);
+        mMainHandler.postDelayed(mLoadingFailedRunnable,
+                Math.max(0, deadline - SystemClock.uptimeMillis()));
+    }
+
+    /**
+     * Prepares {@code videoInfo} in the background, so a later {@link #play(VideoInfo)}
+     * of the same video only needs to attach the render and start. Only one video is
+     * preloaded at a time. The default implementation does nothing.
+     */
+    public void preload(VideoInfo videoInfo) {
+    }
+
+    public void cancelPreload() {
+    }
+
+    public int getPreloadHitCount() {
+        return mPreloadHitCount;
+    }
+
+    public int getPreloadMissCount() {
+        return mPreloadMissCount;
+    }
+
+    protected void recordPreloadResult(boolean hit) {
+        if (hit) {
+            ++mPreloadHitCount;
+        } else {
+            ++mPreloadMissCount;
+        }
+    }
+
+    protected static boolean isSameVideo(VideoInfo a, VideoInfo b) {
+        if (a == b) {
+            return true;
+        }
+
+        return a != null && b != null && TextUtils.equals(a.getStreamUrl(), b.getStreamUrl());
+    }
+
+    /**
+     * Whether {@code videoInfo} is the video preloaded as {@code preloaded}, in any of its
+     * renditions. Must be checked before {@link #selectRendition}, which may pick another
+     * rendition by now. On a match {@code videoInfo} is switched to the preloaded one.
+     */
+    protected static boolean matchPreloaded(VideoInfo preloaded, VideoInfo videoInfo) {
+        if (isSameVideo(preloaded, videoInfo)) {
+            return true;
+        }
+
+        if (preloaded == null || videoInfo == null || !videoInfo.hasRenditions()) {
+            return false;
+        }
+
+        String url = preloaded.getStreamUrl();
+        for (Rendition rendition : videoInfo.getRenditions()) {
+            if (TextUtils.equals(rendition.getUrl(), url)) {
+                videoInfo.selectRendition(rendition);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Starts a new playback session of {@code videoInfo} at [PREPARING].
+     */
+    protected void beginSession(VideoInfo videoInfo) {
+        if (mMetrics != null) {
+            mMetrics.onPlay(videoInfo);
+        }
+
+        mStateMachine.reset();
+        mStateMachine.transitionTo(PlayerState.PREPARING);
+    }
+
+    /**
+     * The metrics is registered as a player listener and takes the listener of
+     * {@link #getStateMachine()}. Pass null to detach.
+     */
+    public void setPlaybackMetrics(PlaybackMetrics metrics) {
+        if (mMetrics != null) {
+            mMetrics.onDestroy();
+            mListenerRegistry.remove(mMetrics);
+            mStateMachine.setListener(null);
+        }
+
+        mMetrics = metrics;
+        if (metrics != null) {
+            mListenerRegistry.add(metrics);
+            mStateMachine.setListener(metrics);
+        }
+    }
+
+    public PlaybackMetrics getPlaybackMetrics() {
+        return mMetrics;
     }
 
     public void addPlayerListener(BaseMediaPlayerListener listener) {
-        mPlayerListeners.add(listener);
+        mListenerRegistry.add(listener);
+    }
+
+    public void removePlayerListener(BaseMediaPlayerListener listener) {
+        mListenerRegistry.remove(listener);
     }
 
     @Override
     public void destroy() {
-        mMainHandler.removeCallbacks(mLoadingFailedRunnable);
+        savePosition();
+        mMainHandler.removeCallbacks(mSavePositionRunnable);
+        clearLoadingFailed();
+        if (mMetrics != null) {
+            mMetrics.onDestroy();
+        }
     }
 
     public void setAutoResume(boolean autoResume) {
@@ -112,14 +391,35 @@ public abstract class BaseMediaPlayer
         return mMediaRender;
     }
 
+    public int getLastErrorWhat() {
+        return mLastErrorWhat;
+    }
+
+    public int getLastErrorExtra() {
+        return mLastErrorExtra;
+    }
+
+    public PlayerState getPlayerState() {
+        return mStateMachine.getState();
+    }
+
+    public PlayerStateMachine getStateMachine() {
+        return mStateMachine;
+    }
+
     @Override
     public boolean isLoading() {
-        return mIsLoading;
+        return mStateMachine.getState() == PlayerState.PREPARING || mIsBuffering;
     }
 
     @Override
     public boolean isLoadingFailed() {
-        return mIsLoadingFailed;
+        return mStateMachine.getState() == PlayerState.ERROR;
+    }
+
+    @Override
+    public boolean isPaused() {
+        return mStateMachine.getState() == PlayerState.PAUSED;
     }
 
     public boolean isLoadingOrPlaying() {
@@ -133,7 +433,7 @@ public abstract class BaseMediaPlayer
 
     @Override
     public boolean isPlayCompleted() {
-        return false;
+        return mStateMachine.getState() == PlayerState.PLAYBACK_COMPLETED;
     }
 
     public Context getContext() {
@@ -221,142 +521,120 @@ public abstract class BaseMediaPlayer
     protected Runnable mLoadingFailedRunnable = new Runnable() {
         @Override
         public void run() {
+            mLoadDeadline = 0;
             notifyLoadFailed();
         }
     };
 
-    protected void notifyListener(NotifyListenerRunnable runnable) {
-        for (BaseMediaPlayerListener listener : mPlayerListeners) {
+    protected void notifyListener(final NotifyListenerRunnable runnable) {
+        if (Looper.myLooper() != mMainHandler.getLooper()) {
+            // Listeners are always notified on main thread.
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    notifyListener(runnable);
+                }
+            });
+            return;
+        }
+
+        BaseMediaPlayerListener[] listeners = mListenerRegistry.getListeners();
+        for (BaseMediaPlayerListener listener : listeners) {
             runnable.run(listener);
         }
     }
 
     protected void notifyLoading() {
-        Log.e(TAG, "MediaPlayer Loading...");
+        PlayerLog.d(TAG, "MediaPlayer Loading...");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onLoading();
-            }
-        });
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_LOADING);
     }
 
     protected void notifyFinishLoading() {
-        Log.e(TAG, "MediaPlayer Finish Loading!");
+        PlayerLog.d(TAG, "MediaPlayer Finish Loading!");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onFinishLoading();
-            }
-        });
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_FINISH_LOADING);
     }
 
     protected void notifyLoadFailed() {
-        mIsLoading = false;
-        mIsLoadingFailed = true;
-        Log.e(TAG, "MediaPlayer Load **Failed**!!");
-
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onLoadFailed();
-            }
-        });
+        mIsBuffering = false;
+        mStateMachine.transitionTo(PlayerState.ERROR);
+        PlayerLog.w(TAG, "MediaPlayer Load **Failed**!!");
+
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_LOAD_FAILED);
     }
 
     protected void notifyError(int what, String message) {
         notifyError(what, true, message);
     }
 
-    protected void notifyError(final int what, final boolean canReload, final String message) {
-        mIsLoading = false;
-        mIsLoadingFailed = true;
-        Log.e(TAG, String.format("MediaPlayer Error. what = %d, message = %s.", what, message));
+    protected void notifyError(int what, boolean canReload, String message) {
+        notifyError(what, 0, canReload, message);
+    }
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onError(what, canReload, message);
-            }
-        });
+    protected void notifyError(int what, int extra, boolean canReload, String message) {
+        mLastErrorWhat = what;
+        mLastErrorExtra = extra;
+        if (mMetrics != null) {
+            mMetrics.onError(what, extra);
+        }
+
+        mIsBuffering = false;
+        mStateMachine.transitionTo(PlayerState.ERROR);
+        if (PlayerLog.isLoggable(Log.ERROR)) {
+            PlayerLog.e(TAG, "MediaPlayer Error. what = " + what + ", message = " + message + ".");
+        }
+
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_ERROR, what, canReload, message);
     }
 
     protected void notifyStartPlay() {
-        Log.e(TAG, "MediaPlayer Will Play!");
+        PlayerLog.d(TAG, "MediaPlayer Will Play!");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onStartPlay();
-            }
-        });
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_START_PLAY);
     }
 
     protected void notifyPlayComplete() {
-        Log.e(TAG, "MediaPlayer Play Current Complete!");
+        PlayerLog.d(TAG, "MediaPlayer Play Current Complete!");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onPlayComplete();
-            }
-        });
+        if (mPositionStore != null && mVideoInfo != null) {
+            mPositionStore.remove(mVideoInfo);
+        }
+
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_PLAY_COMPLETE);
     }
 
     protected void notifyStartSeek() {
-        Log.e(TAG, "Video Start Seek!");
+        PlayerLog.d(TAG, "Video Start Seek!");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onStartSeek();
-            }
-        });
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_START_SEEK);
     }
 
     protected void notifySeekComplete() {
-        Log.e(TAG, "Video Seek Complete!");
+        PlayerLog.d(TAG, "Video Seek Complete!");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onSeekComplete();
-            }
-        });
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_SEEK_COMPLETE);
     }
 
     protected void notifyPaused() {
-        Log.e(TAG, "MediaPlayer Paused.");
+        PlayerLog.d(TAG, "MediaPlayer Paused.");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onPaused();
-            }
-        });
+        savePosition();
+
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_PAUSED);
     }
 
     protected void notifyResumed() {
-        Log.e(TAG, "MediaPlayer Resumed.");
+        PlayerLog.d(TAG, "MediaPlayer Resumed.");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onResumed();
-            }
-        });
+        scheduleSavePosition();
+
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_RESUMED);
     }
 
     protected void notifyStopped() {
-        Log.e(TAG, "MediaPlayer Stopped!");
+        PlayerLog.d(TAG, "MediaPlayer Stopped!");
 
-        notifyListener(new NotifyListenerRunnable() {
-            @Override
-            public void run(BaseMediaPlayerListener listener) {
-                listener.onStopped();
-            }
-        });
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_STOPPED);
     }
 }
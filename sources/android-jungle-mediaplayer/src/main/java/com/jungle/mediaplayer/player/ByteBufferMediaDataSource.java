@@ -0,0 +1,64 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import android.media.MediaDataSource;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds {@link android.media.MediaPlayer} straight from a shared {@link ByteBuffer},
+ * copying only into the buffers the player reads with.
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class ByteBufferMediaDataSource extends MediaDataSource {
+
+    private final ByteBuffer mBuffer;
+
+
+    /**
+     * @param buffer the content is {@code buffer} from its position to its limit.
+     */
+    public ByteBufferMediaDataSource(ByteBuffer buffer) {
+        mBuffer = buffer.slice();
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) {
+        int limit = mBuffer.limit();
+        if (position >= limit) {
+            return -1;
+        }
+
+        int count = (int) Math.min(size, limit - position);
+        mBuffer.position((int) position);
+        mBuffer.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public long getSize() {
+        return mBuffer.limit();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+/**
+ * Decides how long a player may stay loading before {@code onLoadFailed} is reported.
+ * All times are in milliseconds.
+ */
+public interface LoadTimeoutPolicy {
+
+    /**
+     * @return initial deadline, counted from {@code play()}.
+     */
+    long getLoadTimeout();
+
+    /**
+     * @return how far from now the deadline moves out whenever loading makes progress,
+     * 0 to never extend it.
+     */
+    long getProgressExtension();
+
+    /**
+     * @return hard limit of loading counted from {@code play()}, progress extensions
+     * never go beyond it.
+     */
+    long getMaxLoadTimeout();
+
+    /**
+     * Called with the time from [PREPARING] to [PREPARED] of every successful load.
+     */
+    void onPrepared(long prepareDurationMs);
+}
@@ -0,0 +1,279 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.mediaplayer.player;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps a bounded number of reset-but-alive {@link MediaPlayer} objects, so switching
+ * clips does not pay for native player teardown and re-creation every time.
+ * <p>
+ * Players handed out by {@link #acquire()} are always in the [IDLE] state and have no
+ * listeners attached. Players given back by {@link #recycle(MediaPlayer)} are reset and
+ * kept while the pool has room, otherwise released.
+ * <p>
+ * A player recycled with {@link #recycle(MediaPlayer, Handler)} is pooled at once and
+ * reset on the handler's thread. Until then it is only handed out to callers of the
+ * same looper, whose later commands run after the reset.
+ */
+public class MediaPlayerPool {
+
+    private static final String TAG = "MediaPlayerPool";
+
+    public static final int DEFAULT_MAX_SIZE = 2;
+
+    private static MediaPlayerPool sDefaultPool;
+
+
+    public static synchronized MediaPlayerPool getDefault() {
+        if (sDefaultPool == null) {
+            sDefaultPool = new MediaPlayerPool(DEFAULT_MAX_SIZE);
+        }
+
+        return sDefaultPool;
+    }
+
+
+    private final Deque<MediaPlayer> mIdlePlayers = new ArrayDeque<>();
+    private final Map<MediaPlayer, ResetTask> mPendingResets = new HashMap<>();
+    private final Set<MediaPlayer> mReleaseAfterReset = new HashSet<>();
+    private int mMaxSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mReleasedCount;
+
+
+    public MediaPlayerPool(int maxSize) {
+        mMaxSize = Math.max(0, maxSize);
+    }
+
+    public MediaPlayer acquire() {
+        return acquire(null);
+    }
+
+    /**
+     * @param looper looper the player is driven from, null if driven from the caller.
+     */
+    public synchronized MediaPlayer acquire(Looper looper) {
+        Iterator<MediaPlayer> iterator = mIdlePlayers.iterator();
+        while (iterator.hasNext()) {
+            MediaPlayer player = iterator.next();
+            ResetTask task = mPendingResets.get(player);
+            if (task == null || (looper != null && task.mLooper == looper)) {
+                iterator.remove();
+                ++mHitCount;
+                return player;
+            }
+        }
+
+        ++mMissCount;
+        return new MediaPlayer();
+    }
+
+    public void recycle(MediaPlayer player) {
+        if (player == null) {
+            return;
+        }
+
+        clearListeners(player);
+
+        boolean reused = false;
+        try {
+            player.setDisplay(null);
+            player.reset();
+            reused = offer(player);
+        } catch (Exception e) {
+            PlayerLog.w(TAG, "Reset MediaPlayer failed, will release it.", e);
+        }
+
+        if (!reused) {
+            releasePlayer(player);
+        }
+    }
+
+    /**
+     * Pools {@code player} at once and resets it on {@code handler}, where the previous
+     * commands of the player are queued.
+     */
+    public void recycle(MediaPlayer player, Handler handler) {
+        if (player == null) {
+            return;
+        }
+
+        clearListeners(player);
+
+        synchronized (this) {
+            ResetTask task = new ResetTask(player, handler.getLooper());
+            if (offer(player)) {
+                mPendingResets.put(player, task);
+            } else {
+                mReleaseAfterReset.add(player);
+            }
+
+            // Queued while locked, so no other caller of the looper queues before it.
+            handler.post(task);
+        }
+    }
+
+    private synchronized boolean offer(MediaPlayer player) {
+        if (mIdlePlayers.size() >= mMaxSize || mIdlePlayers.contains(player)) {
+            return false;
+        }
+
+        mIdlePlayers.offerFirst(player);
+        return true;
+    }
+
+    public void setMaxSize(int maxSize) {
+        synchronized (this) {
+            mMaxSize = Math.max(0, maxSize);
+        }
+
+        trimToSize(mMaxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getIdleCount() {
+        return mIdlePlayers.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getReleasedCount() {
+        return mReleasedCount;
+    }
+
+    public synchronized void resetStatistics() {
+        mHitCount = 0;
+        mMissCount = 0;
+        mReleasedCount = 0;
+    }
+
+    public void trimToSize(int size) {
+        while (true) {
+            MediaPlayer player;
+            synchronized (this) {
+                if (mIdlePlayers.size() <= size) {
+                    return;
+                }
+
+                player = mIdlePlayers.pollLast();
+                if (mPendingResets.containsKey(player)) {
+                    // Still driven by its looper, released there after the reset.
+                    mReleaseAfterReset.add(player);
+                    continue;
+                }
+            }
+
+            releasePlayer(player);
+        }
+    }
+
+    public void clear() {
+        trimToSize(0);
+    }
+
+    private void releasePlayer(MediaPlayer player) {
+        synchronized (this) {
+            ++mReleasedCount;
+        }
+
+        try {
+            player.release();
+        } catch (Exception e) {
+            PlayerLog.w(TAG, "Release MediaPlayer failed.", e);
+        }
+    }
+
+    private void onReset(ResetTask task, boolean succeeded) {
+        MediaPlayer player = task.mPlayer;
+        boolean release;
+        synchronized (this) {
+            if (mPendingResets.get(player) == task) {
+                mPendingResets.remove(player);
+            }
+
+            release = mReleaseAfterReset.remove(player);
+            if (!succeeded && mIdlePlayers.remove(player)) {
+                release = true;
+            }
+        }
+
+        if (release) {
+            releasePlayer(player);
+        }
+    }
+
+    private static void clearListeners(MediaPlayer player) {
+        player.setOnErrorListener(null);
+        player.setOnPreparedListener(null);
+        player.setOnCompletionListener(null);
+        player.setOnSeekCompleteListener(null);
+        player.setOnBufferingUpdateListener(null);
+        player.setOnVideoSizeChangedListener(null);
+        player.setOnInfoListener(null);
+    }
+
+
+    private class ResetTask implements Runnable {
+
+        final MediaPlayer mPlayer;
+        final Looper mLooper;
+
+
+        ResetTask(MediaPlayer player, Looper looper) {
+            mPlayer = player;
+            mLooper = looper;
+        }
+
+        @Override
+        public void run() {
+            boolean succeeded = false;
+            try {
+                mPlayer.setDisplay(null);
+                mPlayer.reset();
+                succeeded = true;
+            } catch (Exception e) {
+                PlayerLog.w(TAG, "Reset MediaPlayer failed, will release it.", e);
+            }
+
+            onReset(this, succeeded);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.mediaplayer.player;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * A dedicated thread on which blocking {@link android.media.MediaPlayer} calls
+ * (setDataSource / setDisplay / stop / reset / release ...) are serialized, so they
+ * never run on the main thread.
+ */
+public class MediaPlayerWorker {
+
+    private static final String DEFAULT_THREAD_NAME = "JungleMediaPlayer-Worker";
+
+    private static MediaPlayerWorker sDefaultWorker;
+
+
+    public static synchronized MediaPlayerWorker getDefault() {
+        if (sDefaultWorker == null) {
+            sDefaultWorker = new MediaPlayerWorker(DEFAULT_THREAD_NAME);
+        }
+
+        return sDefaultWorker;
+    }
+
+
+    private HandlerThread mThread;
+
+
+    public MediaPlayerWorker(String name) {
+        mThread = new HandlerThread(name, Process.THREAD_PRIORITY_DEFAULT);
+        mThread.start();
+    }
+
+    public Looper getLooper() {
+        return mThread.getLooper();
+    }
+
+    public Handler createHandler(Handler.Callback callback) {
+        return new Handler(getLooper(), callback);
+    }
+
+    public boolean isWorkerThread() {
+        return Looper.myLooper() == getLooper();
+    }
+
+    public void quit() {
+        mThread.quit();
+    }
+}
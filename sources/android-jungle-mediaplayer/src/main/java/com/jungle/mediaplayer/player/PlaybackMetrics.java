@@ -0,0 +1,288 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import android.media.MediaPlayer;
+import android.os.SystemClock;
+import com.jungle.mediaplayer.base.SimpleMediaPlayerListener;
+import com.jungle.mediaplayer.base.VideoInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects QoE numbers of a player: prepare duration, time to first frame, rebuffering,
+ * seek latency, errors and watch time. Attach with
+ * {@link BaseMediaPlayer#setPlaybackMetrics(PlaybackMetrics)}; a session lasts from
+ * {@code play()} until the next {@code play()} or {@code destroy()}, and then is handed
+ * to the {@link Callback} as an immutable {@link PlaybackSummary}.
+ * <p>
+ * Should only be used on the main thread.
+ */
+public class PlaybackMetrics extends SimpleMediaPlayerListener
+        implements PlayerStateMachine.Listener {
+
+    private static final long NONE = PlayerStateMachine.NO_TIMESTAMP;
+
+
+    public interface Callback {
+        void onSessionFinished(PlaybackSummary summary);
+    }
+
+
+    private Callback mCallback;
+    private PlaybackSummary mLastSummary;
+
+    private boolean mInSession;
+    private String mStreamUrl;
+    private long mStartWallTime;
+    private long mSessionStart;
+    private long mPrepareDuration;
+    private long mFirstFrameTime;
+    private int mRebufferCount;
+    private long mRebufferDuration;
+    private long mRebufferStart;
+    private int mSeekCount;
+    private long mTotalSeekLatency;
+    private long mMaxSeekLatency;
+    private long mSeekStart;
+    private long mWatchTime;
+    private long mWatchStart;
+    private boolean mCompleted;
+    private List<int[]> mErrors = new ArrayList<>();
+
+
+    public PlaybackMetrics() {
+        clearSession();
+    }
+
+    public void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    public PlaybackSummary getLastSummary() {
+        return mLastSummary;
+    }
+
+    public boolean isInSession() {
+        return mInSession;
+    }
+
+    /**
+     * @return summary of the current session so far, or null if not in session.
+     */
+    public PlaybackSummary snapshot() {
+        return mInSession ? buildSummary(now()) : null;
+    }
+
+    void onPlay(VideoInfo videoInfo) {
+        finishSession();
+        mStreamUrl = videoInfo != null ? videoInfo.getStreamUrl() : null;
+    }
+
+    void onDestroy() {
+        finishSession();
+    }
+
+    void onPlayerInfo(int what, int extra) {
+        if (!mInSession) {
+            return;
+        }
+
+        long now = now();
+        if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
+            if (mFirstFrameTime == NONE) {
+                mFirstFrameTime = now;
+            }
+        } else if (what == MediaPlayer.MEDIA_INFO_BUFFERING_START) {
+            // Initial loading & seeking are measured on their own.
+            if (mFirstFrameTime != NONE && mSeekStart == NONE && mRebufferStart == NONE) {
+                mRebufferStart = now;
+                pauseWatchClock(now);
+            }
+        } else if (what == MediaPlayer.MEDIA_INFO_BUFFERING_END) {
+            endRebuffer(now);
+        }
+    }
+
+    void onError(int what, int extra) {
+        if (!mInSession) {
+            return;
+        }
+
+        for (int[] error : mErrors) {
+            if (error[0] == what && error[1] == extra) {
+                ++error[2];
+                return;
+            }
+        }
+
+        mErrors.add(new int[]{what, extra, 1});
+    }
+
+    @Override
+    public void onStateChanged(PlayerState from, PlayerState to, long timestampMs) {
+        if (to == PlayerState.PREPARING && !mInSession) {
+            mInSession = true;
+            mStartWallTime = System.currentTimeMillis();
+            mSessionStart = timestampMs;
+        }
+
+        if (!mInSession) {
+            return;
+        }
+
+        if (from == PlayerState.STARTED) {
+            pauseWatchClock(timestampMs);
+        }
+
+        switch (to) {
+            case PREPARED:
+                if (mPrepareDuration == NONE) {
+                    mPrepareDuration = timestampMs - mSessionStart;
+                }
+                break;
+
+            case STARTED:
+                if (mRebufferStart == NONE) {
+                    mWatchStart = timestampMs;
+                }
+                break;
+
+            case PLAYBACK_COMPLETED:
+                mCompleted = true;
+                break;
+
+            case IDLE:
+            case END:
+                finishSession();
+                break;
+        }
+    }
+
+    /**
+     * Called by the player as soon as {@code seekTo()} is requested, so coalesced
+     * or delayed seeks count from the user's first request.
+     */
+    public void onSeekRequested() {
+        if (mInSession && mSeekStart == NONE) {
+            mSeekStart = now();
+        }
+    }
+
+    @Override
+    public void onStartSeek() {
+        // Players that don't report the request start counting here.
+        onSeekRequested();
+    }
+
+    @Override
+    public void onSeekComplete() {
+        if (!mInSession || mSeekStart == NONE) {
+            return;
+        }
+
+        long latency = now() - mSeekStart;
+        mSeekStart = NONE;
+
+        ++mSeekCount;
+        mTotalSeekLatency += latency;
+        mMaxSeekLatency = Math.max(mMaxSeekLatency, latency);
+    }
+
+    private void endRebuffer(long now) {
+        if (mRebufferStart == NONE) {
+            return;
+        }
+
+        ++mRebufferCount;
+        mRebufferDuration += now - mRebufferStart;
+        mRebufferStart = NONE;
+
+        if (mWatchStart == NONE) {
+            mWatchStart = now;
+        }
+    }
+
+    private void pauseWatchClock(long now) {
+        if (mWatchStart != NONE) {
+            mWatchTime += now - mWatchStart;
+            mWatchStart = NONE;
+        }
+    }
+
+    private void finishSession() {
+        if (!mInSession) {
+            return;
+        }
+
+        long now = now();
+        endRebuffer(now);
+        pauseWatchClock(now);
+
+        mLastSummary = buildSummary(now);
+        clearSession();
+
+        if (mCallback != null) {
+            mCallback.onSessionFinished(mLastSummary);
+        }
+    }
+
+    private PlaybackSummary buildSummary(long now) {
+        long watchTime = mWatchTime;
+        if (mWatchStart != NONE) {
+            watchTime += now - mWatchStart;
+        }
+
+        List<PlaybackSummary.ErrorCount> errors = new ArrayList<>(mErrors.size());
+        for (int[] error : mErrors) {
+            errors.add(new PlaybackSummary.ErrorCount(error[0], error[1], error[2]));
+        }
+
+        return new PlaybackSummary(
+                mStreamUrl, mStartWallTime, now - mSessionStart,
+                mPrepareDuration,
+                mFirstFrameTime != NONE ? mFirstFrameTime - mSessionStart : NONE,
+                mRebufferCount, mRebufferDuration,
+                mSeekCount, mTotalSeekLatency, mMaxSeekLatency,
+                watchTime, mCompleted, errors);
+    }
+
+    private void clearSession() {
+        mInSession = false;
+        mStartWallTime = 0;
+        mSessionStart = NONE;
+        mPrepareDuration = NONE;
+        mFirstFrameTime = NONE;
+        mRebufferCount = 0;
+        mRebufferDuration = 0;
+        mRebufferStart = NONE;
+        mSeekCount = 0;
+        mTotalSeekLatency = 0;
+        mMaxSeekLatency = 0;
+        mSeekStart = NONE;
+        mWatchTime = 0;
+        mWatchStart = NONE;
+        mCompleted = false;
+        mErrors.clear();
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+}
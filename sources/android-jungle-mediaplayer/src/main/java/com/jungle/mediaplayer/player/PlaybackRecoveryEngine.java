@@ -0,0 +1,166 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import android.media.MediaPlayer;
+import android.os.SystemClock;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+/**
+ * Decides whether and when a failed playback should be reloaded.
+ * <p>
+ * Errors are classified by {@link #classify(int, int)}; only {@link ErrorType}s marked
+ * retryable are retried, with exponential backoff and jitter, up to a number of attempts.
+ * The attempt counter starts over once playback has been stable for a while after a
+ * recovery, so a stream that keeps failing right after reload still gives up.
+ * <p>
+ * Should only be used on the main thread.
+ */
+public class PlaybackRecoveryEngine {
+
+    public static final long DEFAULT_BASE_DELAY = 250;
+    public static final long DEFAULT_MAX_DELAY = 8 * 1000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_STABLE_PERIOD = 10 * 1000;
+
+    private static final long NONE = -1;
+
+
+    public enum ErrorType {
+        SERVER_DIED,
+        IO,
+        TIMED_OUT,
+        UNSUPPORTED,
+        MALFORMED,
+        UNKNOWN
+    }
+
+
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final int mMaxAttempts;
+    private final EnumSet<ErrorType> mRetryableTypes =
+            EnumSet.of(ErrorType.SERVER_DIED, ErrorType.IO, ErrorType.TIMED_OUT, ErrorType.UNKNOWN);
+    private final Random mRandom = new Random();
+    private long mStablePeriod = DEFAULT_STABLE_PERIOD;
+    private int mAttempts;
+    private long mRecoveredTime = NONE;
+
+
+    public PlaybackRecoveryEngine() {
+        this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public PlaybackRecoveryEngine(long baseDelay, long maxDelay, int maxAttempts) {
+        mBaseDelay = Math.max(1, baseDelay);
+        mMaxDelay = Math.max(mBaseDelay, maxDelay);
+        mMaxAttempts = maxAttempts;
+    }
+
+    public static ErrorType classify(int what, int extra) {
+        if (what == MediaPlayer.MEDIA_ERROR_SERVER_DIED) {
+            return ErrorType.SERVER_DIED;
+        }
+
+        switch (extra) {
+            case MediaPlayer.MEDIA_ERROR_IO:
+                return ErrorType.IO;
+            case MediaPlayer.MEDIA_ERROR_TIMED_OUT:
+                return ErrorType.TIMED_OUT;
+            case MediaPlayer.MEDIA_ERROR_UNSUPPORTED:
+                return ErrorType.UNSUPPORTED;
+            case MediaPlayer.MEDIA_ERROR_MALFORMED:
+                return ErrorType.MALFORMED;
+        }
+
+        if (what == MediaPlayer.MEDIA_ERROR_NOT_VALID_FOR_PROGRESSIVE_PLAYBACK) {
+            return ErrorType.UNSUPPORTED;
+        }
+
+        return ErrorType.UNKNOWN;
+    }
+
+    public void setRetryable(ErrorType type, boolean retryable) {
+        if (retryable) {
+            mRetryableTypes.add(type);
+        } else {
+            mRetryableTypes.remove(type);
+        }
+    }
+
+    public boolean isRetryable(ErrorType type) {
+        return mRetryableTypes.contains(type);
+    }
+
+    public boolean isRetryable(int what, int extra) {
+        return isRetryable(classify(what, extra));
+    }
+
+    public void setStablePeriod(long stablePeriod) {
+        mStablePeriod = stablePeriod;
+    }
+
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    /**
+     * @return delay before the next reload attempt, or -1 if the engine gives up.
+     */
+    public long nextRetryDelay() {
+        if (mRecoveredTime != NONE && now() - mRecoveredTime >= mStablePeriod) {
+            mAttempts = 0;
+        }
+
+        mRecoveredTime = NONE;
+        if (mAttempts >= mMaxAttempts) {
+            return NONE;
+        }
+
+        long delay = mBaseDelay << Math.min(mAttempts, 30);
+        if (delay <= 0 || delay > mMaxDelay) {
+            delay = mMaxDelay;
+        }
+
+        ++mAttempts;
+
+        // Equal jitter: [delay / 2, delay), so reloads of many clients spread out.
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half));
+    }
+
+    /**
+     * Called when a reload has loaded successfully.
+     */
+    public void onRecovered() {
+        if (mAttempts > 0) {
+            mRecoveredTime = now();
+        }
+    }
+
+    public void reset() {
+        mAttempts = 0;
+        mRecoveredTime = NONE;
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable QoE record of one playback session, produced by {@link PlaybackMetrics}.
+ * Durations are in milliseconds, {@link PlayerStateMachine#NO_TIMESTAMP} means the
+ * event never happened in the session.
+ */
+public final class PlaybackSummary {
+
+    public static final class ErrorCount {
+
+        private final int mWhat;
+        private final int mExtra;
+        private final int mCount;
+
+
+        public ErrorCount(int what, int extra, int count) {
+            mWhat = what;
+            mExtra = extra;
+            mCount = count;
+        }
+
+        public int getWhat() {
+            return mWhat;
+        }
+
+        public int getExtra() {
+            return mExtra;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+    }
+
+
+    private final String mStreamUrl;
+    private final long mStartWallTime;
+    private final long mSessionDuration;
+    private final long mPrepareDuration;
+    private final long mTimeToFirstFrame;
+    private final int mRebufferCount;
+    private final long mRebufferDuration;
+    private final int mSeekCount;
+    private final long mTotalSeekLatency;
+    private final long mMaxSeekLatency;
+    private final long mWatchTime;
+    private final boolean mCompleted;
+    private final List<ErrorCount> mErrors;
+
+
+    PlaybackSummary(
+            String streamUrl, long startWallTime, long sessionDuration,
+            long prepareDuration, long timeToFirstFrame,
+            int rebufferCount, long rebufferDuration,
+            int seekCount, long totalSeekLatency, long maxSeekLatency,
+            long watchTime, boolean completed, List<ErrorCount> errors) {
+
+        mStreamUrl = streamUrl;
+        mStartWallTime = startWallTime;
+        mSessionDuration = sessionDuration;
+        mPrepareDuration = prepareDuration;
+        mTimeToFirstFrame = timeToFirstFrame;
+        mRebufferCount = rebufferCount;
+        mRebufferDuration = rebufferDuration;
+        mSeekCount = seekCount;
+        mTotalSeekLatency = totalSeekLatency;
+        mMaxSeekLatency = maxSeekLatency;
+        mWatchTime = watchTime;
+        mCompleted = completed;
+        mErrors = Collections.unmodifiableList(errors);
+    }
+
+    public String getStreamUrl() {
+        return mStreamUrl;
+    }
+
+    /**
+     * @return {@link System#currentTimeMillis()} when the session began.
+     */
+    public long getStartWallTime() {
+        return mStartWallTime;
+    }
+
+    public long getSessionDuration() {
+        return mSessionDuration;
+    }
+
+    /**
+     * @return time from [PREPARING] to [PREPARED].
+     */
+    public long getPrepareDuration() {
+        return mPrepareDuration;
+    }
+
+    /**
+     * @return time from {@code play()} to the first rendered video frame.
+     */
+    public long getTimeToFirstFrame() {
+        return mTimeToFirstFrame;
+    }
+
+    /**
+     * @return stalls after the first frame, not caused by seeking.
+     */
+    public int getRebufferCount() {
+        return mRebufferCount;
+    }
+
+    public long getRebufferDuration() {
+        return mRebufferDuration;
+    }
+
+    public int getSeekCount() {
+        return mSeekCount;
+    }
+
+    public long getTotalSeekLatency() {
+        return mTotalSeekLatency;
+    }
+
+    public long getMaxSeekLatency() {
+        return mMaxSeekLatency;
+    }
+
+    public long getAverageSeekLatency() {
+        return mSeekCount > 0 ? mTotalSeekLatency / mSeekCount : PlayerStateMachine.NO_TIMESTAMP;
+    }
+
+    /**
+     * @return time spent in [STARTED] while not stalled.
+     */
+    public long getWatchTime() {
+        return mWatchTime;
+    }
+
+    public boolean isCompleted() {
+        return mCompleted;
+    }
+
+    public List<ErrorCount> getErrors() {
+        return mErrors;
+    }
+
+    public int getErrorCount() {
+        int count = 0;
+        for (ErrorCount error : mErrors) {
+            count += error.getCount();
+        }
+
+        return count;
+    }
+}
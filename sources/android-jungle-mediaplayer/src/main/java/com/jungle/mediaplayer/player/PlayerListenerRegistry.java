@@ -0,0 +1,229 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.mediaplayer.player;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import com.jungle.mediaplayer.base.BaseMediaPlayerListener;
+import com.jungle.mediaplayer.base.PlaylistMediaPlayerListener;
+import com.jungle.mediaplayer.base.VideoInfo;
+
+/**
+ * Copy-on-write registry of {@link BaseMediaPlayerListener}s.
+ * <p>
+ * Adding / removing copies the listener array, so listeners can be added or removed
+ * (even from inside a callback) while an event is being dispatched. Dispatching walks
+ * the current array snapshot by event code and allocates nothing. Events raised off the
+ * main thread are forwarded to it through pooled {@link Message}s.
+ */
+public class PlayerListenerRegistry {
+
+    public static final int EVENT_LOADING = 1;
+    public static final int EVENT_LOAD_FAILED = 2;
+    public static final int EVENT_FINISH_LOADING = 3;
+    public static final int EVENT_ERROR = 4;
+    public static final int EVENT_START_PLAY = 5;
+    public static final int EVENT_PLAY_COMPLETE = 6;
+    public static final int EVENT_START_SEEK = 7;
+    public static final int EVENT_SEEK_COMPLETE = 8;
+    public static final int EVENT_RESUMED = 9;
+    public static final int EVENT_PAUSED = 10;
+    public static final int EVENT_STOPPED = 11;
+
+    /**
+     * Only delivered to {@link PlaylistMediaPlayerListener}s.
+     */
+    public static final int EVENT_ITEM_STARTED = 12;
+    public static final int EVENT_ITEM_COMPLETED = 13;
+    public static final int EVENT_PLAYLIST_COMPLETED = 14;
+
+    private static final BaseMediaPlayerListener[] EMPTY_LISTENERS = new BaseMediaPlayerListener[0];
+
+
+    private volatile BaseMediaPlayerListener[] mListeners = EMPTY_LISTENERS;
+    private Handler mMainHandler;
+
+
+    public PlayerListenerRegistry() {
+        mMainHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                dispatchNow(msg.what, msg.arg1, msg.arg2 != 0, msg.obj);
+                return true;
+            }
+        });
+    }
+
+    public synchronized boolean add(BaseMediaPlayerListener listener) {
+        if (listener == null || indexOf(mListeners, listener) >= 0) {
+            return false;
+        }
+
+        BaseMediaPlayerListener[] listeners = mListeners;
+        BaseMediaPlayerListener[] newListeners = new BaseMediaPlayerListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        mListeners = newListeners;
+        return true;
+    }
+
+    public synchronized boolean remove(BaseMediaPlayerListener listener) {
+        BaseMediaPlayerListener[] listeners = mListeners;
+        int index = indexOf(listeners, listener);
+        if (index < 0) {
+            return false;
+        }
+
+        if (listeners.length == 1) {
+            mListeners = EMPTY_LISTENERS;
+            return true;
+        }
+
+        BaseMediaPlayerListener[] newListeners = new BaseMediaPlayerListener[listeners.length - 1];
+        System.arraycopy(listeners, 0, newListeners, 0, index);
+        System.arraycopy(listeners, index + 1, newListeners, index, listeners.length - index - 1);
+        mListeners = newListeners;
+        return true;
+    }
+
+    public synchronized void clear() {
+        mListeners = EMPTY_LISTENERS;
+    }
+
+    /**
+     * @return current snapshot, must not be modified.
+     */
+    public BaseMediaPlayerListener[] getListeners() {
+        return mListeners;
+    }
+
+    public int size() {
+        return mListeners.length;
+    }
+
+    public void dispatch(int event) {
+        dispatch(event, 0, false, null);
+    }
+
+    public void dispatch(int event, int what, boolean canReload, String message) {
+        dispatch(event, what, canReload, (Object) message);
+    }
+
+    /**
+     * For the playlist events.
+     */
+    public void dispatch(int event, int index, VideoInfo videoInfo) {
+        dispatch(event, index, false, videoInfo);
+    }
+
+    private void dispatch(int event, int arg, boolean canReload, Object obj) {
+        if (Looper.myLooper() != mMainHandler.getLooper()) {
+            mMainHandler.obtainMessage(event, arg, canReload ? 1 : 0, obj).sendToTarget();
+            return;
+        }
+
+        dispatchNow(event, arg, canReload, obj);
+    }
+
+    private void dispatchNow(int event, int arg, boolean canReload, Object obj) {
+        BaseMediaPlayerListener[] listeners = mListeners;
+        for (int i = 0; i < listeners.length; ++i) {
+            dispatchTo(listeners[i], event, arg, canReload, obj);
+        }
+    }
+
+    private static void dispatchTo(
+            BaseMediaPlayerListener listener, int event,
+            int arg, boolean canReload, Object obj) {
+
+        if (event >= EVENT_ITEM_STARTED) {
+            if (listener instanceof PlaylistMediaPlayerListener) {
+                dispatchPlaylistEvent((PlaylistMediaPlayerListener) listener, event, arg, obj);
+            }
+            return;
+        }
+
+        switch (event) {
+            case EVENT_LOADING:
+                listener.onLoading();
+                break;
+            case EVENT_LOAD_FAILED:
+                listener.onLoadFailed();
+                break;
+            case EVENT_FINISH_LOADING:
+                listener.onFinishLoading();
+                break;
+            case EVENT_ERROR:
+                listener.onError(arg, canReload, (String) obj);
+                break;
+            case EVENT_START_PLAY:
+                listener.onStartPlay();
+                break;
+            case EVENT_PLAY_COMPLETE:
+                listener.onPlayComplete();
+                break;
+            case EVENT_START_SEEK:
+                listener.onStartSeek();
+                break;
+            case EVENT_SEEK_COMPLETE:
+                listener.onSeekComplete();
+                break;
+            case EVENT_RESUMED:
+                listener.onResumed();
+                break;
+            case EVENT_PAUSED:
+                listener.onPaused();
+                break;
+            case EVENT_STOPPED:
+                listener.onStopped();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void dispatchPlaylistEvent(
+            PlaylistMediaPlayerListener listener, int event, int index, Object videoInfo) {
+
+        switch (event) {
+            case EVENT_ITEM_STARTED:
+                listener.onItemStarted(index, (VideoInfo) videoInfo);
+                break;
+            case EVENT_ITEM_COMPLETED:
+                listener.onItemCompleted(index, (VideoInfo) videoInfo);
+                break;
+            case EVENT_PLAYLIST_COMPLETED:
+                listener.onPlaylistCompleted();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int indexOf(BaseMediaPlayerListener[] listeners, BaseMediaPlayerListener listener) {
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
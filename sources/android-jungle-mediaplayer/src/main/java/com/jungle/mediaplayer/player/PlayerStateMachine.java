@@ -0,0 +1,203 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.mediaplayer.player;
+
+import android.os.SystemClock;
+import android.util.Log;
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * Tracks the playback lifecycle of a player:
+ * <pre>
+ * [IDLE] -> [PREPARING] -> [PREPARED] -> [STARTED] <-> [PAUSED]
+ *                                           |
+ *                                           -> [PLAYBACK_COMPLETED] -> [STARTED]
+ *
+ * [PREPARING / PREPARED / STARTED / PAUSED / PLAYBACK_COMPLETED] -> [STOPPED] -> [PREPARING]
+ * any state -> [ERROR] / [END], {@link #reset()} goes back to [IDLE] from anywhere.
+ * </pre>
+ * Invalid transitions are rejected, and the monotonic time of entering every state is
+ * recorded, so each phase (idle -> prepared, prepared -> first frame ...) can be timed.
+ * <p>
+ * Not thread safe, should only be used on the main thread.
+ */
+public class PlayerStateMachine {
+
+    private static final String TAG = "PlayerStateMachine";
+
+    public static final long NO_TIMESTAMP = -1;
+
+
+    public interface Listener {
+        void onStateChanged(PlayerState from, PlayerState to, long timestampMs);
+    }
+
+
+    private static final Map<PlayerState, EnumSet<PlayerState>> sTransitions =
+            new EnumMap<>(PlayerState.class);
+
+    static {
+        sTransitions.put(PlayerState.IDLE, EnumSet.of(
+                PlayerState.PREPARING));
+        sTransitions.put(PlayerState.PREPARING, EnumSet.of(
+                PlayerState.PREPARED, PlayerState.STOPPED));
+        sTransitions.put(PlayerState.PREPARED, EnumSet.of(
+                PlayerState.STARTED, PlayerState.STOPPED));
+        sTransitions.put(PlayerState.STARTED, EnumSet.of(
+                PlayerState.PAUSED, PlayerState.PLAYBACK_COMPLETED, PlayerState.STOPPED));
+        sTransitions.put(PlayerState.PAUSED, EnumSet.of(
+                PlayerState.STARTED, PlayerState.STOPPED));
+        sTransitions.put(PlayerState.PLAYBACK_COMPLETED, EnumSet.of(
+                PlayerState.STARTED, PlayerState.STOPPED));
+        sTransitions.put(PlayerState.STOPPED, EnumSet.of(
+                PlayerState.PREPARING));
+        sTransitions.put(PlayerState.ERROR, EnumSet.noneOf(PlayerState.class));
+        sTransitions.put(PlayerState.END, EnumSet.noneOf(PlayerState.class));
+
+        // ERROR & END can be entered from every state except END itself.
+        for (PlayerState state : PlayerState.values()) {
+            if (state != PlayerState.END) {
+                sTransitions.get(state).add(PlayerState.ERROR);
+                sTransitions.get(state).add(PlayerState.END);
+            }
+        }
+    }
+
+
+    private PlayerState mState = PlayerState.IDLE;
+    private long[] mEnterTimes = new long[PlayerState.values().length];
+    private long mFirstFrameTime = NO_TIMESTAMP;
+    private Listener mListener;
+
+
+    public PlayerStateMachine() {
+        clearTimestamps();
+        mEnterTimes[PlayerState.IDLE.ordinal()] = now();
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public PlayerState getState() {
+        return mState;
+    }
+
+    public boolean isPrepared() {
+        return mState == PlayerState.PREPARED
+                || mState == PlayerState.STARTED
+                || mState == PlayerState.PAUSED
+                || mState == PlayerState.PLAYBACK_COMPLETED;
+    }
+
+    public boolean canTransitionTo(PlayerState state) {
+        return sTransitions.get(mState).contains(state);
+    }
+
+    /**
+     * @return false if already in {@code state}, or the transition is not allowed.
+     */
+    public boolean transitionTo(PlayerState state) {
+        if (mState == state) {
+            return false;
+        }
+
+        if (!canTransitionTo(state)) {
+            if (PlayerLog.isLoggable(Log.WARN)) {
+                PlayerLog.w(TAG, "Invalid transition: " + mState + " -> " + state);
+            }
+            return false;
+        }
+
+        enterState(state);
+        return true;
+    }
+
+    /**
+     * Goes back to [IDLE] from any state, dropping all recorded timestamps.
+     */
+    public void reset() {
+        clearTimestamps();
+        enterState(PlayerState.IDLE);
+    }
+
+    public void markFirstFrame() {
+        if (mFirstFrameTime == NO_TIMESTAMP) {
+            mFirstFrameTime = now();
+        }
+    }
+
+    public long getFirstFrameTime() {
+        return mFirstFrameTime;
+    }
+
+    public long getStateEnterTime(PlayerState state) {
+        return mEnterTimes[state.ordinal()];
+    }
+
+    /**
+     * @return time from first entering {@code from} to first entering {@code to} in the
+     * current session, or {@link #NO_TIMESTAMP} if either has not happened yet.
+     */
+    public long getElapsedTime(PlayerState from, PlayerState to) {
+        return elapsed(getStateEnterTime(from), getStateEnterTime(to));
+    }
+
+    public long getTimeToFirstFrame() {
+        return elapsed(getStateEnterTime(PlayerState.PREPARED), mFirstFrameTime);
+    }
+
+    private static long elapsed(long start, long end) {
+        if (start == NO_TIMESTAMP || end == NO_TIMESTAMP) {
+            return NO_TIMESTAMP;
+        }
+
+        return end - start;
+    }
+
+    private void enterState(PlayerState state) {
+        PlayerState from = mState;
+        long timestamp = now();
+
+        mState = state;
+        if (mEnterTimes[state.ordinal()] == NO_TIMESTAMP) {
+            mEnterTimes[state.ordinal()] = timestamp;
+        }
+
+        if (mListener != null) {
+            mListener.onStateChanged(from, state, timestamp);
+        }
+    }
+
+    private void clearTimestamps() {
+        for (int i = 0; i < mEnterTimes.length; ++i) {
+            mEnterTimes[i] = NO_TIMESTAMP;
+        }
+
+        mFirstFrameTime = NO_TIMESTAMP;
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+}
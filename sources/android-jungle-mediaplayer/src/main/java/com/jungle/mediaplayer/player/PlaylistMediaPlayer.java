@@ -0,0 +1,439 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.mediaplayer.player;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.os.Build;
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.base.PlaylistMediaPlayerListener;
+import com.jungle.mediaplayer.base.VideoInfo;
+import com.jungle.mediaplayer.player.render.MediaRender;
+import com.jungle.mediaplayer.player.render.MockMediaRender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays a list of {@link VideoInfo} one after another. While an item is playing, the
+ * next one is prepared on a spare player and chained with
+ * {@link MediaPlayer#setNextMediaPlayer(MediaPlayer)} (API 16+), so audio continues
+ * without a gap. For video, the render is handed over to the next player on transition.
+ * <p>
+ * Per-item events are delivered to listeners implementing {@link PlaylistMediaPlayerListener}.
+ */
+public class PlaylistMediaPlayer extends SystemImplMediaPlayer {
+
+    public enum RepeatMode {
+        NONE,
+        ONE,
+        ALL
+    }
+
+
+    private List<VideoInfo> mPlaylist = new ArrayList<>();
+    private int[] mPlayOrder = new int[0];
+    private int mOrderPosition = -1;
+    private RepeatMode mRepeatMode = RepeatMode.NONE;
+    private boolean mShuffle = false;
+    private Random mRandom = new Random();
+
+    private MediaPlayer mNextPlayer;
+    private int mNextOrderPosition = -1;
+    private boolean mNextPrepared;
+    private boolean mNextChained;
+    private int mNextVideoWidth;
+    private int mNextVideoHeight;
+
+
+    public PlaylistMediaPlayer(Context context) {
+        this(context, new MockMediaRender());
+    }
+
+    public PlaylistMediaPlayer(Context context, MediaRender render) {
+        this(context, render, MediaPlayerPool.getDefault());
+    }
+
+    public PlaylistMediaPlayer(Context context, MediaRender render, MediaPlayerPool pool) {
+        super(context, render, pool);
+    }
+
+    public void setPlaylist(List<VideoInfo> playlist) {
+        cancelNextItem();
+
+        mPlaylist = playlist != null
+                ? new ArrayList<>(playlist) : new ArrayList<VideoInfo>();
+        mOrderPosition = -1;
+        buildPlayOrder(-1);
+    }
+
+    public List<VideoInfo> getPlaylist() {
+        return Collections.unmodifiableList(mPlaylist);
+    }
+
+    public int getCurrentIndex() {
+        return mOrderPosition >= 0 ? mPlayOrder[mOrderPosition] : -1;
+    }
+
+    public void setRepeatMode(RepeatMode mode) {
+        if (mRepeatMode == mode) {
+            return;
+        }
+
+        mRepeatMode = mode;
+        prepareNextItemIfPlaying();
+    }
+
+    public RepeatMode getRepeatMode() {
+        return mRepeatMode;
+    }
+
+    public void setShuffle(boolean shuffle) {
+        if (mShuffle == shuffle) {
+            return;
+        }
+
+        mShuffle = shuffle;
+
+        int currentIndex = getCurrentIndex();
+        buildPlayOrder(currentIndex);
+        if (currentIndex >= 0) {
+            mOrderPosition = findOrderPosition(currentIndex);
+        }
+
+        prepareNextItemIfPlaying();
+    }
+
+    public boolean isShuffle() {
+        return mShuffle;
+    }
+
+    @Override
+    public void play(VideoInfo videoInfo) {
+        int index = mPlaylist.indexOf(videoInfo);
+        if (index < 0) {
+            setPlaylist(Collections.singletonList(videoInfo));
+            index = 0;
+        }
+
+        playItem(index);
+    }
+
+    public void playItem(int index) {
+        if (index < 0 || index >= mPlaylist.size()) {
+            return;
+        }
+
+        if (mShuffle) {
+            buildPlayOrder(index);
+        }
+
+        playOrderPosition(findOrderPosition(index));
+    }
+
+    public boolean playNext() {
+        int position = getNextOrderPosition(true);
+        if (position < 0) {
+            return false;
+        }
+
+        advanceTo(position, false);
+        return true;
+    }
+
+    public boolean playPrevious() {
+        if (mPlayOrder.length == 0) {
+            return false;
+        }
+
+        int position = mOrderPosition - 1;
+        if (position < 0) {
+            if (mRepeatMode == RepeatMode.NONE) {
+                return false;
+            }
+
+            position = mPlayOrder.length - 1;
+        }
+
+        playOrderPosition(position);
+        return true;
+    }
+
+    @Override
+    public void destroy() {
+        cancelNextItem();
+        super.destroy();
+    }
+
+    @Override
+    protected void onPlayerPrepared() {
+        super.onPlayerPrepared();
+        prepareNextItem();
+    }
+
+    @Override
+    protected void onPlayerCompletion(MediaPlayer player) {
+        notifyItemCompleted(getCurrentIndex());
+
+        int position = getNextOrderPosition(false);
+        if (position < 0) {
+            super.onPlayerCompletion(player);
+            notifyPlaylistCompleted();
+            return;
+        }
+
+        advanceTo(position, mNextChained);
+    }
+
+    private void playOrderPosition(int position) {
+        mOrderPosition = position;
+
+        int index = mPlayOrder[position];
+        super.play(mPlaylist.get(index));
+        notifyItemStarted(index);
+    }
+
+    private void advanceTo(int position, boolean nextAlreadyStarted) {
+        if (mNextPlayer == null || !mNextPrepared || mNextOrderPosition != position) {
+            playOrderPosition(position);
+            return;
+        }
+
+        MediaPlayer nextPlayer = mNextPlayer;
+        int videoWidth = mNextVideoWidth;
+        int videoHeight = mNextVideoHeight;
+        clearNextItem();
+
+        mOrderPosition = position;
+        int index = mPlayOrder[position];
+        switchToPreparedPlayer(nextPlayer, mPlaylist.get(index),
+                videoWidth, videoHeight, nextAlreadyStarted);
+
+        notifyItemStarted(index);
+        prepareNextItem();
+    }
+
+    private int getNextOrderPosition(boolean userSkip) {
+        if (mPlayOrder.length == 0) {
+            return -1;
+        }
+
+        if (mRepeatMode == RepeatMode.ONE && !userSkip) {
+            return Math.max(mOrderPosition, 0);
+        }
+
+        int position = mOrderPosition + 1;
+        if (position < mPlayOrder.length) {
+            return position;
+        }
+
+        return mRepeatMode == RepeatMode.NONE ? -1 : 0;
+    }
+
+    private void buildPlayOrder(int firstIndex) {
+        int count = mPlaylist.size();
+        mPlayOrder = new int[count];
+        for (int i = 0; i < count; ++i) {
+            mPlayOrder[i] = i;
+        }
+
+        if (!mShuffle) {
+            return;
+        }
+
+        for (int i = count - 1; i > 0; --i) {
+            int j = mRandom.nextInt(i + 1);
+            int tmp = mPlayOrder[i];
+            mPlayOrder[i] = mPlayOrder[j];
+            mPlayOrder[j] = tmp;
+        }
+
+        if (firstIndex >= 0 && firstIndex < count) {
+            int position = findOrderPosition(firstIndex);
+            mPlayOrder[position] = mPlayOrder[0];
+            mPlayOrder[0] = firstIndex;
+        }
+    }
+
+    private int findOrderPosition(int index) {
+        for (int i = 0; i < mPlayOrder.length; ++i) {
+            if (mPlayOrder[i] == index) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void prepareNextItemIfPlaying() {
+        if (mMediaPlayer != null && mStateMachine.isPrepared()) {
+            prepareNextItem();
+        }
+    }
+
+    private void prepareNextItem() {
+        cancelNextItem();
+
+        int position = getNextOrderPosition(false);
+        if (position < 0 || mMediaPlayer == null) {
+            return;
+        }
+
+        final VideoInfo videoInfo = mPlaylist.get(mPlayOrder[position]);
+        final MediaPlayer nextPlayer = acquirePlayer();
+        nextPlayer.setOnPreparedListener(mNextPreparedListener);
+        nextPlayer.setOnErrorListener(mNextErrorListener);
+        nextPlayer.setOnVideoSizeChangedListener(mNextVideoSizeChangedListener);
+
+        mNextPlayer = nextPlayer;
+        mNextOrderPosition = position;
+
+        runOnPlayerThread(new Runnable() {
+            @Override
+            public void run() {
+                if (prepareDataSource(nextPlayer, videoInfo)) {
+                    return;
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (nextPlayer == mNextPlayer) {
+                            cancelNextItem();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void cancelNextItem() {
+        if (mNextPlayer == null) {
+            return;
+        }
+
+        final MediaPlayer currentPlayer = mMediaPlayer;
+        if (mNextChained && currentPlayer != null) {
+            runOnPlayerThread(new Runnable() {
+                @Override
+                public void run() {
+                    setNextMediaPlayer(currentPlayer, null);
+                }
+            });
+        }
+
+        recyclePlayer(mNextPlayer);
+        clearNextItem();
+    }
+
+    private void clearNextItem() {
+        mNextPlayer = null;
+        mNextOrderPosition = -1;
+        mNextPrepared = false;
+        mNextChained = false;
+        mNextVideoWidth = 0;
+        mNextVideoHeight = 0;
+    }
+
+    private static boolean setNextMediaPlayer(MediaPlayer player, MediaPlayer next) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return false;
+        }
+
+        try {
+            player.setNextMediaPlayer(next);
+            return true;
+        } catch (Exception e) {
+            PlayerLog.w(TAG, "Chain Next MediaPlayer Failed!", e);
+        }
+
+        return false;
+    }
+
+    private MediaPlayer.OnPreparedListener mNextPreparedListener =
+            new MediaPlayer.OnPreparedListener() {
+                @Override
+                public void onPrepared(final MediaPlayer player) {
+                    if (player != mNextPlayer) {
+                        return;
+                    }
+
+                    mNextPrepared = true;
+
+                    final MediaPlayer currentPlayer = mMediaPlayer;
+                    if (currentPlayer == null
+                            || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                        return;
+                    }
+
+                    // The native player starts the next one right after the current
+                    // completes. If the chain fails, the next player is started on
+                    // completion instead, which is still much faster than preparing.
+                    mNextChained = true;
+                    runOnPlayerThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            setNextMediaPlayer(currentPlayer, player);
+                        }
+                    });
+                }
+            };
+
+    private MediaPlayer.OnErrorListener mNextErrorListener = new MediaPlayer.OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer player, int what, int extra) {
+            if (player == mNextPlayer) {
+                cancelNextItem();
+            }
+
+            return true;
+        }
+    };
+
+    private MediaPlayer.OnVideoSizeChangedListener mNextVideoSizeChangedListener =
+            new MediaPlayer.OnVideoSizeChangedListener() {
+                @Override
+                public void onVideoSizeChanged(MediaPlayer player, int width, int height) {
+                    if (player == mNextPlayer) {
+                        mNextVideoWidth = width;
+                        mNextVideoHeight = height;
+                    }
+                }
+            };
+
+    private void notifyItemStarted(int index) {
+        mListenerRegistry.dispatch(
+                PlayerListenerRegistry.EVENT_ITEM_STARTED, index, mPlaylist.get(index));
+    }
+
+    private void notifyItemCompleted(int index) {
+        if (index < 0) {
+            return;
+        }
+
+        mListenerRegistry.dispatch(
+                PlayerListenerRegistry.EVENT_ITEM_COMPLETED, index, mPlaylist.get(index));
+    }
+
+    private void notifyPlaylistCompleted() {
+        mListenerRegistry.dispatch(PlayerListenerRegistry.EVENT_PLAYLIST_COMPLETED, -1, null);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import com.jungle.mediaplayer.base.BandwidthEstimator;
+import com.jungle.mediaplayer.base.Rendition;
+
+import java.util.List;
+
+/**
+ * Picks the highest rendition whose bitrate the estimated bandwidth can sustain, with
+ * some headroom for bandwidth fluctuations.
+ */
+public class RenditionSelector {
+
+    public static final float DEFAULT_SAFETY_FACTOR = 0.75f;
+    public static final long DEFAULT_INITIAL_BANDWIDTH = 1000 * 1000;
+
+
+    private final BandwidthEstimator mEstimator;
+    private float mSafetyFactor = DEFAULT_SAFETY_FACTOR;
+    private long mInitialBandwidth = DEFAULT_INITIAL_BANDWIDTH;
+
+
+    public RenditionSelector(BandwidthEstimator estimator) {
+        mEstimator = estimator;
+    }
+
+    public BandwidthEstimator getEstimator() {
+        return mEstimator;
+    }
+
+    /**
+     * Fraction of the estimated bandwidth a rendition may use.
+     */
+    public void setSafetyFactor(float factor) {
+        mSafetyFactor = factor;
+    }
+
+    /**
+     * Bandwidth assumed before anything was measured, in bits per second.
+     */
+    public void setInitialBandwidth(long bitsPerSecond) {
+        mInitialBandwidth = bitsPerSecond;
+    }
+
+    /**
+     * @param renditions in ascending bitrate order, as kept by
+     * {@link com.jungle.mediaplayer.base.VideoInfo}.
+     * @return the chosen rendition, the lowest one if none fits, null if empty.
+     */
+    public Rendition select(List<Rendition> renditions) {
+        if (renditions.isEmpty()) {
+            return null;
+        }
+
+        long bandwidth = mEstimator.getEstimate();
+        if (bandwidth < 0) {
+            bandwidth = mInitialBandwidth;
+        }
+
+        long budget = (long) (bandwidth * mSafetyFactor);
+        Rendition selected = renditions.get(0);
+        for (Rendition rendition : renditions) {
+            if (rendition.getBitrate() > budget) {
+                break;
+            }
+
+            selected = rendition;
+        }
+
+        return selected;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jungle.mediaplayer.player;
+
+/**
+ * Latest-wins seek coalescing: keeps at most one native seek in flight. Requests that
+ * arrive while a seek is running replace each other, and only the newest target is
+ * executed once the running seek completes.
+ * <p>
+ * Not thread safe, all methods should be called on the same (main) thread.
+ */
+public class SeekScheduler {
+
+    public interface SeekExecutor {
+        void executeSeek(int position);
+    }
+
+
+    private static final int NO_PENDING_SEEK = -1;
+
+
+    private SeekExecutor mExecutor;
+    private int mPendingPosition = NO_PENDING_SEEK;
+    private int mTargetPosition;
+    private int mInFlightCount;
+    private int mRequestedCount;
+    private int mExecutedCount;
+    private int mDroppedCount;
+
+
+    public SeekScheduler(SeekExecutor executor) {
+        mExecutor = executor;
+    }
+
+    public void requestSeek(int position) {
+        ++mRequestedCount;
+        mTargetPosition = position;
+
+        if (mInFlightCount > 0) {
+            if (mPendingPosition != NO_PENDING_SEEK) {
+                ++mDroppedCount;
+            }
+
+            mPendingPosition = position;
+            return;
+        }
+
+        execute(position);
+    }
+
+    /**
+     * Records a native seek issued outside of this scheduler, so its completion is not
+     * mistaken for the completion of a requested seek.
+     */
+    public void onSeekIssued(int position) {
+        ++mInFlightCount;
+        mTargetPosition = position;
+    }
+
+    /**
+     * @return true if a pending seek was issued and the caller should keep waiting.
+     */
+    public boolean onSeekComplete() {
+        if (mInFlightCount > 0) {
+            --mInFlightCount;
+        }
+
+        if (mInFlightCount > 0) {
+            return true;
+        }
+
+        return flushPendingSeek();
+    }
+
+    /**
+     * Gives up on the seeks in flight (their completion never came back).
+     *
+     * @return true if a pending seek was issued and the caller should keep waiting.
+     */
+    public boolean onSeekTimeout() {
+        mInFlightCount = 0;
+        return flushPendingSeek();
+    }
+
+    private boolean flushPendingSeek() {
+        if (mPendingPosition != NO_PENDING_SEEK) {
+            int position = mPendingPosition;
+            mPendingPosition = NO_PENDING_SEEK;
+            execute(position);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void execute(int position) {
+        ++mInFlightCount;
+        ++mExecutedCount;
+        mExecutor.executeSeek(position);
+    }
+
+    public boolean isSeeking() {
+        return mInFlightCount > 0 || mPendingPosition != NO_PENDING_SEEK;
+    }
+
+    public int getTargetPosition() {
+        return mTargetPosition;
+    }
+
+    public void reset() {
+        mTargetPosition = 0;
+        mInFlightCount = 0;
+        mPendingPosition = NO_PENDING_SEEK;
+    }
+
+    public int getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    public int getExecutedCount() {
+        return mExecutedCount;
+    }
+
+    public int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    public void resetStatistics() {
+        mRequestedCount = 0;
+        mExecutedCount = 0;
+        mDroppedCount = 0;
+    }
+}
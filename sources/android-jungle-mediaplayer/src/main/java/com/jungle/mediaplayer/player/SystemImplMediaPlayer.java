@@ -22,11 +22,20 @@ import android.content.Context;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
-import android.util.Log;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Message;
+import android.support.annotation.RequiresApi;
+import android.text.TextUtils;
+import com.jungle.mediaplayer.base.BufferVideoInfo;
+import com.jungle.mediaplayer.base.PlayerLog;
 import com.jungle.mediaplayer.base.VideoInfo;
 import com.jungle.mediaplayer.player.render.MediaRender;
 import com.jungle.mediaplayer.player.render.MockMediaRender;
+import com.jungle.mediaplayer.proxy.StreamProxy;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 
@@ -51,9 +60,51 @@ import java.io.IOException;
  *                                                  [____Paused___]
  *
  */
-public class SystemImplMediaPlayer extends BaseMediaPlayer {
+public class SystemImplMediaPlayer extends BaseMediaPlayer implements Handler.Callback {
+
+    private static final int MSG_PREPARE = 1;
+    private static final int MSG_PREPARED = 2;
+    private static final int MSG_START = 3;
+    private static final int MSG_START_WITH_RENDER = 4;
+    private static final int MSG_PAUSE = 5;
+    private static final int MSG_STOP = 6;
+    private static final int MSG_SEEK = 7;
+    private static final int MSG_SET_VOLUME = 8;
+    private static final int MSG_RENDER_CHANGED = 9;
+    private static final int MSG_UPDATE_PLAYBACK_INFO = 10;
+    private static final int MSG_SET_SPEED = 11;
+
+    private static final int UPDATE_PLAYBACK_INFO_INTERVAL = 250;
+    private static final int SEEK_COMPLETE_TIMEOUT = 3000;
+
+
+    private static class PrepareCommand {
+        public MediaPlayer mPlayer;
+        public VideoInfo mVideoInfo;
+
+        public PrepareCommand(MediaPlayer player, VideoInfo videoInfo) {
+            mPlayer = player;
+            mVideoInfo = videoInfo;
+        }
+    }
+
 
     protected MediaPlayer mMediaPlayer;
+    protected MediaPlayerPool mPlayerPool;
+    protected Handler mWorkerHandler;
+    private volatile int mCachedDuration;
+    private volatile int mCachedPosition;
+    private volatile boolean mCachedIsPlaying;
+    private SeekScheduler mSeekScheduler;
+    private StreamProxy mStreamProxy;
+    private String mPinnedStreamUrl;
+
+    private MediaPlayer mPreloadPlayer;
+    private VideoInfo mPreloadVideoInfo;
+    private boolean mPreloadPrepared;
+    private volatile int mPreloadDuration;
+    private int mPreloadVideoWidth;
+    private int mPreloadVideoHeight;
 
 
     public SystemImplMediaPlayer(Context context) {
@@ -61,22 +112,117 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
     }
 
     public SystemImplMediaPlayer(Context context, MediaRender render) {
+        this(context, render, MediaPlayerPool.getDefault());
+    }
+
+    public SystemImplMediaPlayer(Context context, MediaRender render, MediaPlayerPool pool) {
         super(context, render);
+        mPlayerPool = pool;
+        mSeekScheduler = new SeekScheduler(mSeekExecutor);
+    }
+
+    public MediaPlayerPool getPlayerPool() {
+        return mPlayerPool;
+    }
+
+    public SeekScheduler getSeekScheduler() {
+        return mSeekScheduler;
+    }
+
+    /**
+     * Plays http(s) streams through {@code proxy}, so they are served from its cache.
+     * The proxy should be started by the caller. Pass null to play streams directly.
+     */
+    public void setStreamProxy(StreamProxy proxy) {
+        pinStream(null);
+        mStreamProxy = proxy;
+    }
+
+    public StreamProxy getStreamProxy() {
+        return mStreamProxy;
+    }
+
+    /**
+     * The stream of the current session is pinned in the proxy cache, so the cache never
+     * evicts what is being played.
+     */
+    private void pinStream(String url) {
+        if (TextUtils.equals(url, mPinnedStreamUrl)) {
+            return;
+        }
+
+        if (mStreamProxy != null) {
+            if (mPinnedStreamUrl != null) {
+                mStreamProxy.unpin(mPinnedStreamUrl);
+            }
+
+            if (url != null) {
+                mStreamProxy.pin(url);
+            }
+        }
+
+        mPinnedStreamUrl = mStreamProxy != null ? url : null;
+    }
+
+    @Override
+    protected void beginSession(VideoInfo videoInfo) {
+        pinStream(videoInfo != null && !(videoInfo instanceof BufferVideoInfo)
+                ? videoInfo.getStreamUrl() : null);
+        super.beginSession(videoInfo);
+    }
+
+    protected String getDataSourceUrl(VideoInfo videoInfo) {
+        String url = videoInfo.getStreamUrl();
+        return mStreamProxy != null ? mStreamProxy.getProxyUrl(url) : url;
+    }
+
+    /**
+     * When enabled, every blocking {@link MediaPlayer} call is serialized on the
+     * {@link MediaPlayerWorker} thread, and playback info (duration / position / playing)
+     * is served from values cached by that thread. Listeners are still notified on the
+     * main thread. Should be called before {@link #play(VideoInfo)}.
+     */
+    public void setWorkerThreadMode(boolean enable) {
+        setPlayerWorker(enable ? MediaPlayerWorker.getDefault() : null);
+    }
+
+    public void setPlayerWorker(MediaPlayerWorker worker) {
+        if (mMediaPlayer != null) {
+            destroy();
+        }
+
+        mWorkerHandler = worker != null ? worker.createHandler(this) : null;
+    }
+
+    public boolean isWorkerThreadMode() {
+        return mWorkerHandler != null;
     }
 
     private void init() {
-        mMediaPlayer = new MediaPlayer();
-        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        mMediaPlayer.setOnErrorListener(mOnErrorListener);
-        mMediaPlayer.setOnPreparedListener(mOnPreparedListener);
-        mMediaPlayer.setOnCompletionListener(mOnCompletionListener);
-        mMediaPlayer.setOnSeekCompleteListener(mOnSeekCompletionListener);
-        mMediaPlayer.setOnBufferingUpdateListener(mOnBufferingUpdateListener);
-        mMediaPlayer.setOnVideoSizeChangedListener(mOnVideoSizeChangedListener);
+        mMediaPlayer = acquirePlayer();
+        resetSeekScheduler();
+        mCachedDuration = 0;
+        mCachedPosition = 0;
+        mCachedIsPlaying = false;
+        mBufferPercent = 0;
     }
 
     @Override
     public void play(VideoInfo videoInfo) {
+        if (mPreloadPlayer != null) {
+            // A preloaded video keeps the rendition it was preloaded with.
+            boolean hit = matchPreloaded(mPreloadVideoInfo, videoInfo);
+            recordPreloadResult(hit);
+            if (hit) {
+                playPreloaded(videoInfo);
+                return;
+            }
+
+            cancelPreload();
+        }
+
+        selectRendition(videoInfo);
+
         if (mMediaPlayer != null) {
             destroy();
         }
@@ -84,52 +230,454 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
         init();
         super.play(videoInfo);
 
-        // Clear old display and Reset.
-        Log.e(TAG, "Reset MediaPlayer!");
-        mMediaPlayer.setDisplay(null);
-        mMediaPlayer.reset();
+        if (mWorkerHandler != null) {
+            mWorkerHandler.obtainMessage(MSG_PREPARE,
+                    new PrepareCommand(mMediaPlayer, videoInfo)).sendToTarget();
+        } else if (!prepareDataSource(mMediaPlayer, videoInfo)) {
+            notifyPrepareFailed();
+            return;
+        }
+
+        notifyStartPlay();
+        notifyLoading();
+    }
+
+    @Override
+    public void preload(VideoInfo videoInfo) {
+        if (!VideoInfo.validate(videoInfo)) {
+            return;
+        }
+
+        if (mPreloadPlayer != null && matchPreloaded(mPreloadVideoInfo, videoInfo)) {
+            return;
+        }
+
+        selectRendition(videoInfo);
+
+        cancelPreload();
+
+        final MediaPlayer player = acquirePlayer();
+        player.setOnPreparedListener(mPreloadPreparedListener);
+        player.setOnErrorListener(mPreloadErrorListener);
+        player.setOnVideoSizeChangedListener(mPreloadVideoSizeChangedListener);
+
+        mPreloadPlayer = player;
+        mPreloadVideoInfo = videoInfo;
+
+        final VideoInfo preloadInfo = videoInfo;
+        runOnPlayerThread(new Runnable() {
+            @Override
+            public void run() {
+                if (prepareDataSource(player, preloadInfo)) {
+                    return;
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (player == mPreloadPlayer) {
+                            cancelPreload();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void cancelPreload() {
+        if (mPreloadPlayer == null) {
+            return;
+        }
+
+        recyclePlayer(mPreloadPlayer);
+        clearPreload();
+    }
 
+    public boolean hasPreload() {
+        return mPreloadPlayer != null;
+    }
+
+    private void clearPreload() {
+        mPreloadPlayer = null;
+        mPreloadVideoInfo = null;
+        mPreloadPrepared = false;
+        mPreloadDuration = 0;
+        mPreloadVideoWidth = 0;
+        mPreloadVideoHeight = 0;
+    }
+
+    private void playPreloaded(VideoInfo videoInfo) {
+        MediaPlayer player = mPreloadPlayer;
+        boolean prepared = mPreloadPrepared;
+        int duration = mPreloadDuration;
+        int videoWidth = mPreloadVideoWidth;
+        int videoHeight = mPreloadVideoHeight;
+        clearPreload();
+
+        if (mMediaPlayer != null) {
+            destroy();
+        }
+
+        super.play(videoInfo);
+        if (!prepared) {
+            // Still preparing, the regular listeners take over from here.
+            mMediaPlayer = player;
+            attachPlayerListeners(player);
+            resetSeekScheduler();
+            mCachedDuration = 0;
+            mCachedPosition = 0;
+            mCachedIsPlaying = false;
+            mBufferPercent = 0;
+
+            // The size may have been reported to the preload listener already, and is
+            // not reported again.
+            if (videoWidth > 0 && videoHeight > 0) {
+                mVideoWidth = videoWidth;
+                mVideoHeight = videoHeight;
+                mVideoSizeInitialized = true;
+                updateMediaRenderSize();
+            }
+
+            notifyStartPlay();
+            notifyLoading();
+            return;
+        }
+
+        PlayerLog.d(TAG, "Play Preloaded MediaPlayer!");
+        switchToPreparedPlayer(player, videoInfo, videoWidth, videoHeight, false);
+        mCachedDuration = duration;
+
+        notifyStartPlay();
+        notifyFinishLoading();
+        onPlayerPrepared();
+    }
+
+    protected MediaPlayer acquirePlayer() {
+        // Pooled players are already reset to [IDLE], no need to reset again.
+        // Acquire on the calling thread, so player events come back on its looper.
+        MediaPlayer player = mPlayerPool.acquire(
+                mWorkerHandler != null ? mWorkerHandler.getLooper() : null);
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        attachPlayerListeners(player);
+        return player;
+    }
+
+    protected void attachPlayerListeners(MediaPlayer player) {
+        player.setOnErrorListener(mOnErrorListener);
+        player.setOnPreparedListener(mOnPreparedListener);
+        player.setOnCompletionListener(mOnCompletionListener);
+        player.setOnSeekCompleteListener(mOnSeekCompletionListener);
+        player.setOnBufferingUpdateListener(mOnBufferingUpdateListener);
+        player.setOnVideoSizeChangedListener(mOnVideoSizeChangedListener);
+        player.setOnInfoListener(mOnInfoListener);
+    }
+
+    /**
+     * In worker mode the player is pooled at once and only reset on the worker, so the
+     * next {@link #play} of this player can reuse it.
+     */
+    protected void recyclePlayer(MediaPlayer player) {
+        if (mWorkerHandler == null) {
+            mPlayerPool.recycle(player);
+            return;
+        }
+
+        mWorkerHandler.removeMessages(MSG_UPDATE_PLAYBACK_INFO, player);
+        mPlayerPool.recycle(player, mWorkerHandler);
+    }
+
+    protected void runOnPlayerThread(Runnable runnable) {
+        if (mWorkerHandler == null) {
+            runnable.run();
+        } else {
+            mWorkerHandler.post(runnable);
+        }
+    }
+
+    /**
+     * Makes an already prepared player the current one and recycles the old player.
+     * If the player was started natively (e.g. by setNextMediaPlayer), only the render
+     * is moved over to it.
+     */
+    protected void switchToPreparedPlayer(
+            MediaPlayer player, VideoInfo videoInfo,
+            int videoWidth, int videoHeight, boolean alreadyStarted) {
+
+        MediaPlayer oldPlayer = mMediaPlayer;
+        mMediaPlayer = player;
+        attachPlayerListeners(player);
+        resetSeekScheduler();
+        if (oldPlayer != null && oldPlayer != player) {
+            recyclePlayer(oldPlayer);
+        }
+
+        clearLoadingFailed();
+        mVideoInfo = videoInfo;
+        mIsBuffering = false;
+        mAutoPlayWhenHolderCreated = false;
+        mBufferPercent = 0;
+        mCachedPosition = 0;
+        mVideoWidth = videoWidth;
+        mVideoHeight = videoHeight;
+        mVideoSizeInitialized = videoWidth > 0 && videoHeight > 0;
+        if (mVideoSizeInitialized) {
+            updateMediaRenderSize();
+        }
+
+        // The player was prepared in the background, so this session goes through
+        // [PREPARING] -> [PREPARED] at once. Keep the session if play() just began it.
+        if (mStateMachine.getState() != PlayerState.PREPARING) {
+            beginSession(videoInfo);
+        }
+
+        mStateMachine.transitionTo(PlayerState.PREPARED);
+
+        boolean renderReady = !mMediaRender.isRenderCreating() && mMediaRender.isRenderValid();
+        if (alreadyStarted) {
+            mStateMachine.transitionTo(PlayerState.STARTED);
+            mCachedIsPlaying = true;
+            scheduleSavePosition();
+            if (renderReady) {
+                surfaceHolderChanged();
+            }
+
+            // start() is a no-op for a started player, and covers the case where the
+            // native chain did not take effect in time.
+            sendCommand(MSG_START, player, 0);
+        } else if (renderReady) {
+            playWithMediaRender();
+        } else {
+            mAutoPlayWhenHolderCreated = true;
+        }
+    }
+
+    protected boolean prepareDataSource(MediaPlayer player, VideoInfo videoInfo) {
         try {
-            mMediaPlayer.setDataSource(mContext, Uri.parse(videoInfo.getStreamUrl()));
+            if (videoInfo instanceof BufferVideoInfo) {
+                setBufferDataSource(player, (BufferVideoInfo) videoInfo);
+            } else {
+                player.setDataSource(mContext, Uri.parse(getDataSourceUrl(videoInfo)));
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            PlayerLog.e(TAG, "Set DataSource Failed!", e);
         }
 
         // Prepare For Play.
-        Log.e(TAG, "Prepare MediaPlayer!");
+        PlayerLog.d(TAG, "Prepare MediaPlayer!");
         try {
-            mMediaPlayer.prepareAsync();
+            player.prepareAsync();
         } catch (Exception e) {
-            e.printStackTrace();
-            notifyError(-1, false, "Video PrepareAsync FAILED! Video might be damaged!!");
+            PlayerLog.e(TAG, "Prepare MediaPlayer Failed!", e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * In-memory clips are read in place on API 23+. Older players can only read files, so
+     * the clip goes through a temp file, which is deleted as soon as the player holds an
+     * open descriptor of it.
+     */
+    private void setBufferDataSource(
+            MediaPlayer player, BufferVideoInfo videoInfo) throws IOException {
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            player.setDataSource(new ByteBufferMediaDataSource(videoInfo.getBuffer()));
             return;
         }
 
-        notifyStartPlay();
-        notifyLoading();
+        File file = File.createTempFile("clip", null, mContext.getCacheDir());
+        try {
+            videoInfo.writeTo(file);
+            FileInputStream input = new FileInputStream(file);
+            try {
+                player.setDataSource(input.getFD());
+            } finally {
+                input.close();
+            }
+        } finally {
+            if (!file.delete()) {
+                PlayerLog.w(TAG, "Delete temp clip file failed.");
+            }
+        }
+    }
+
+    private void notifyPrepareFailed() {
+        notifyError(-1, false, "Video PrepareAsync FAILED! Video might be damaged!!");
+    }
+
+    private void sendCommand(int what, MediaPlayer player, int arg) {
+        if (mWorkerHandler == null) {
+            executeCommand(what, player, arg);
+        } else {
+            mWorkerHandler.obtainMessage(what, arg, 0, player).sendToTarget();
+        }
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        if (msg.what == MSG_PREPARE) {
+            final PrepareCommand command = (PrepareCommand) msg.obj;
+            if (!prepareDataSource(command.mPlayer, command.mVideoInfo)) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (command.mPlayer == mMediaPlayer) {
+                            notifyPrepareFailed();
+                        }
+                    }
+                });
+            }
+        } else {
+            executeCommand(msg.what, (MediaPlayer) msg.obj, msg.arg1);
+        }
+
+        return true;
+    }
+
+    private void executeCommand(int what, final MediaPlayer player, int arg) {
+        switch (what) {
+            case MSG_PREPARED:
+                updatePlaybackInfo(player);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (player == mMediaPlayer) {
+                            handlePrepared();
+                        }
+                    }
+                });
+                break;
+
+            case MSG_START:
+                player.start();
+                applyPlaybackSpeed(player);
+                schedulePlaybackInfoUpdate(player);
+                break;
+
+            case MSG_START_WITH_RENDER:
+                try {
+                    mMediaRender.prepareMediaRender(player);
+                } catch (Exception e) {
+                    PlayerLog.e(TAG, "Prepare MediaRender Failed!", e);
+                }
+
+                player.setScreenOnWhilePlaying(true);
+                player.start();
+                applyPlaybackSpeed(player);
+                player.seekTo(0);
+                if (arg > 0) {
+                    player.seekTo(arg);
+                }
+
+                schedulePlaybackInfoUpdate(player);
+                break;
+
+            case MSG_PAUSE:
+                if (player.isPlaying()) {
+                    player.pause();
+                }
+
+                schedulePlaybackInfoUpdate(player);
+                break;
+
+            case MSG_STOP:
+                player.stop();
+                schedulePlaybackInfoUpdate(player);
+                break;
+
+            case MSG_SEEK:
+                player.seekTo(arg);
+                break;
+
+            case MSG_SET_VOLUME:
+                float volume = Float.intBitsToFloat(arg);
+                player.setVolume(volume, volume);
+                break;
+
+            case MSG_SET_SPEED:
+                // A non-zero speed starts a paused player, it is applied on start instead.
+                if (player.isPlaying()) {
+                    applyPlaybackSpeed(player);
+                }
+                break;
+
+            case MSG_RENDER_CHANGED:
+                mMediaRender.mediaRenderChanged(player);
+                break;
+
+            case MSG_UPDATE_PLAYBACK_INFO:
+                updatePlaybackInfo(player);
+                if (mCachedIsPlaying && mWorkerHandler != null) {
+                    mWorkerHandler.sendMessageDelayed(
+                            mWorkerHandler.obtainMessage(MSG_UPDATE_PLAYBACK_INFO, player),
+                            UPDATE_PLAYBACK_INFO_INTERVAL);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void applyPlaybackSpeed(MediaPlayer player) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            setPlaybackParams(player, mPlaybackSpeed);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private static void setPlaybackParams(MediaPlayer player, float speed) {
+        try {
+            player.setPlaybackParams(player.getPlaybackParams().setSpeed(speed));
+        } catch (Exception e) {
+            PlayerLog.e(TAG, "Set PlaybackParams Failed!", e);
+        }
+    }
+
+    private void updatePlaybackInfo(MediaPlayer player) {
+        mCachedDuration = player.getDuration();
+        mCachedPosition = player.getCurrentPosition();
+        mCachedIsPlaying = player.isPlaying();
+    }
+
+    private void schedulePlaybackInfoUpdate(MediaPlayer player) {
+        if (mWorkerHandler != null) {
+            mWorkerHandler.removeMessages(MSG_UPDATE_PLAYBACK_INFO, player);
+            executeCommand(MSG_UPDATE_PLAYBACK_INFO, player, 0);
+        }
     }
 
     @Override
     public void pause() {
-        if (mMediaPlayer == null || !mMediaPlayerIsPrepared) {
+        if (mMediaPlayer == null) {
             return;
         }
 
-        if (mMediaPlayer.isPlaying()) {
-            mMediaPlayer.pause();
-            mIsPaused = true;
+        if (mStateMachine.getState() == PlayerState.STARTED) {
+            mStateMachine.transitionTo(PlayerState.PAUSED);
+            mCachedIsPlaying = false;
+            sendCommand(MSG_PAUSE, mMediaPlayer, 0);
             notifyPaused();
         }
     }
 
     @Override
     public void resume() {
-        if (mMediaPlayer == null || !mMediaPlayerIsPrepared || !mMediaRender.isRenderValid()) {
+        if (mMediaPlayer == null || !mMediaRender.isRenderValid()) {
             return;
         }
 
-        mIsPaused = false;
-        mMediaPlayer.start();
+        // Already started (or not prepared yet), no need to call start() again.
+        if (!mStateMachine.canTransitionTo(PlayerState.STARTED)) {
+            return;
+        }
+
+        mStateMachine.transitionTo(PlayerState.STARTED);
+        mCachedIsPlaying = true;
+        sendCommand(MSG_START, mMediaPlayer, 0);
         notifyResumed();
     }
 
@@ -139,9 +687,15 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
             return;
         }
 
-        mIsPaused = false;
-        mMediaPlayerIsPrepared = false;
-        mMediaPlayer.stop();
+        savePosition();
+
+        // stop() is only valid once a data source is being prepared.
+        if (mStateMachine.canTransitionTo(PlayerState.STOPPED)) {
+            mStateMachine.transitionTo(PlayerState.STOPPED);
+            sendCommand(MSG_STOP, mMediaPlayer, 0);
+        }
+
+        mCachedIsPlaying = false;
 
         notifyStopped();
     }
@@ -153,8 +707,14 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
                 millSeconds = 0;
             }
 
-            mIsPaused = false;
-            mMediaPlayer.seekTo(millSeconds);
+            if (mMetrics != null) {
+                mMetrics.onSeekRequested();
+            }
+
+            mCachedPosition = millSeconds;
+            mSeekScheduler.requestSeek(millSeconds);
+
+            mMainHandler.removeCallbacks(mSeekRunnable);
             mMainHandler.postDelayed(mSeekRunnable, 300);
         }
     }
@@ -162,32 +722,62 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
     @Override
     public void setVolume(float volume) {
         if (mMediaPlayer != null) {
-            mMediaPlayer.setVolume(volume, volume);
+            sendCommand(MSG_SET_VOLUME, mMediaPlayer, Float.floatToIntBits(volume));
+        }
+    }
+
+    /**
+     * Needs API 23 (PlaybackParams), ignored before. Clips decoded to PCM can be played
+     * at any speed by {@link AudioTrackMediaPlayer} on older systems.
+     */
+    @Override
+    protected void onPlaybackSpeedChanged(float speed) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            PlayerLog.w(TAG, "Playback speed is not supported by MediaPlayer before API 23.");
+            return;
+        }
+
+        if (mMediaPlayer != null) {
+            sendCommand(MSG_SET_SPEED, mMediaPlayer, 0);
         }
     }
 
     @Override
     public int getDuration() {
-        return mMediaPlayer != null ? mMediaPlayer.getDuration() : 0;
+        if (mMediaPlayer == null) {
+            return 0;
+        }
+
+        return mWorkerHandler != null ? mCachedDuration : mMediaPlayer.getDuration();
     }
 
     @Override
     public int getCurrentPosition() {
-        return mMediaPlayer != null ? mMediaPlayer.getCurrentPosition() : 0;
+        if (mMediaPlayer == null) {
+            return 0;
+        }
+
+        if (mSeekScheduler.isSeeking()) {
+            return mSeekScheduler.getTargetPosition();
+        }
+
+        return mWorkerHandler != null ? mCachedPosition : mMediaPlayer.getCurrentPosition();
     }
 
     @Override
     public void destroy() {
         super.destroy();
+        pinStream(null);
 
+        cancelPreload();
         clearLoadingFailed();
         if (mMediaPlayer != null) {
             stop();
 
-            mMediaPlayer.setDisplay(null);
-            mMediaPlayer.reset();
-            mMediaPlayer.release();
+            resetSeekScheduler();
+            recyclePlayer(mMediaPlayer);
             mMediaPlayer = null;
+            mStateMachine.transitionTo(PlayerState.END);
         }
     }
 
@@ -198,80 +788,149 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
 
     @Override
     public boolean isPlaying() {
-        return mMediaPlayer != null && mMediaPlayer.isPlaying();
-    }
+        if (mMediaPlayer == null) {
+            return false;
+        }
 
-    @Override
-    public boolean isPaused() {
-        return mIsPaused;
+        return mWorkerHandler != null ? mCachedIsPlaying : mMediaPlayer.isPlaying();
     }
 
     @Override
     protected void playWithMediaRender() {
-        if (!mMediaPlayerIsPrepared) {
+        if (!mStateMachine.canTransitionTo(PlayerState.STARTED)) {
             return;
         }
 
-        try {
-            mMediaRender.prepareMediaRender(mMediaPlayer);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        mStateMachine.transitionTo(PlayerState.STARTED);
 
-        mMediaPlayer.setScreenOnWhilePlaying(true);
-        mMediaPlayer.start();
-        mMediaPlayer.seekTo(0);
+        int startPosition = getStartPosition();
+        onInternalSeekIssued(0);
+        if (startPosition > 0) {
+            onInternalSeekIssued(startPosition);
+        }
 
-        trySeekToStartPosition();
+        mCachedIsPlaying = true;
+        sendCommand(MSG_START_WITH_RENDER, mMediaPlayer, startPosition);
+        scheduleSavePosition();
     }
 
     @Override
     protected void surfaceHolderChanged() {
         if (mMediaPlayer != null) {
-            mMediaRender.mediaRenderChanged(mMediaPlayer);
+            sendCommand(MSG_RENDER_CHANGED, mMediaPlayer, 0);
         }
     }
 
-    private void clearLoadingFailed() {
-        mMainHandler.removeCallbacks(mLoadingFailedRunnable);
-    }
-
     private Runnable mSeekRunnable = new Runnable() {
         @Override
         public void run() {
-            mIsLoading = true;
+            mIsBuffering = true;
             notifyStartSeek();
         }
     };
 
+    private void handlePrepared() {
+        PlayerLog.d(TAG, "**SUCCESS** Video Prepared Complete!");
+
+        mAutoPlayWhenHolderCreated = false;
+        mStateMachine.transitionTo(PlayerState.PREPARED);
+        mLoadTimeoutPolicy.onPrepared(
+                mStateMachine.getElapsedTime(PlayerState.PREPARING, PlayerState.PREPARED));
+
+        // Start Play.
+        if (mMediaRender.isRenderCreating() || !mMediaRender.isRenderValid()) {
+            mAutoPlayWhenHolderCreated = true;
+        } else {
+            playWithMediaRender();
+        }
+
+        clearLoadingFailed();
+        notifyFinishLoading();
+        onPlayerPrepared();
+    }
+
+    protected void onPlayerPrepared() {
+    }
+
+    protected void onPlayerCompletion(MediaPlayer player) {
+        PlayerLog.d(TAG, "Video Play Complete!");
+
+        mStateMachine.transitionTo(PlayerState.PLAYBACK_COMPLETED);
+        mCachedIsPlaying = false;
+        mCachedPosition = 0;
+        onInternalSeekIssued(0);
+        sendCommand(MSG_SEEK, player, 0);
+        notifyPlayComplete();
+    }
+
+    private MediaPlayer.OnPreparedListener mPreloadPreparedListener =
+            new MediaPlayer.OnPreparedListener() {
+                @Override
+                public void onPrepared(final MediaPlayer player) {
+                    if (player != mPreloadPlayer) {
+                        return;
+                    }
+
+                    mPreloadPrepared = true;
+                    runOnPlayerThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            mPreloadDuration = player.getDuration();
+                        }
+                    });
+                }
+            };
+
+    private MediaPlayer.OnErrorListener mPreloadErrorListener = new MediaPlayer.OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer player, int what, int extra) {
+            if (player == mPreloadPlayer) {
+                PlayerLog.w(TAG, "Preload MediaPlayer Failed, will drop it.");
+                cancelPreload();
+            }
+
+            return true;
+        }
+    };
+
+    private MediaPlayer.OnVideoSizeChangedListener mPreloadVideoSizeChangedListener =
+            new MediaPlayer.OnVideoSizeChangedListener() {
+                @Override
+                public void onVideoSizeChanged(MediaPlayer player, int width, int height) {
+                    if (player == mPreloadPlayer) {
+                        mPreloadVideoWidth = width;
+                        mPreloadVideoHeight = height;
+                    }
+                }
+            };
+
     private MediaPlayer.OnPreparedListener mOnPreparedListener = new MediaPlayer.OnPreparedListener() {
         public void onPrepared(MediaPlayer player) {
-            Log.e(TAG, "**SUCCESS** Video Prepared Complete!");
-
-            mAutoPlayWhenHolderCreated = false;
-            mMediaPlayerIsPrepared = true;
-            mIsLoading = false;
+            if (player != mMediaPlayer) {
+                return;
+            }
 
-            // Start Play.
-            if (mMediaRender.isRenderCreating() || !mMediaRender.isRenderValid()) {
-                mAutoPlayWhenHolderCreated = true;
+            if (mWorkerHandler != null) {
+                // Fetch duration on the worker first, then finish on main thread.
+                sendCommand(MSG_PREPARED, player, 0);
             } else {
-                playWithMediaRender();
+                handlePrepared();
             }
-
-            clearLoadingFailed();
-            notifyFinishLoading();
         }
     };
 
-    private void trySeekToStartPosition() {
-        if (mVideoInfo == null) {
-            return;
+    private int getStartPosition() {
+        if (mVideoInfo == null || !mVideoSizeInitialized) {
+            return 0;
         }
 
-        int seekToPosition = mVideoInfo.getCurrentPosition();
-        if (mMediaPlayer != null && mMediaPlayerIsPrepared && mVideoSizeInitialized && seekToPosition > 0) {
-            mMediaPlayer.seekTo(seekToPosition);
+        return mVideoInfo.getCurrentPosition();
+    }
+
+    private void trySeekToStartPosition() {
+        int seekToPosition = getStartPosition();
+        if (mMediaPlayer != null && mStateMachine.isPrepared() && seekToPosition > 0) {
+            mSeekScheduler.requestSeek(seekToPosition);
         }
     }
 
@@ -279,32 +938,100 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
             new MediaPlayer.OnSeekCompleteListener() {
                 @Override
                 public void onSeekComplete(MediaPlayer mp) {
-                    mMainHandler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            mMainHandler.removeCallbacks(mSeekRunnable);
-                            mIsLoading = false;
-                            notifySeekComplete();
-                        }
-                    }, 100);
+                    if (mp != mMediaPlayer) {
+                        return;
+                    }
+
+                    mMainHandler.removeCallbacks(mSeekTimeoutRunnable);
+                    boolean hasNewerSeek = mSeekScheduler.onSeekComplete();
+                    if (hasNewerSeek) {
+                        // Other seeks are still in flight, they time out on their own.
+                        armSeekTimeout();
+                    }
+
+                    handleSeekComplete(hasNewerSeek);
                 }
             };
 
+    private void handleSeekComplete(boolean hasNewerSeek) {
+        if (hasNewerSeek) {
+            // A newer seek was issued, wait for it instead.
+            return;
+        }
+
+        mMainHandler.removeCallbacks(mSeekCompleteRunnable);
+        mMainHandler.postDelayed(mSeekCompleteRunnable, 100);
+    }
+
+    /**
+     * Counts a seek issued by the player itself, which times out like requested ones so
+     * a lost completion doesn't leave {@link SeekScheduler#isSeeking()} stuck.
+     */
+    private void onInternalSeekIssued(int position) {
+        mSeekScheduler.onSeekIssued(position);
+        armSeekTimeout();
+    }
+
+    private void armSeekTimeout() {
+        mMainHandler.removeCallbacks(mSeekTimeoutRunnable);
+        mMainHandler.postDelayed(mSeekTimeoutRunnable, SEEK_COMPLETE_TIMEOUT);
+    }
+
+    private void resetSeekScheduler() {
+        mSeekScheduler.reset();
+        mMainHandler.removeCallbacks(mSeekTimeoutRunnable);
+    }
+
+    private SeekScheduler.SeekExecutor mSeekExecutor = new SeekScheduler.SeekExecutor() {
+        @Override
+        public void executeSeek(int position) {
+            if (mMediaPlayer == null) {
+                return;
+            }
+
+            sendCommand(MSG_SEEK, mMediaPlayer, position);
+            armSeekTimeout();
+        }
+    };
+
+    private Runnable mSeekTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Seek completion never came back, don't let pending seeks get stuck.
+            PlayerLog.w(TAG, "Seek Complete Timeout!");
+            handleSeekComplete(mSeekScheduler.onSeekTimeout());
+        }
+    };
+
+    private Runnable mSeekCompleteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mMainHandler.removeCallbacks(mSeekRunnable);
+            mIsBuffering = false;
+            notifySeekComplete();
+        }
+    };
+
     private MediaPlayer.OnCompletionListener mOnCompletionListener =
             new MediaPlayer.OnCompletionListener() {
                 public void onCompletion(MediaPlayer player) {
-                    Log.e(TAG, "Video Play Complete!");
+                    if (player != mMediaPlayer) {
+                        return;
+                    }
 
-                    player.seekTo(0);
-                    notifyPlayComplete();
+                    onPlayerCompletion(player);
                 }
             };
 
     private MediaPlayer.OnVideoSizeChangedListener mOnVideoSizeChangedListener =
             new MediaPlayer.OnVideoSizeChangedListener() {
                 public void onVideoSizeChanged(MediaPlayer player, int width, int height) {
-                    mVideoWidth = player.getVideoWidth();
-                    mVideoHeight = player.getVideoHeight();
+                    if (player != mMediaPlayer) {
+                        return;
+                    }
+
+                    mVideoWidth = width;
+                    mVideoHeight = height;
 
                     updateMediaRenderSize();
 
@@ -313,15 +1040,48 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
                 }
             };
 
+    protected void onPlayerInfo(int what, int extra) {
+        if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
+            mStateMachine.markFirstFrame();
+        }
+
+        if (mMetrics != null) {
+            mMetrics.onPlayerInfo(what, extra);
+        }
+    }
+
+    private MediaPlayer.OnInfoListener mOnInfoListener = new MediaPlayer.OnInfoListener() {
+        @Override
+        public boolean onInfo(MediaPlayer player, int what, int extra) {
+            if (player == mMediaPlayer) {
+                onPlayerInfo(what, extra);
+            }
+
+            return false;
+        }
+    };
+
     private MediaPlayer.OnBufferingUpdateListener mOnBufferingUpdateListener =
             new MediaPlayer.OnBufferingUpdateListener() {
                 public void onBufferingUpdate(MediaPlayer player, int percent) {
+                    if (player != mMediaPlayer) {
+                        return;
+                    }
+
+                    if (percent > mBufferPercent) {
+                        onLoadProgress();
+                    }
+
                     mBufferPercent = percent;
                 }
             };
 
     private MediaPlayer.OnErrorListener mOnErrorListener = new MediaPlayer.OnErrorListener() {
         public boolean onError(MediaPlayer player, int what, int extra) {
+            if (player != mMediaPlayer) {
+                return true;
+            }
+
             String errorWhat;
             switch (what) {
                 case MediaPlayer.MEDIA_ERROR_UNKNOWN:
@@ -355,8 +1115,8 @@ public class SystemImplMediaPlayer extends BaseMediaPlayer {
             String msg = String.format("what = %d (%s), extra = %d (%s)",
                     what, errorWhat, extra, errorExtra);
 
-            Log.e(TAG, msg);
-            notifyError(what, msg);
+            PlayerLog.e(TAG, msg);
+            notifyError(what, extra, true, msg);
             return true;
         }
     };
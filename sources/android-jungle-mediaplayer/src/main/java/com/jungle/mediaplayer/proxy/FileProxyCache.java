@@ -0,0 +1,226 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.cache.CacheKeys;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Simple {@link ProxyCache} keeping one file per url. Only the contiguous head of the
+ * content is kept: bytes are appended while they follow what is already cached, other
+ * ranges are served from upstream without being stored.
+ */
+public class FileProxyCache implements ProxyCache {
+
+    private static final String TAG = "FileProxyCache";
+
+    private static final String DATA_SUFFIX = ".data";
+    private static final String INFO_SUFFIX = ".info";
+
+
+    private final File mDirectory;
+    private final Map<String, FileEntry> mEntries = new HashMap<>();
+
+
+    public FileProxyCache(File directory) {
+        mDirectory = directory;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    @Override
+    public synchronized ProxyCacheEntry open(String url) throws IOException {
+        String name = CacheKeys.hash(url);
+        FileEntry entry = mEntries.get(name);
+        if (entry == null) {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Cannot create cache directory: " + mDirectory);
+            }
+
+            entry = new FileEntry(name);
+            mEntries.put(name, entry);
+        }
+
+        ++entry.mRefCount;
+        return entry;
+    }
+
+    @Override
+    public void pin(String url) {
+        // Nothing is ever evicted.
+    }
+
+    @Override
+    public void unpin(String url) {
+    }
+
+    /**
+     * Deletes cached files of every url which is not open now.
+     */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0 && !mEntries.containsKey(name.substring(0, dot))) {
+                file.delete();
+            }
+        }
+    }
+
+    private synchronized void release(FileEntry entry) {
+        if (--entry.mRefCount > 0) {
+            return;
+        }
+
+        mEntries.remove(entry.mName);
+        entry.closeFile();
+    }
+
+
+    private class FileEntry implements ProxyCacheEntry {
+
+        private final String mName;
+        private final File mInfoFile;
+        private final RandomAccessFile mData;
+        private int mRefCount;
+        private long mLength;
+        private long mContentLength = -1;
+        private String mMimeType;
+
+
+        FileEntry(String name) throws IOException {
+            mName = name;
+            mInfoFile = new File(mDirectory, name + INFO_SUFFIX);
+            mData = new RandomAccessFile(new File(mDirectory, name + DATA_SUFFIX), "rw");
+            mLength = mData.length();
+            loadInfo();
+        }
+
+        private void loadInfo() {
+            if (!mInfoFile.isFile()) {
+                return;
+            }
+
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new FileInputStream(mInfoFile));
+                mContentLength = input.readLong();
+                mMimeType = input.readUTF();
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Read cache info failed.", e);
+                mContentLength = -1;
+                mMimeType = null;
+            } finally {
+                ProxyUtils.closeQuietly(input);
+            }
+
+            if (mContentLength >= 0 && mLength > mContentLength) {
+                mLength = 0;
+            }
+        }
+
+        @Override
+        public synchronized long getContentLength() {
+            return mContentLength;
+        }
+
+        @Override
+        public synchronized String getMimeType() {
+            return mMimeType;
+        }
+
+        @Override
+        public synchronized void setContentInfo(long contentLength, String mimeType)
+                throws IOException {
+
+            mContentLength = contentLength;
+            mMimeType = mimeType;
+
+            DataOutputStream output = null;
+            try {
+                output = new DataOutputStream(new FileOutputStream(mInfoFile));
+                output.writeLong(contentLength);
+                output.writeUTF(mimeType != null ? mimeType : "");
+            } finally {
+                ProxyUtils.closeQuietly(output);
+            }
+        }
+
+        @Override
+        public synchronized long getCachedLength(long position) {
+            return position < mLength ? mLength - position : 0;
+        }
+
+        @Override
+        public synchronized long getNextCachedPosition(long position) {
+            return position < mLength ? position : -1;
+        }
+
+        @Override
+        public synchronized int read(long position, byte[] buffer, int offset, int length)
+                throws IOException {
+
+            if (position >= mLength) {
+                return -1;
+            }
+
+            mData.seek(position);
+            return mData.read(buffer, offset, (int) Math.min(length, mLength - position));
+        }
+
+        @Override
+        public synchronized void write(long position, byte[] buffer, int offset, int length)
+                throws IOException {
+
+            long skip = mLength - position;
+            if (skip < 0 || skip >= length) {
+                return;
+            }
+
+            mData.seek(mLength);
+            mData.write(buffer, offset + (int) skip, length - (int) skip);
+            mLength += length - skip;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        synchronized void closeFile() {
+            ProxyUtils.closeQuietly(mData);
+        }
+    }
+}
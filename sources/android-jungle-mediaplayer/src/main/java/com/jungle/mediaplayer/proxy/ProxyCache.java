@@ -0,0 +1,38 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import java.io.IOException;
+
+/**
+ * Storage behind {@link StreamProxy}, keyed by the upstream url.
+ */
+public interface ProxyCache {
+
+    /**
+     * Every successful open must be paired with {@link ProxyCacheEntry#close()}.
+     */
+    ProxyCacheEntry open(String url) throws IOException;
+
+    /**
+     * Keeps the content of {@code url} from being evicted while it is played.
+     */
+    void pin(String url);
+
+    void unpin(String url);
+}
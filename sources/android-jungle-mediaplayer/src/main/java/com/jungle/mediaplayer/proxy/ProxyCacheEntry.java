@@ -0,0 +1,55 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Cached bytes of one url. May be opened by several proxy connections at a time, so
+ * implementations must be thread safe.
+ */
+public interface ProxyCacheEntry extends Closeable {
+
+    /**
+     * @return total length of the content, or -1 if not known yet.
+     */
+    long getContentLength();
+
+    String getMimeType();
+
+    void setContentInfo(long contentLength, String mimeType) throws IOException;
+
+    /**
+     * @return number of bytes cached contiguously from {@code position}, 0 if the byte
+     * at {@code position} is not cached.
+     */
+    long getCachedLength(long position);
+
+    /**
+     * @return first cached position at or after {@code position}, or -1 if none.
+     */
+    long getNextCachedPosition(long position);
+
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Stores bytes fetched from upstream. Implementations may drop bytes they cannot keep.
+     */
+    void write(long position, byte[] buffer, int offset, int length) throws IOException;
+}
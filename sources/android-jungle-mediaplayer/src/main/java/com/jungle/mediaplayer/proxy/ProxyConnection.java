@@ -0,0 +1,364 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import com.jungle.mediaplayer.base.BandwidthEstimator;
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.hls.HlsPlaylistRewriter;
+import com.jungle.mediaplayer.hls.M3u8Parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Serves one HTTP request of {@link StreamProxy}: cached ranges from the
+ * {@link ProxyCache}, gaps from upstream, teeing them into the cache.
+ */
+class ProxyConnection implements Runnable {
+
+    private static final String TAG = "ProxyConnection";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int BANDWIDTH_SAMPLE_BYTES = 256 * 1024;
+    private static final int MIN_BANDWIDTH_SAMPLE_BYTES = 32 * 1024;
+    private static final int MAX_PLAYLIST_SIZE = 8 * 1024 * 1024;
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+
+    private final StreamProxy mProxy;
+    private final Socket mSocket;
+    private long mRangeStart = -1;
+    private long mRangeEnd = -1;
+    private long mSampleBytes;
+    private long mSampleNanos;
+
+
+    ProxyConnection(StreamProxy proxy, Socket socket) {
+        mProxy = proxy;
+        mSocket = socket;
+    }
+
+    @Override
+    public void run() {
+        mProxy.onConnectionStarted();
+        try {
+            InputStream input = new BufferedInputStream(mSocket.getInputStream());
+            String requestLine = readLine(input);
+            if (requestLine == null) {
+                return;
+            }
+
+            String[] parts = requestLine.split(" ");
+            boolean isHead = parts.length >= 2 && "HEAD".equals(parts[0]);
+            if (parts.length < 2 || !(isHead || "GET".equals(parts[0]))) {
+                writeStatus(405, "Method Not Allowed");
+                return;
+            }
+
+            String line;
+            while ((line = readLine(input)) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && "range".equalsIgnoreCase(line.substring(0, colon).trim())) {
+                    parseRange(line.substring(colon + 1).trim());
+                }
+            }
+
+            String url = StreamProxy.decodeUrl(parts[1]);
+            if (url == null) {
+                writeStatus(404, "Not Found");
+                return;
+            }
+
+            serve(url, isHead);
+        } catch (SocketException e) {
+            // The player closed the connection, e.g. when seeking.
+            PlayerLog.d(TAG, "Proxy connection closed.");
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Proxy request failed.", e);
+        } finally {
+            ProxyUtils.closeQuietly(mSocket);
+            mProxy.onConnectionFinished();
+        }
+    }
+
+    private void parseRange(String value) {
+        // Only "bytes=start-" and "bytes=start-end" are supported.
+        if (!value.startsWith("bytes=")) {
+            return;
+        }
+
+        int dash = value.indexOf('-', 6);
+        if (dash <= 6) {
+            return;
+        }
+
+        try {
+            mRangeStart = Long.parseLong(value.substring(6, dash).trim());
+            String end = value.substring(dash + 1).trim();
+            mRangeEnd = end.length() > 0 ? Long.parseLong(end) : -1;
+        } catch (NumberFormatException e) {
+            mRangeStart = -1;
+            mRangeEnd = -1;
+        }
+    }
+
+    private void serve(String url, boolean isHead) throws IOException {
+        if (M3u8Parser.isPlaylistUrl(url)) {
+            servePlaylist(url, isHead);
+            return;
+        }
+
+        ProxyCacheEntry entry = mProxy.getCache().open(url);
+        Upstream upstream = null;
+        try {
+            long start = Math.max(0, mRangeStart);
+            long contentLength = entry.getContentLength();
+            String mimeType = entry.getMimeType();
+            if (contentLength < 0) {
+                // First time seen, the response of the first gap tells the content info.
+                upstream = Upstream.open(url, start, -1);
+                contentLength = upstream.mContentLength;
+                mimeType = upstream.mMimeType;
+                if (contentLength >= 0) {
+                    entry.setContentInfo(contentLength, mimeType);
+                }
+            }
+
+            if (contentLength >= 0 && start >= contentLength) {
+                writeStatus(416, "Range Not Satisfiable");
+                return;
+            }
+
+            long end = contentLength >= 0 ? contentLength - 1 : Long.MAX_VALUE;
+            if (mRangeEnd >= 0 && mRangeEnd < end) {
+                end = mRangeEnd;
+            }
+
+            OutputStream output = new BufferedOutputStream(mSocket.getOutputStream(), BUFFER_SIZE);
+            writeHeaders(output, start, end, contentLength, mimeType);
+            if (!isHead) {
+                upstream = transfer(url, entry, upstream, output, start, end, contentLength);
+            }
+
+            output.flush();
+        } finally {
+            Upstream.close(upstream);
+            entry.close();
+            flushBandwidthSample(MIN_BANDWIDTH_SAMPLE_BYTES);
+        }
+    }
+
+    /**
+     * Only time spent reading upstream is measured, not time the player keeps us
+     * waiting on the socket, which would make the bandwidth look lower than it is.
+     */
+    private void onUpstreamRead(int bytes, long nanos) {
+        if (bytes <= 0) {
+            return;
+        }
+
+        mSampleBytes += bytes;
+        mSampleNanos += nanos;
+        flushBandwidthSample(BANDWIDTH_SAMPLE_BYTES);
+    }
+
+    private void flushBandwidthSample(long minBytes) {
+        if (mSampleBytes < minBytes) {
+            return;
+        }
+
+        BandwidthEstimator estimator = mProxy.getBandwidthEstimator();
+        if (estimator != null) {
+            estimator.addSample(mSampleBytes, mSampleNanos);
+        }
+
+        mSampleBytes = 0;
+        mSampleNanos = 0;
+    }
+
+    private Upstream transfer(
+            String url, ProxyCacheEntry entry, Upstream upstream, OutputStream output,
+            long start, long end, long contentLength) throws IOException {
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = start;
+        while (position <= end) {
+            long cached = entry.getCachedLength(position);
+            if (cached > 0) {
+                Upstream.close(upstream);
+                upstream = null;
+
+                long stop = Math.min(end + 1, position + cached);
+                while (position < stop) {
+                    int read = entry.read(position, buffer, 0,
+                            (int) Math.min(buffer.length, stop - position));
+                    if (read <= 0) {
+                        break;
+                    }
+
+                    output.write(buffer, 0, read);
+                    position += read;
+                    mProxy.addCacheBytes(read);
+                }
+
+                if (position < stop) {
+                    throw new IOException("Cached range shrank while reading.");
+                }
+                continue;
+            }
+
+            long next = entry.getNextCachedPosition(position);
+            long gapEnd = next >= 0 ? Math.min(end, next - 1) : end;
+            if (upstream == null || upstream.mPosition != position) {
+                Upstream.close(upstream);
+                boolean toEnd = gapEnd == end && (contentLength < 0 || end == contentLength - 1);
+                upstream = Upstream.open(url, position, toEnd ? -1 : gapEnd);
+            }
+
+            while (position <= gapEnd) {
+                long readStart = System.nanoTime();
+                int read = upstream.mInput.read(buffer, 0,
+                        (int) Math.min(buffer.length, gapEnd - position + 1));
+                onUpstreamRead(read, System.nanoTime() - readStart);
+                if (read < 0) {
+                    if (contentLength < 0) {
+                        return upstream;
+                    }
+
+                    throw new IOException("Upstream ended at " + position + " of " + contentLength);
+                }
+
+                entry.write(position, buffer, 0, read);
+                output.write(buffer, 0, read);
+                position += read;
+                upstream.mPosition = position;
+                mProxy.addNetworkBytes(read);
+            }
+        }
+
+        return upstream;
+    }
+
+    /**
+     * HLS playlists are not cached, live ones change all the time. Their URIs are
+     * rewritten to go through this proxy, so segments get cached like any stream.
+     */
+    private void servePlaylist(String url, boolean isHead) throws IOException {
+        byte[] body;
+        Upstream upstream = Upstream.open(url, 0, -1);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = upstream.mInput.read(buffer)) >= 0) {
+                if (content.size() + read > MAX_PLAYLIST_SIZE) {
+                    throw new IOException("Playlist too large: " + url);
+                }
+
+                content.write(buffer, 0, read);
+            }
+
+            mProxy.addNetworkBytes(content.size());
+
+            // Relative URIs are relative to the final url, after redirects.
+            String baseUrl = upstream.mConnection.getURL().toString();
+            String playlist = HlsPlaylistRewriter.rewrite(content.toString("UTF-8"), baseUrl,
+                    new HlsPlaylistRewriter.UrlMapper() {
+                        @Override
+                        public String map(String absoluteUrl) {
+                            return mProxy.getProxyUrl(absoluteUrl);
+                        }
+                    });
+            body = playlist.getBytes("UTF-8");
+        } finally {
+            upstream.close();
+        }
+
+        mRangeStart = -1;
+        mRangeEnd = -1;
+
+        OutputStream output = new BufferedOutputStream(mSocket.getOutputStream(), BUFFER_SIZE);
+        writeHeaders(output, 0, body.length - 1, body.length, HlsPlaylistRewriter.MIME_TYPE);
+        if (!isHead) {
+            output.write(body);
+        }
+
+        output.flush();
+    }
+
+    private void writeHeaders(
+            OutputStream output, long start, long end,
+            long contentLength, String mimeType) throws IOException {
+
+        boolean partial = mRangeStart >= 0 && contentLength >= 0;
+        StringBuilder builder = new StringBuilder(256);
+        builder.append(partial ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+        builder.append("Content-Type: ")
+                .append(mimeType != null && mimeType.length() > 0 ? mimeType : DEFAULT_MIME_TYPE)
+                .append("\r\n");
+        builder.append("Accept-Ranges: bytes\r\n");
+        if (contentLength >= 0) {
+            builder.append("Content-Length: ").append(end - start + 1).append("\r\n");
+        }
+
+        if (partial) {
+            builder.append("Content-Range: bytes ").append(start).append('-').append(end)
+                    .append('/').append(contentLength).append("\r\n");
+        }
+
+        builder.append("Connection: close\r\n\r\n");
+        output.write(builder.toString().getBytes("ISO-8859-1"));
+    }
+
+    private void writeStatus(int code, String reason) throws IOException {
+        OutputStream output = mSocket.getOutputStream();
+        output.write(("HTTP/1.1 " + code + " " + reason
+                + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+        output.flush();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = input.read()) >= 0) {
+            if (c == '\n') {
+                int length = builder.length();
+                if (length > 0 && builder.charAt(length - 1) == '\r') {
+                    builder.setLength(length - 1);
+                }
+
+                return builder.toString();
+            }
+
+            if (builder.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Request line too long.");
+            }
+
+            builder.append((char) c);
+        }
+
+        return builder.length() > 0 ? builder.toString() : null;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import com.jungle.mediaplayer.cache.SparseCacheEntry;
+import com.jungle.mediaplayer.cache.SparseFileCache;
+
+import java.io.IOException;
+
+/**
+ * {@link ProxyCache} over a {@link SparseFileCache}, so disjoint ranges fetched while
+ * the user seeks around are all kept and served from disk.
+ */
+public class SparseProxyCache implements ProxyCache {
+
+    private final SparseFileCache mCache;
+
+
+    public SparseProxyCache(SparseFileCache cache) {
+        mCache = cache;
+    }
+
+    public SparseFileCache getCache() {
+        return mCache;
+    }
+
+    @Override
+    public ProxyCacheEntry open(String url) throws IOException {
+        return new Entry(mCache.open(url));
+    }
+
+    @Override
+    public void pin(String url) {
+        mCache.pin(url);
+    }
+
+    @Override
+    public void unpin(String url) {
+        mCache.unpin(url);
+    }
+
+
+    private static class Entry implements ProxyCacheEntry {
+
+        private final SparseCacheEntry mEntry;
+        private boolean mClosed;
+
+
+        Entry(SparseCacheEntry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mEntry.getContentLength();
+        }
+
+        @Override
+        public String getMimeType() {
+            return mEntry.getMimeType();
+        }
+
+        @Override
+        public void setContentInfo(long contentLength, String mimeType) throws IOException {
+            mEntry.setContentInfo(contentLength, mimeType);
+        }
+
+        @Override
+        public long getCachedLength(long position) {
+            return mEntry.getCachedLength(position);
+        }
+
+        @Override
+        public long getNextCachedPosition(long position) {
+            return mEntry.getNextCachedPosition(position);
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            return mEntry.read(position, buffer, offset, length);
+        }
+
+        @Override
+        public void write(long position, byte[] buffer, int offset, int length) throws IOException {
+            mEntry.write(position, buffer, offset, length);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!mClosed) {
+                mClosed = true;
+                mEntry.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import android.os.Process;
+import com.jungle.mediaplayer.base.PlayerLog;
+import com.jungle.mediaplayer.base.VideoInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads the head (container header and first frames) of upcoming videos into the
+ * cache of a {@link StreamProxy}, so playing them through the proxy starts from local
+ * bytes.
+ * <p>
+ * At most {@code maxConcurrent} heads are fetched at a time, on background priority
+ * threads, and throttled while the proxy is serving a stream being played.
+ */
+public class StreamPrefetcher {
+
+    private static final String TAG = "StreamPrefetcher";
+
+    public static final long DEFAULT_HEAD_BYTES = 512 * 1024;
+    public static final int DEFAULT_MAX_CONCURRENT = 2;
+    public static final long DEFAULT_ACTIVE_STREAM_RATE = 256 * 1024;
+    public static final long WHOLE_STREAM = Long.MAX_VALUE;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+
+    private class Task implements Runnable {
+
+        private final String mUrl;
+        private final long mHeadBytes;
+        private volatile boolean mCancelled;
+        private Future<?> mFuture;
+
+
+        Task(String url, long headBytes) {
+            mUrl = url;
+            mHeadBytes = headBytes;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!mCancelled) {
+                    fetchHead(this);
+                }
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Prefetch failed.", e);
+            } finally {
+                onTaskFinished(this);
+            }
+        }
+
+        void cancel() {
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+    }
+
+
+    private final StreamProxy mProxy;
+    private final ThreadPoolExecutor mExecutor;
+    private final Map<String, Task> mTasks = new HashMap<>();
+    private final AtomicLong mPrefetchedBytes = new AtomicLong();
+    private final AtomicInteger mCompletedCount = new AtomicInteger();
+    private final AtomicInteger mCancelledCount = new AtomicInteger();
+    private volatile long mHeadBytes = DEFAULT_HEAD_BYTES;
+    private volatile long mActiveStreamRate = DEFAULT_ACTIVE_STREAM_RATE;
+
+
+    public StreamPrefetcher(StreamProxy proxy) {
+        this(proxy, DEFAULT_MAX_CONCURRENT);
+    }
+
+    public StreamPrefetcher(StreamProxy proxy, int maxConcurrent) {
+        mProxy = proxy;
+        mExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "JungleMediaPlayer-Prefetch-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setHeadBytes(long headBytes) {
+        mHeadBytes = headBytes;
+    }
+
+    public long getHeadBytes() {
+        return mHeadBytes;
+    }
+
+    /**
+     * Caps prefetch bandwidth while the proxy serves a played stream, 0 for no cap.
+     */
+    public void setActiveStreamRate(long bytesPerSecond) {
+        mActiveStreamRate = bytesPerSecond;
+    }
+
+    /**
+     * Makes {@code upcoming} (nearest first) the set of videos to prefetch. Pending
+     * prefetches of videos no longer in the list, e.g. scrolled past, are cancelled.
+     */
+    public synchronized void prefetch(List<VideoInfo> upcoming) {
+        List<String> urls = new ArrayList<>(upcoming.size());
+        for (VideoInfo info : upcoming) {
+            if (info != null) {
+                urls.add(info.getStreamUrl());
+            }
+        }
+
+        prefetchUrls(urls, mHeadBytes);
+    }
+
+    public synchronized void prefetch(VideoInfo info) {
+        if (info != null) {
+            prefetchUrl(info.getStreamUrl(), mHeadBytes);
+        }
+    }
+
+    /**
+     * Same as {@link #prefetch(List)} for plain urls, fetching the first {@code bytes}
+     * of each, or {@link #WHOLE_STREAM}.
+     */
+    public synchronized void prefetchUrls(List<String> upcoming, long bytes) {
+        Set<String> urls = new HashSet<>();
+        for (String url : upcoming) {
+            if (ProxyUtils.isHttpUrl(url)) {
+                urls.add(url);
+            }
+        }
+
+        Iterator<Map.Entry<String, Task>> iterator = mTasks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Task task = iterator.next().getValue();
+            if (!urls.contains(task.mUrl)) {
+                iterator.remove();
+                cancelTask(task);
+            }
+        }
+
+        for (String url : upcoming) {
+            prefetchUrl(url, bytes);
+        }
+    }
+
+    public synchronized void prefetchUrl(String url, long bytes) {
+        if (!ProxyUtils.isHttpUrl(url) || mTasks.containsKey(url)) {
+            return;
+        }
+
+        Task task = new Task(url, bytes);
+        mTasks.put(url, task);
+        task.mFuture = mExecutor.submit(task);
+    }
+
+    public synchronized void cancel(VideoInfo info) {
+        if (info != null) {
+            cancelUrl(info.getStreamUrl());
+        }
+    }
+
+    public synchronized void cancelUrl(String url) {
+        Task task = mTasks.remove(url);
+        if (task != null) {
+            cancelTask(task);
+        }
+    }
+
+    public synchronized void cancelAll() {
+        for (Task task : mTasks.values()) {
+            cancelTask(task);
+        }
+
+        mTasks.clear();
+    }
+
+    public synchronized boolean isPrefetching(VideoInfo info) {
+        return info != null && mTasks.containsKey(info.getStreamUrl());
+    }
+
+    public void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+
+    public long getPrefetchedBytes() {
+        return mPrefetchedBytes.get();
+    }
+
+    public int getCompletedCount() {
+        return mCompletedCount.get();
+    }
+
+    public int getCancelledCount() {
+        return mCancelledCount.get();
+    }
+
+    private void cancelTask(Task task) {
+        task.cancel();
+        mCancelledCount.incrementAndGet();
+    }
+
+    private synchronized void onTaskFinished(Task task) {
+        if (mTasks.get(task.mUrl) == task) {
+            mTasks.remove(task.mUrl);
+        }
+
+        if (!task.mCancelled) {
+            mCompletedCount.incrementAndGet();
+        }
+    }
+
+    private void fetchHead(Task task) throws IOException {
+        ProxyCacheEntry entry = mProxy.getCache().open(task.mUrl);
+        Upstream upstream = null;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = 0;
+            while (!task.mCancelled) {
+                long contentLength = entry.getContentLength();
+                long end = contentLength >= 0
+                        ? Math.min(task.mHeadBytes, contentLength) : task.mHeadBytes;
+                if (position >= end) {
+                    break;
+                }
+
+                long cached = entry.getCachedLength(position);
+                if (cached > 0) {
+                    position += cached;
+                    continue;
+                }
+
+                long next = entry.getNextCachedPosition(position);
+                long gapEnd = next >= 0 ? Math.min(end, next) - 1 : end - 1;
+                upstream = Upstream.open(task.mUrl, position,
+                        gapEnd < WHOLE_STREAM - 1 ? gapEnd : -1);
+                if (contentLength < 0 && upstream.mContentLength >= 0) {
+                    entry.setContentInfo(upstream.mContentLength, upstream.mMimeType);
+                }
+
+                while (position <= gapEnd && !task.mCancelled) {
+                    int read = upstream.mInput.read(buffer, 0,
+                            (int) Math.min(buffer.length, gapEnd - position + 1));
+                    if (read < 0) {
+                        return;
+                    }
+
+                    entry.write(position, buffer, 0, read);
+                    position += read;
+                    mPrefetchedBytes.addAndGet(read);
+                    throttle(read);
+                }
+
+                upstream.close();
+                upstream = null;
+            }
+        } finally {
+            Upstream.close(upstream);
+            entry.close();
+        }
+    }
+
+    private void throttle(int bytes) {
+        long rate = mActiveStreamRate;
+        if (rate <= 0 || mProxy.getActiveConnectionCount() == 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(bytes * 1000L / rate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
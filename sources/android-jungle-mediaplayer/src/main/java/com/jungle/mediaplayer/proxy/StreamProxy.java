@@ -0,0 +1,241 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import com.jungle.mediaplayer.base.BandwidthEstimator;
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Localhost HTTP proxy in front of progressive http(s) streams.
+ * <p>
+ * {@link #getProxyUrl(String)} rewrites a stream url to point to this proxy. Every
+ * request is served from the {@link ProxyCache} where bytes are cached, and only the
+ * missing ranges are fetched from upstream, which are teed into the cache on the way.
+ * So replaying or seeking back in a cached video costs no network.
+ */
+public class StreamProxy {
+
+    private static final String TAG = "StreamProxy";
+
+    private static final String HOST = "127.0.0.1";
+    private static final int MAX_CONNECTIONS = 8;
+
+
+    private final ProxyCache mCache;
+    private final AtomicLong mCacheBytes = new AtomicLong();
+    private final AtomicLong mNetworkBytes = new AtomicLong();
+    private final AtomicInteger mActiveConnections = new AtomicInteger();
+    private ServerSocket mServerSocket;
+    private ThreadPoolExecutor mExecutor;
+    private volatile int mPort = -1;
+    private volatile BandwidthEstimator mBandwidthEstimator = BandwidthEstimator.getDefault();
+
+
+    public StreamProxy(ProxyCache cache) {
+        mCache = cache;
+    }
+
+    public ProxyCache getCache() {
+        return mCache;
+    }
+
+    public synchronized void start() throws IOException {
+        if (mServerSocket != null) {
+            return;
+        }
+
+        final ServerSocket serverSocket = new ServerSocket(0, 16, InetAddress.getByName(HOST));
+        mServerSocket = serverSocket;
+        mExecutor = new ThreadPoolExecutor(
+                MAX_CONNECTIONS, MAX_CONNECTIONS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ProxyThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+        mPort = serverSocket.getLocalPort();
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(serverSocket);
+            }
+        }, "JungleMediaPlayer-ProxyAccept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public synchronized void shutdown() {
+        if (mServerSocket == null) {
+            return;
+        }
+
+        mPort = -1;
+        ProxyUtils.closeQuietly(mServerSocket);
+        mServerSocket = null;
+        mExecutor.shutdownNow();
+        mExecutor = null;
+    }
+
+    public boolean isRunning() {
+        return mPort > 0;
+    }
+
+    /**
+     * @return url to play {@code url} through this proxy; {@code url} itself if the
+     * proxy is not running or {@code url} is not http(s).
+     */
+    public String getProxyUrl(String url) {
+        int port = mPort;
+        if (port <= 0 || !ProxyUtils.isHttpUrl(url)) {
+            return url;
+        }
+
+        try {
+            return "http://" + HOST + ":" + port + "/" + URLEncoder.encode(url, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Keeps the cached content of {@code url} from being evicted, e.g. while it is played.
+     */
+    public void pin(String url) {
+        mCache.pin(url);
+    }
+
+    public void unpin(String url) {
+        mCache.unpin(url);
+    }
+
+    /**
+     * Upstream transfers are measured into {@code estimator}, null to not measure.
+     */
+    public void setBandwidthEstimator(BandwidthEstimator estimator) {
+        mBandwidthEstimator = estimator;
+    }
+
+    public BandwidthEstimator getBandwidthEstimator() {
+        return mBandwidthEstimator;
+    }
+
+    /**
+     * @return bytes served from cache since the proxy was created.
+     */
+    public long getCacheBytes() {
+        return mCacheBytes.get();
+    }
+
+    /**
+     * @return bytes fetched from upstream since the proxy was created.
+     */
+    public long getNetworkBytes() {
+        return mNetworkBytes.get();
+    }
+
+    /**
+     * @return number of requests being served now, i.e. streams being played.
+     */
+    public int getActiveConnectionCount() {
+        return mActiveConnections.get();
+    }
+
+    void onConnectionStarted() {
+        mActiveConnections.incrementAndGet();
+    }
+
+    void onConnectionFinished() {
+        mActiveConnections.decrementAndGet();
+    }
+
+    void addCacheBytes(long bytes) {
+        mCacheBytes.addAndGet(bytes);
+    }
+
+    void addNetworkBytes(long bytes) {
+        mNetworkBytes.addAndGet(bytes);
+    }
+
+    static String decodeUrl(String path) {
+        if (path == null || path.length() < 2 || path.charAt(0) != '/') {
+            return null;
+        }
+
+        try {
+            String url = URLDecoder.decode(path.substring(1), "UTF-8");
+            return ProxyUtils.isHttpUrl(url) ? url : null;
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void acceptConnections(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    PlayerLog.w(TAG, "Accept proxy connection failed.", e);
+                }
+                break;
+            }
+
+            ThreadPoolExecutor executor;
+            synchronized (this) {
+                executor = mServerSocket == serverSocket ? mExecutor : null;
+            }
+
+            if (executor == null) {
+                ProxyUtils.closeQuietly(socket);
+                break;
+            }
+
+            try {
+                executor.execute(new ProxyConnection(this, socket));
+            } catch (RuntimeException e) {
+                ProxyUtils.closeQuietly(socket);
+            }
+        }
+    }
+
+
+    private static class ProxyThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JungleMediaPlayer-Proxy-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import android.util.Log;
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * One ranged GET to the origin server.
+ */
+class Upstream {
+
+    private static final String TAG = "Upstream";
+
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT = 15 * 1000;
+
+
+    public HttpURLConnection mConnection;
+    public InputStream mInput;
+    public long mPosition;
+    public long mContentLength = -1;
+    public String mMimeType;
+
+
+    /**
+     * @param end inclusive, -1 for the rest of the content.
+     */
+    static Upstream open(String url, long start, long end) throws IOException {
+        if (PlayerLog.isLoggable(Log.DEBUG)) {
+            PlayerLog.d(TAG, "Fetch upstream range " + start + "-" + (end >= 0 ? end : ""));
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (start > 0 || end >= 0) {
+            connection.setRequestProperty("Range",
+                    "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end) : ""));
+        }
+
+        Upstream upstream = new Upstream();
+        upstream.mConnection = connection;
+        try {
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Upstream responded " + code + " for " + url);
+            }
+
+            upstream.mInput = connection.getInputStream();
+            upstream.mMimeType = connection.getContentType();
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                upstream.mContentLength = parseTotalLength(connection.getHeaderField("Content-Range"));
+            } else {
+                // Range ignored by the server.
+                upstream.mContentLength = parseLong(connection.getHeaderField("Content-Length"));
+                skipFully(upstream.mInput, start);
+            }
+
+            upstream.mPosition = start;
+            return upstream;
+        } catch (IOException e) {
+            upstream.close();
+            throw e;
+        }
+    }
+
+    void close() {
+        ProxyUtils.closeQuietly(mInput);
+        mConnection.disconnect();
+    }
+
+    static void close(Upstream upstream) {
+        if (upstream != null) {
+            upstream.close();
+        }
+    }
+
+    private static void skipFully(InputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new IOException("Upstream ended while skipping.");
+                }
+                skipped = 1;
+            }
+
+            count -= skipped;
+        }
+    }
+
+    private static long parseTotalLength(String contentRange) {
+        // "bytes start-end/total"
+        if (contentRange == null) {
+            return -1;
+        }
+
+        int slash = contentRange.lastIndexOf('/');
+        return slash >= 0 ? parseLong(contentRange.substring(slash + 1)) : -1;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.recorder;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link SegmentSink} uploading every segment with an HTTP POST to one url, in order,
+ * while the recording goes on.
+ * <p>
+ * Each request carries the segment as an {@code audio/wav} body and its index in the
+ * {@code X-Segment-Index} header. Once the recording ends, an empty POST with
+ * {@code X-Segment-Count} tells the server the recording is complete. Failed requests
+ * are retried with backoff; a segment that still fails is reported and the rest of the
+ * recording is not uploaded (its files are still deleted, unless kept with
+ * {@link #setDeleteUploaded(boolean)}). Listener calls are on the main thread.
+ * <p>
+ * Use one uploader per recording.
+ */
+public class HttpSegmentUploader implements SegmentSink {
+
+    private static final String TAG = "HttpSegmentUploader";
+
+    public static final String HEADER_SEGMENT_INDEX = "X-Segment-Index";
+    public static final String HEADER_SEGMENT_COUNT = "X-Segment-Count";
+
+    private static final String CONTENT_TYPE = "audio/wav";
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT = 15 * 1000;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+
+    public interface Listener {
+        void onSegmentUploaded(RecordSegment segment);
+
+        /**
+         * @param segment null if the final request failed, or the recording itself.
+         */
+        void onUploadFailed(RecordSegment segment);
+
+        /**
+         * All segments uploaded and the server told the recording is complete.
+         */
+        void onUploadFinished(int segmentCount);
+    }
+
+
+    private final String mUploadUrl;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private Listener mListener;
+    private int mMaxRetries = DEFAULT_MAX_RETRIES;
+    private boolean mDeleteUploaded = true;
+    private volatile boolean mFailed;
+
+
+    public HttpSegmentUploader(String uploadUrl) {
+        mUploadUrl = uploadUrl;
+
+        // One thread: segments arrive at the server in order.
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "JungleMediaPlayer-SegmentUpload-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        mMaxRetries = maxRetries;
+    }
+
+    /**
+     * Whether segment files are deleted once uploaded, or once they are skipped after a
+     * failure, true by default.
+     */
+    public void setDeleteUploaded(boolean deleteUploaded) {
+        mDeleteUploaded = deleteUploaded;
+    }
+
+    @Override
+    public void onSegment(final RecordSegment segment) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mFailed) {
+                    if (mDeleteUploaded) {
+                        segment.getFile().delete();
+                    }
+                    return;
+                }
+
+                if (!uploadWithRetry(segment.getIndex(), segment)) {
+                    mFailed = true;
+                    notifyFailed(segment);
+                    return;
+                }
+
+                if (mDeleteUploaded) {
+                    segment.getFile().delete();
+                }
+
+                notifyUploaded(segment);
+            }
+        });
+    }
+
+    @Override
+    public void onFinished(final int segmentCount, final boolean failed) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mFailed) {
+                    return;
+                }
+
+                if (failed) {
+                    // The recording misses its end, don't tell the server it is complete.
+                    mFailed = true;
+                    notifyFailed(null);
+                    return;
+                }
+
+                if (!uploadWithRetry(segmentCount, null)) {
+                    mFailed = true;
+                    notifyFailed(null);
+                    return;
+                }
+
+                notifyFinished(segmentCount);
+            }
+        });
+    }
+
+    /**
+     * @param segment null for the final request, then {@code index} is the segment count.
+     */
+    private boolean uploadWithRetry(int index, RecordSegment segment) {
+        for (int attempt = 0; attempt <= mMaxRetries; ++attempt) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            try {
+                upload(index, segment);
+                return true;
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Upload segment failed.", e);
+            }
+        }
+
+        return false;
+    }
+
+    private void upload(int index, RecordSegment segment) throws IOException {
+        if (PlayerLog.isLoggable(Log.DEBUG)) {
+            PlayerLog.d(TAG, segment != null
+                    ? "Upload segment " + index : "Finish upload of " + index + " segments");
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(mUploadUrl).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty(segment != null
+                    ? HEADER_SEGMENT_INDEX : HEADER_SEGMENT_COUNT, String.valueOf(index));
+
+            int length = segment != null ? (int) segment.getFile().length() : 0;
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+            connection.setFixedLengthStreamingMode(length);
+
+            OutputStream output = connection.getOutputStream();
+            try {
+                if (segment != null) {
+                    copy(segment, output, length);
+                }
+            } finally {
+                output.close();
+            }
+
+            int code = connection.getResponseCode();
+            if (code < 200 || code >= 300) {
+                throw new IOException("Upload responded " + code);
+            }
+
+            // Drain the response, so the connection can be reused.
+            InputStream input = connection.getInputStream();
+            try {
+                byte[] buffer = new byte[256];
+                while (input.read(buffer) >= 0) {
+                    // Discard.
+                }
+            } finally {
+                input.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void copy(RecordSegment segment, OutputStream output, int length)
+            throws IOException {
+
+        InputStream input = new BufferedInputStream(
+                new FileInputStream(segment.getFile()), BUFFER_SIZE);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int total = 0;
+            int read;
+            while (total < length && (read = input.read(buffer, 0,
+                    Math.min(buffer.length, length - total))) >= 0) {
+                output.write(buffer, 0, read);
+                total += read;
+            }
+
+            if (total < length) {
+                throw new IOException("Segment file shrank while uploading.");
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private void notifyUploaded(final RecordSegment segment) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onSegmentUploaded(segment);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param segment null if the final request or the recording failed.
+     */
+    private void notifyFailed(final RecordSegment segment) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onUploadFailed(segment);
+                }
+            }
+        });
+    }
+
+    private void notifyFinished(final int segmentCount) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onUploadFinished(segmentCount);
+                }
+            }
+        });
+    }
+}
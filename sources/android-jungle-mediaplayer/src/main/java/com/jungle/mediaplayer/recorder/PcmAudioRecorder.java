@@ -0,0 +1,609 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.recorder;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.content.ContextCompat;
+import android.text.TextUtils;
+import android.util.Log;
+import com.jungle.mediaplayer.audio.ShortRingBuffer;
+import com.jungle.mediaplayer.base.PlayerLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records 16 bit PCM with {@link AudioRecord} to a WAV file.
+ * <p>
+ * A capture thread reads the microphone into a preallocated {@link ShortRingBuffer} and
+ * never touches the disk; a writer thread drains the ring to the file. Slow storage only
+ * lets the ring fill up, which holds {@link #setBufferMillis(int) a few seconds}.
+ * Audio levels are metered on the capture thread without allocating, and delivered to
+ * the {@link LevelListener} on the main thread at a fixed rate.
+ * <p>
+ * With a {@link SegmentSink}, the writer also rolls a new WAV segment every few seconds
+ * and hands each one to the sink as soon as it is closed, so a voice message can be
+ * uploaded while it is being recorded.
+ * <p>
+ * {@link RecorderListener#onStopRecord()} is called once the file is complete. A recording
+ * started while the previous one is still being finished starts after its
+ * {@code onStopRecord()}, so it never shares the output file with the old writer.
+ */
+public class PcmAudioRecorder extends BaseAudioRecorder
+        implements RecordPermissionRequester.Callback {
+
+    private static final String TAG = "PcmAudioRecorder";
+
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+    public static final int DEFAULT_CHANNEL_COUNT = 1;
+    public static final int DEFAULT_BUFFER_MILLIS = 5000;
+    public static final int DEFAULT_LEVEL_INTERVAL_MS = 50;
+
+    private static final int CAPTURE_CHUNK_MS = 20;
+    private static final int WRITE_CHUNK_MS = 200;
+    private static final long WRITER_PARK_NANOS = 20 * 1000 * 1000;
+
+
+    public interface LevelListener {
+        /**
+         * Main thread, levels of the last interval.
+         *
+         * @param peak max absolute amplitude in [0, 1].
+         * @param rms root mean square amplitude in [0, 1].
+         */
+        void onLevel(float peak, float rms);
+    }
+
+
+    /**
+     * One recording: the AudioRecord, the ring and both threads.
+     */
+    private class Session {
+
+        final AudioRecord mRecord;
+        final ShortRingBuffer mRing;
+        final WavWriter mWriter;
+        final int mSampleRate;
+        final int mChannelCount;
+        final int mSamplesPerSecond;
+        final String mOutputPath;
+        final int mWriteChunk;
+        final SegmentSink mSegmentSink;
+        final long mSegmentSamples;
+        private WavWriter mSegmentWriter;
+        private File mSegmentFile;
+        private long mSegmentWritten;
+        private long mSegmentStart;
+        private int mSegmentCount;
+        final int mLevelWindow;
+        final Thread mCaptureThread;
+        final Thread mWriterThread;
+        volatile boolean mStopped;
+        volatile boolean mCaptureDone;
+        volatile float mPeak;
+        volatile float mRms;
+        volatile long mDroppedSamples;
+        private boolean mReleased;
+
+
+        Session(AudioRecord record, WavWriter writer, int samplesPerSecond, int writeChunk) {
+            mRecord = record;
+            mWriter = writer;
+            mSampleRate = PcmAudioRecorder.this.mSampleRate;
+            mChannelCount = PcmAudioRecorder.this.mChannelCount;
+            mSamplesPerSecond = samplesPerSecond;
+            mOutputPath = mOutputFile;
+            mWriteChunk = writeChunk;
+            mSegmentSink = mSegmentSinkForNext;
+            // A sink takes one recording.
+            mSegmentSinkForNext = null;
+            mSegmentSamples = (long) mSegmentMillis * mSampleRate / 1000 * mChannelCount;
+            mRing = new ShortRingBuffer(
+                    (int) ((long) samplesPerSecond * mBufferMillis / 1000));
+            mLevelWindow = Math.max(1, samplesPerSecond * mLevelIntervalMs / 1000);
+
+            final int captureChunk = Math.max(1, samplesPerSecond * CAPTURE_CHUNK_MS / 1000);
+            mCaptureThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                    capture(new short[captureChunk]);
+                }
+            }, "JungleMediaPlayer-RecordCapture");
+
+            mWriterThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain(new short[mWriteChunk]);
+                }
+            }, "JungleMediaPlayer-RecordWriter");
+        }
+
+        void start() {
+            mWriterThread.start();
+            mCaptureThread.start();
+        }
+
+        void stop() {
+            mStopped = true;
+            synchronized (this) {
+                if (mReleased) {
+                    return;
+                }
+
+                try {
+                    // Also wakes up a blocked read().
+                    mRecord.stop();
+                } catch (IllegalStateException e) {
+                    PlayerLog.w(TAG, "Stop AudioRecord failed.", e);
+                }
+            }
+        }
+
+        private void capture(short[] buffer) {
+            int peak = 0;
+            long sumSquares = 0;
+            int metered = 0;
+            try {
+                while (!mStopped) {
+                    int read = mRecord.read(buffer, 0, buffer.length);
+                    if (read < 0) {
+                        if (!mStopped) {
+                            postError(this, RecorderListener.Error.RecordInternalFailed);
+                        }
+                        break;
+                    }
+
+                    for (int i = 0; i < read; ++i) {
+                        int sample = buffer[i];
+                        int amplitude = sample < 0 ? -sample : sample;
+                        if (amplitude > peak) {
+                            peak = amplitude;
+                        }
+
+                        sumSquares += sample * sample;
+                        if (++metered == mLevelWindow) {
+                            mPeak = Math.min(1f, peak / 32767f);
+                            mRms = (float) Math.min(1.0, Math.sqrt(sumSquares / metered) / 32767);
+                            peak = 0;
+                            sumSquares = 0;
+                            metered = 0;
+                        }
+                    }
+
+                    // Never wait for the writer, a full ring drops the overflow, in whole
+                    // frames to keep the channels in order.
+                    int free = mRing.capacity() - mRing.available();
+                    int written = mRing.write(
+                            buffer, 0, Math.min(read, free / mChannelCount * mChannelCount));
+                    if (written < read) {
+                        mDroppedSamples += read - written;
+                    }
+
+                    LockSupport.unpark(mWriterThread);
+                }
+            } finally {
+                synchronized (this) {
+                    mReleased = true;
+                    mRecord.release();
+                }
+
+                mCaptureDone = true;
+                LockSupport.unpark(mWriterThread);
+            }
+        }
+
+        private void drain(short[] chunk) {
+            boolean failed = false;
+            try {
+                while (true) {
+                    boolean captureDone = mCaptureDone;
+                    int count = mRing.read(chunk, 0, chunk.length);
+                    if (count > 0) {
+                        mWriter.write(chunk, 0, count);
+                        if (mSegmentSink != null) {
+                            writeSegments(chunk, count);
+                        }
+                    } else if (captureDone) {
+                        break;
+                    } else {
+                        LockSupport.parkNanos(WRITER_PARK_NANOS);
+                    }
+                }
+            } catch (IOException e) {
+                PlayerLog.e(TAG, "Write recording failed.", e);
+                failed = true;
+                stop();
+            } finally {
+                try {
+                    mWriter.close();
+                } catch (IOException e) {
+                    PlayerLog.e(TAG, "Close recording failed.", e);
+                    failed = true;
+                }
+
+                if (mSegmentSink != null) {
+                    failed |= !finishSegments();
+                }
+            }
+
+            if (mDroppedSamples > 0 && PlayerLog.isLoggable(Log.WARN)) {
+                PlayerLog.w(TAG, "Recording dropped " + mDroppedSamples + " samples.");
+            }
+
+            if (failed) {
+                postError(this, RecorderListener.Error.RecordInternalFailed);
+            }
+            postFinished(this);
+        }
+
+        private void writeSegments(short[] chunk, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                if (mSegmentWriter == null) {
+                    mSegmentFile = getSegmentFile(mOutputPath, mSegmentCount);
+                    mSegmentWriter = new WavWriter(
+                            mSegmentFile, mSampleRate, mChannelCount, mWriteChunk);
+                }
+
+                int written = (int) Math.min(count - offset, mSegmentSamples - mSegmentWritten);
+                mSegmentWriter.write(chunk, offset, written);
+                mSegmentWritten += written;
+                offset += written;
+                if (mSegmentWritten == mSegmentSamples) {
+                    closeSegment();
+                }
+            }
+        }
+
+        private void closeSegment() throws IOException {
+            WavWriter writer = mSegmentWriter;
+            mSegmentWriter = null;
+            writer.close();
+
+            long startMs = mSegmentStart * 1000 / mSamplesPerSecond;
+            long durationMs = mSegmentWritten * 1000 / mSamplesPerSecond;
+            mSegmentSink.onSegment(
+                    new RecordSegment(mSegmentCount, mSegmentFile, startMs, durationMs));
+
+            ++mSegmentCount;
+            mSegmentStart += mSegmentWritten;
+            mSegmentWritten = 0;
+        }
+
+        /**
+         * Publishes the last, partial segment.
+         *
+         * @return false if it could not be written.
+         */
+        private boolean finishSegments() {
+            boolean succeeded = true;
+            if (mSegmentWriter != null) {
+                try {
+                    closeSegment();
+                } catch (IOException e) {
+                    PlayerLog.e(TAG, "Close segment failed.", e);
+                    mSegmentFile.delete();
+                    succeeded = false;
+                }
+            }
+
+            mSegmentSink.onFinished(mSegmentCount, !succeeded);
+            return succeeded;
+        }
+    }
+
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private int mAudioSource = MediaRecorder.AudioSource.MIC;
+    private int mSampleRate = DEFAULT_SAMPLE_RATE;
+    private int mChannelCount = DEFAULT_CHANNEL_COUNT;
+    private int mBufferMillis = DEFAULT_BUFFER_MILLIS;
+    private int mLevelIntervalMs = DEFAULT_LEVEL_INTERVAL_MS;
+    private LevelListener mLevelListener;
+    private SegmentSink mSegmentSinkForNext;
+    private int mSegmentMillis;
+    private Session mSession;
+    private Session mFinishingSession;
+    private boolean mStartPending;
+
+    private final Runnable mLevelRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Session session = mSession;
+            if (session == null) {
+                return;
+            }
+
+            if (mLevelListener != null) {
+                mLevelListener.onLevel(session.mPeak, session.mRms);
+            }
+
+            mMainHandler.postDelayed(this, mLevelIntervalMs);
+        }
+    };
+
+
+    public PcmAudioRecorder(RecorderListener listener) {
+        super(listener, null);
+    }
+
+    public PcmAudioRecorder(RecorderListener listener, RecordPermissionRequester requester) {
+        super(listener, requester);
+    }
+
+    /**
+     * Applies to the next recording.
+     *
+     * @param channelCount 1 or 2.
+     */
+    public void setFormat(int sampleRate, int channelCount) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+    }
+
+    public void setAudioSource(int audioSource) {
+        mAudioSource = audioSource;
+    }
+
+    /**
+     * Audio the ring can hold while storage stalls, applies to the next recording.
+     */
+    public void setBufferMillis(int bufferMillis) {
+        mBufferMillis = bufferMillis;
+    }
+
+    /**
+     * Enables segmented output for the next recording only: besides the output file, a
+     * WAV segment of {@code segmentMillis} is written as {@code <output>-<index>.wav} and
+     * handed to {@code sink} once closed. Null to disable.
+     */
+    public void setSegmentSink(SegmentSink sink, int segmentMillis) {
+        if (sink != null && segmentMillis <= 0) {
+            throw new IllegalArgumentException("Invalid segment duration.");
+        }
+
+        mSegmentSinkForNext = sink;
+        mSegmentMillis = segmentMillis;
+    }
+
+    public void setLevelListener(LevelListener listener, int intervalMs) {
+        mLevelListener = listener;
+        mLevelIntervalMs = Math.max(10, intervalMs);
+    }
+
+    @Override
+    public boolean startRecord(Context context) {
+        if (context instanceof Activity) {
+            Activity activity = (Activity) context;
+            String permission = Manifest.permission.RECORD_AUDIO;
+            if (ContextCompat.checkSelfPermission(activity, permission)
+                    != PackageManager.PERMISSION_GRANTED) {
+
+                if (mPermissionRequester != null) {
+                    mPermissionRequester.requestRecordPermission(new String[]{permission}, this);
+                    return true;
+                }
+            }
+        }
+
+        return startRecordInternal();
+    }
+
+    @Override
+    public void onPermissionRequested() {
+        startRecordInternal();
+    }
+
+    private boolean startRecordInternal() {
+        if (TextUtils.isEmpty(mOutputFile)) {
+            notifyError(RecorderListener.Error.NoAudioOutputFile);
+            return false;
+        }
+
+        if (mSession != null) {
+            stopRecord();
+        }
+
+        if (mFinishingSession != null) {
+            // Started in postFinished() of the old session.
+            mStartPending = true;
+            return true;
+        }
+
+        Session session = createSession();
+        if (session == null) {
+            notifyError(RecorderListener.Error.StartFailed);
+            return false;
+        }
+
+        mSession = session;
+        session.start();
+        mMainHandler.removeCallbacks(mLevelRunnable);
+        mMainHandler.postDelayed(mLevelRunnable, mLevelIntervalMs);
+
+        if (mListener != null) {
+            mListener.onStartRecord();
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates the 16 bit PCM {@link AudioRecord} of a recording, override to capture
+     * from elsewhere.
+     *
+     * @return null if the format is not supported.
+     */
+    protected AudioRecord createAudioRecord(int audioSource, int sampleRate, int channelConfig) {
+        int minBufferSize = AudioRecord.getMinBufferSize(
+                sampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            return null;
+        }
+
+        // Room for a few capture chunks, so a late capture thread loses nothing.
+        int channelCount = channelConfig == AudioFormat.CHANNEL_IN_STEREO ? 2 : 1;
+        int bytesPerSecond = sampleRate * channelCount * 2;
+        int bufferSize = Math.max(minBufferSize, bytesPerSecond * CAPTURE_CHUNK_MS * 4 / 1000);
+        return new AudioRecord(audioSource, sampleRate, channelConfig,
+                AudioFormat.ENCODING_PCM_16BIT, bufferSize);
+    }
+
+    private Session createSession() {
+        int channelConfig = mChannelCount == 2
+                ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int samplesPerSecond = mSampleRate * mChannelCount;
+        AudioRecord record = null;
+        WavWriter writer = null;
+        try {
+            record = createAudioRecord(mAudioSource, mSampleRate, channelConfig);
+            if (record == null) {
+                PlayerLog.e(TAG, "Unsupported record format.");
+                return null;
+            }
+
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                throw new IllegalStateException("AudioRecord not initialized.");
+            }
+
+            File file = new File(mOutputFile);
+            file.delete();
+            int writeChunk = Math.max(1, mSampleRate * WRITE_CHUNK_MS / 1000) * mChannelCount;
+            writer = new WavWriter(file, mSampleRate, mChannelCount, writeChunk);
+
+            record.startRecording();
+            if (record.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+                // E.g. the microphone is used by another app.
+                throw new IllegalStateException("AudioRecord not recording.");
+            }
+
+            return new Session(record, writer, samplesPerSecond, writeChunk);
+        } catch (Exception e) {
+            PlayerLog.e(TAG, "Start record failed.", e);
+            if (record != null) {
+                record.release();
+            }
+
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException closeError) {
+                    // Already failing.
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static File getSegmentFile(String path, int index) {
+        int dot = path.lastIndexOf('.');
+        if (dot > path.lastIndexOf(File.separatorChar)) {
+            path = path.substring(0, dot);
+        }
+
+        return new File(path + "-" + index + ".wav");
+    }
+
+    private void postError(final Session session, final RecorderListener.Error error) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (session == mSession) {
+                    stopRecord();
+                }
+
+                notifyError(error);
+            }
+        });
+    }
+
+    private void postFinished(final Session session) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (session == mSession) {
+                    // Stopped by itself, e.g. on a write error.
+                    mSession = null;
+                    mMainHandler.removeCallbacks(mLevelRunnable);
+                } else if (session == mFinishingSession) {
+                    mFinishingSession = null;
+                }
+
+                if (mListener != null) {
+                    mListener.onStopRecord();
+                }
+
+                if (mStartPending && mFinishingSession == null && mSession == null) {
+                    mStartPending = false;
+                    startRecordInternal();
+                }
+            }
+        });
+    }
+
+    private void notifyError(RecorderListener.Error error) {
+        if (mListener != null) {
+            mListener.onError(error);
+        }
+    }
+
+    /**
+     * Returns at once; the file is complete on {@link RecorderListener#onStopRecord()}.
+     */
+    @Override
+    public boolean stopRecord() {
+        if (mStartPending) {
+            // The recording waiting for the previous one never started.
+            mStartPending = false;
+            return true;
+        }
+
+        Session session = mSession;
+        if (session == null) {
+            return false;
+        }
+
+        mSession = null;
+        mFinishingSession = session;
+        mMainHandler.removeCallbacks(mLevelRunnable);
+        session.stop();
+        return true;
+    }
+
+    @Override
+    public boolean isRecording() {
+        return mSession != null || mStartPending;
+    }
+
+    @Override
+    public void destroy() {
+        stopRecord();
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.recorder;
+
+import java.io.File;
+
+/**
+ * A finished chunk of a segmented recording, a WAV file decodable on its own.
+ */
+public class RecordSegment {
+
+    private final int mIndex;
+    private final File mFile;
+    private final long mStartMs;
+    private final long mDurationMs;
+
+
+    public RecordSegment(int index, File file, long startMs, long durationMs) {
+        mIndex = index;
+        mFile = file;
+        mStartMs = startMs;
+        mDurationMs = durationMs;
+    }
+
+    /**
+     * @return 0 based position in the recording.
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return offset of the segment in the recording.
+     */
+    public long getStartMs() {
+        return mStartMs;
+    }
+
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.recorder;
+
+/**
+ * Receives the segments of a recording as soon as each one is closed, e.g. to upload
+ * while still recording. See {@link PcmAudioRecorder#setSegmentSink(SegmentSink, int)}.
+ * <p>
+ * Called on the writer thread of the recorder, in order; must return quickly and hand
+ * slow work such as network I/O to another thread. The segment files belong to the sink.
+ */
+public interface SegmentSink {
+
+    void onSegment(RecordSegment segment);
+
+    /**
+     * After the last segment.
+     *
+     * @param failed true if writing failed, the recording may miss its end.
+     */
+    void onFinished(int segmentCount, boolean failed);
+}
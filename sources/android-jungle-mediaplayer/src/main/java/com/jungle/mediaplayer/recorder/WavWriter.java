@@ -0,0 +1,124 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Writes 16 bit PCM to a WAV file. The sizes in the header are patched on
+ * {@link #close()}, until then they are 0.
+ */
+class WavWriter {
+
+    private static final int HEADER_SIZE = 44;
+
+
+    private final RandomAccessFile mFile;
+    private final byte[] mBuffer;
+    private long mDataBytes;
+
+
+    /**
+     * @param maxWriteSamples largest {@link #write} count, sizes the conversion buffer.
+     */
+    WavWriter(File file, int sampleRate, int channelCount, int maxWriteSamples)
+            throws IOException {
+
+        mBuffer = new byte[Math.max(HEADER_SIZE, maxWriteSamples * 2)];
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mFile.setLength(0);
+            writeHeader(sampleRate, channelCount);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param count at most the {@code maxWriteSamples} given to the constructor.
+     */
+    void write(short[] samples, int offset, int count) throws IOException {
+        byte[] buffer = mBuffer;
+        for (int i = 0, j = 0; i < count; ++i, j += 2) {
+            short sample = samples[offset + i];
+            buffer[j] = (byte) sample;
+            buffer[j + 1] = (byte) (sample >> 8);
+        }
+
+        mFile.write(buffer, 0, count * 2);
+        mDataBytes += count * 2;
+    }
+
+    long getDataBytes() {
+        return mDataBytes;
+    }
+
+    void close() throws IOException {
+        try {
+            long dataBytes = Math.min(mDataBytes, 0xFFFFFFFFL - (HEADER_SIZE - 8));
+            putInt(mBuffer, 0, (int) (dataBytes + HEADER_SIZE - 8));
+            mFile.seek(4);
+            mFile.write(mBuffer, 0, 4);
+
+            putInt(mBuffer, 0, (int) dataBytes);
+            mFile.seek(HEADER_SIZE - 4);
+            mFile.write(mBuffer, 0, 4);
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private void writeHeader(int sampleRate, int channelCount) throws IOException {
+        byte[] header = mBuffer;
+        putTag(header, 0, "RIFF");
+        putInt(header, 4, 0);
+        putTag(header, 8, "WAVE");
+        putTag(header, 12, "fmt ");
+        putInt(header, 16, 16);
+        putShort(header, 20, 1); // PCM
+        putShort(header, 22, channelCount);
+        putInt(header, 24, sampleRate);
+        putInt(header, 28, sampleRate * channelCount * 2);
+        putShort(header, 32, channelCount * 2);
+        putShort(header, 34, 16);
+        putTag(header, 36, "data");
+        putInt(header, 40, 0);
+        mFile.write(header, 0, HEADER_SIZE);
+    }
+
+    private static void putTag(byte[] buffer, int offset, String tag) {
+        for (int i = 0; i < 4; ++i) {
+            buffer[offset + i] = (byte) tag.charAt(i);
+        }
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -20,17 +20,24 @@ package com.jungle.mediaplayer.widgets;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.media.MediaPlayer;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.SurfaceView;
 import android.view.View;
 import com.jungle.mediaplayer.R;
 import com.jungle.mediaplayer.base.BaseMediaPlayerListener;
+import com.jungle.mediaplayer.base.PlaybackPositionStore;
+import com.jungle.mediaplayer.base.PlayerLog;
 import com.jungle.mediaplayer.base.VideoInfo;
 import com.jungle.mediaplayer.player.BaseMediaPlayer;
+import com.jungle.mediaplayer.player.PlaybackMetrics;
+import com.jungle.mediaplayer.player.PlaybackRecoveryEngine;
+import com.jungle.mediaplayer.player.RenditionSelector;
 import com.jungle.mediaplayer.player.SystemImplMediaPlayer;
 import com.jungle.mediaplayer.player.render.MediaRender;
 import com.jungle.mediaplayer.player.render.SurfaceViewMediaRender;
+import com.jungle.mediaplayer.proxy.StreamProxy;
 
 public class JungleMediaPlayer extends MediaPlayerFrame {
 
@@ -66,6 +73,8 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
     private boolean mAutoReloadWhenError = false;
     private boolean mIsReload = false;
     private PlayVideoInfo mSavedVideoInfo;
+    private PlaybackRecoveryEngine mRecoveryEngine;
+    private int mRecoveryPosition;
 
 
     public JungleMediaPlayer(Context context) {
@@ -101,7 +110,9 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
             @Override
             public void onClick(View v) {
                 int position = mBottomControl.getPlayPosition();
-                Log.e(TAG, String.format("Will Replay Media From Position: %d.", position));
+                if (PlayerLog.isLoggable(Log.INFO)) {
+                    PlayerLog.i(TAG, "Will Replay Media From Position: " + position + ".");
+                }
                 mPlayerListener.onReplayMedia(position);
             }
         });
@@ -119,18 +130,101 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
     }
 
     public void setPlayerListener(Listener listener) {
+        if (mPlayerListener != null) {
+            mMediaPlayer.removePlayerListener(mPlayerListener);
+        }
+
         mPlayerListener = listener;
         mMediaPlayer.addPlayerListener(listener);
     }
 
+    public void setWorkerThreadMode(boolean enable) {
+        if (mMediaPlayer instanceof SystemImplMediaPlayer) {
+            ((SystemImplMediaPlayer) mMediaPlayer).setWorkerThreadMode(enable);
+        }
+    }
+
+    public void setStreamProxy(StreamProxy proxy) {
+        if (mMediaPlayer instanceof SystemImplMediaPlayer) {
+            ((SystemImplMediaPlayer) mMediaPlayer).setStreamProxy(proxy);
+        }
+    }
+
+    public void setPlaybackMetrics(PlaybackMetrics metrics) {
+        mMediaPlayer.setPlaybackMetrics(metrics);
+    }
+
+    public void setRenditionSelector(RenditionSelector selector) {
+        mMediaPlayer.setRenditionSelector(selector);
+    }
+
+    public void setPositionStore(PlaybackPositionStore store) {
+        mMediaPlayer.setPositionStore(store);
+    }
+
     public void setAutoReloadWhenError(boolean autoReload) {
         mAutoReloadWhenError = autoReload;
     }
 
+    /**
+     * With a recovery engine, retryable errors are reloaded internally on the current
+     * render, {@link Listener#onReloadFromPosition(int)} is no longer called. Pass null
+     * to go back to {@link #setAutoReloadWhenError(boolean)}.
+     */
+    public void setRecoveryEngine(PlaybackRecoveryEngine engine) {
+        removeCallbacks(mRecoveryRunnable);
+        mRecoveryEngine = engine;
+    }
+
+    public PlaybackRecoveryEngine getRecoveryEngine() {
+        return mRecoveryEngine;
+    }
+
+    private boolean tryRecover(int what, int extra) {
+        if (mRecoveryEngine == null
+                || mSavedVideoInfo == null
+                || !mRecoveryEngine.isRetryable(what, extra)) {
+            return false;
+        }
+
+        long delay = mRecoveryEngine.nextRetryDelay();
+        if (delay < 0) {
+            PlayerLog.w(TAG, "Recovery Attempts Exhausted, Will Show Error!");
+            return false;
+        }
+
+        mRecoveryPosition = mBottomControl.getPlayPosition();
+        if (mRecoveryPosition <= 0) {
+            // Failed before playing, keep the requested start position.
+            mRecoveryPosition = mSavedVideoInfo.mVideoInfo.getCurrentPosition();
+        }
+
+        if (PlayerLog.isLoggable(Log.INFO)) {
+            PlayerLog.i(TAG, "Will Recover From Position: " + mRecoveryPosition
+                    + " in " + delay + "ms, attempt = " + mRecoveryEngine.getAttempts() + ".");
+        }
+
+        showLoading(false);
+        removeCallbacks(mRecoveryRunnable);
+        postDelayed(mRecoveryRunnable, delay);
+        return true;
+    }
+
+    private Runnable mRecoveryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Reload on the same player and render, controls are left as they are.
+            VideoInfo info = mSavedVideoInfo.mVideoInfo;
+            info.setCurrentPosition(mRecoveryPosition);
+            mIsReload = true;
+            mMediaPlayer.play(info);
+        }
+    };
+
     private Runnable mAutoReloadWaitingRunnable = new Runnable() {
         @Override
         public void run() {
-            Log.e(TAG, "Auto-Reload Failed, Will Show Error!");
+            PlayerLog.w(TAG, "Auto-Reload Failed, Will Show Error!");
             showError(true);
         }
     };
@@ -148,28 +242,40 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
 
         @Override
         public void onLoadFailed() {
-            showError(true);
+            if (!tryRecover(MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_TIMED_OUT)) {
+                showError(true);
+            }
         }
 
         @Override
         public void onFinishLoading() {
+            if (mRecoveryEngine != null) {
+                mRecoveryEngine.onRecovered();
+            }
+
             hideLoading();
             mBottomControl.switchViewState(mIsFullscreen);
         }
 
         @Override
         public void onError(int what, boolean canReload, String message) {
-            if (mAutoReloadWhenError && canReload) {
+            if (mRecoveryEngine != null) {
+                if (!canReload || !tryRecover(what, mMediaPlayer.getLastErrorExtra())) {
+                    showError(true);
+                }
+            } else if (mAutoReloadWhenError && canReload) {
                 mIsReload = true;
                 showLoading(false);
 
                 int playPosition = mBottomControl.getPlayPosition();
-                Log.e(TAG, String.format("Error! But Will Auto-Reload, playPosition = %d!!!", playPosition));
+                if (PlayerLog.isLoggable(Log.WARN)) {
+                    PlayerLog.w(TAG, "Error! But Will Auto-Reload, playPosition = " + playPosition + "!!!");
+                }
                 mPlayerListener.onReloadFromPosition(playPosition);
 
                 postDelayed(mAutoReloadWaitingRunnable, 20 * 1000);
             } else {
-                Log.e(TAG, "Error! But Not Auto-Reload, Will Show Error!");
+                PlayerLog.w(TAG, "Error! But Not Auto-Reload, Will Show Error!");
                 showError(true);
             }
         }
@@ -210,6 +316,7 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
         super.destroy();
 
         removeCallbacks(mAutoReloadWaitingRunnable);
+        removeCallbacks(mRecoveryRunnable);
         mMediaPlayer.destroy();
     }
 
@@ -227,11 +334,23 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
         playMediaInternal();
     }
 
+    public void preloadMedia(VideoInfo info) {
+        mMediaPlayer.preload(info);
+    }
+
+    public void cancelPreload() {
+        mMediaPlayer.cancelPreload();
+    }
+
     private void playMediaInternal() {
         unScheduleAuditionCheck();
         mBottomControl.prepareForPlay();
         mGestureController.prepareForPlay();
         removeCallbacks(mAutoReloadWaitingRunnable);
+        removeCallbacks(mRecoveryRunnable);
+        if (mRecoveryEngine != null) {
+            mRecoveryEngine.reset();
+        }
 
         if (!VideoInfo.validate(mSavedVideoInfo.mVideoInfo)) {
             showError(true);
@@ -258,6 +377,15 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
         mMediaPlayer.setVolume(volume);
     }
 
+    @Override
+    public void setPlaybackSpeed(float speed) {
+        mMediaPlayer.setPlaybackSpeed(speed);
+    }
+
+    public float getPlaybackSpeed() {
+        return mMediaPlayer.getPlaybackSpeed();
+    }
+
     @Override
     public int getDuration() {
         return mMediaPlayer.getDuration();
@@ -327,6 +455,11 @@ public class JungleMediaPlayer extends MediaPlayerFrame {
         mMediaPlayer.addPlayerListener(listener);
     }
 
+    @Override
+    public void removePlayerListener(BaseMediaPlayerListener listener) {
+        mMediaPlayer.removePlayerListener(listener);
+    }
+
     @Override
     protected void toggleFullScreen(boolean isFullscreen, boolean reverseOrientation) {
         mPlayerListener.onToggleFullscreen(mIsFullscreen, reverseOrientation);
@@ -28,7 +28,6 @@ import android.hardware.SensorManager;
 import android.media.AudioManager;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
@@ -39,6 +38,7 @@ import com.jungle.mediaplayer.base.BaseMediaPlayerInterface;
 import com.jungle.mediaplayer.base.BaseMediaPlayerListener;
 import com.jungle.mediaplayer.base.MediaPlayerUtils;
 import com.jungle.mediaplayer.base.MediaSize;
+import com.jungle.mediaplayer.base.PlayerLog;
 import com.jungle.mediaplayer.base.ScreenOrientationSwitcher;
 import com.jungle.mediaplayer.widgets.control.MediaPlayerGestureController;
 import com.jungle.mediaplayer.widgets.control.PlayerBottomControl;
@@ -178,7 +178,7 @@ public abstract class MediaPlayerFrame extends FrameLayout
 
     @Override
     public void destroy() {
-        Log.e(TAG, "MediaPlayer Will **Destroy**!!");
+        PlayerLog.d(TAG, "MediaPlayer Will **Destroy**!!");
 
         unScheduleAuditionCheck();
         unScheduleHideTitleBar();
@@ -192,6 +192,12 @@ public abstract class MediaPlayerFrame extends FrameLayout
 
     public abstract void addPlayerListener(BaseMediaPlayerListener listener);
 
+    /**
+     * Does nothing by default, override with {@link #addPlayerListener}.
+     */
+    public void removePlayerListener(BaseMediaPlayerListener listener) {
+    }
+
     protected abstract void toggleFullScreen(boolean isFullscreen, boolean reverseOrientation);
 
     protected abstract void updateMediaSize(int width, int height);
@@ -0,0 +1,140 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import com.jungle.mediaplayer.Benchmarks;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimeStretcherTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNEL_COUNT = 2;
+    private static final int SECONDS = 20;
+    private static final int CHUNK_FRAMES = 1024;
+
+
+    @Test
+    public void testIdentityAtNormalSpeed() {
+        short[] input = createInput(SAMPLE_RATE * 2);
+        short[] output = new short[input.length * 2];
+        TimeStretcher stretcher = new TimeStretcher(SAMPLE_RATE, CHANNEL_COUNT);
+
+        int frames = stretch(stretcher, input, output);
+        assertEquals(input.length / CHANNEL_COUNT, frames);
+
+        short[] played = new short[input.length];
+        System.arraycopy(output, 0, played, 0, played.length);
+        assertArrayEquals(input, played);
+    }
+
+    @Test
+    public void testOutputLength() {
+        short[] input = createInput(SAMPLE_RATE * 4);
+        int inputFrames = input.length / CHANNEL_COUNT;
+        TimeStretcher stretcher = new TimeStretcher(SAMPLE_RATE, CHANNEL_COUNT);
+        for (float speed : new float[] {TimeStretcher.MIN_SPEED, 1.5f, 2f, TimeStretcher.MAX_SPEED}) {
+            stretcher.reset();
+            stretcher.setSpeed(speed);
+            int frames = stretch(stretcher, input, null);
+            int expected = (int) (inputFrames / speed);
+            assertTrue("Speed " + speed + ": " + frames + " frames, expected " + expected,
+                    Math.abs(frames - expected) < SAMPLE_RATE / 20);
+            assertEquals(inputFrames, stretcher.getInputPosition());
+        }
+    }
+
+    /**
+     * Benchmark: stretching has to run well faster than real time to keep a track fed.
+     */
+    @Test
+    public void testFasterThanRealTime() {
+        short[] input = createInput(SAMPLE_RATE * SECONDS);
+        TimeStretcher stretcher = new TimeStretcher(SAMPLE_RATE, CHANNEL_COUNT);
+        for (float speed : new float[] {0.5f, 1.5f, 2f}) {
+            for (int i = 0; i < 3; ++i) {
+                stretcher.reset();
+                stretcher.setSpeed(speed);
+                stretch(stretcher, input, null);
+            }
+
+            stretcher.reset();
+            stretcher.setSpeed(speed);
+            long startTime = System.nanoTime();
+            stretch(stretcher, input, null);
+            long elapsedMs = Math.max(1, (System.nanoTime() - startTime) / 1000000);
+
+            long realTimeFactor = SECONDS * 1000L / elapsedMs;
+            Benchmarks.report("TimeStretcher", "speed " + speed + ", " + SECONDS + " s stereo in "
+                    + elapsedMs + " ms, " + realTimeFactor + "x real time");
+            assertTrue("Only " + realTimeFactor + "x real time.", realTimeFactor >= 5);
+        }
+    }
+
+    private static short[] createInput(int frames) {
+        Random random = new Random(1);
+        short[] samples = new short[frames * CHANNEL_COUNT];
+        for (int i = 0; i < frames; ++i) {
+            double value = Math.sin(i * 2 * Math.PI * 220 / SAMPLE_RATE) * 8000
+                    + Math.sin(i * 2 * Math.PI * 1234 / SAMPLE_RATE) * 3000
+                    + random.nextGaussian() * 500;
+            samples[i * 2] = (short) value;
+            samples[i * 2 + 1] = (short) (value * 0.7);
+        }
+
+        return samples;
+    }
+
+    /**
+     * Feeds {@code input} in chunks as the audio thread does.
+     *
+     * @return output frames, copied to {@code output} if not null.
+     */
+    private static int stretch(TimeStretcher stretcher, short[] input, short[] output) {
+        short[] buffer = new short[CHUNK_FRAMES * 2 * CHANNEL_COUNT];
+        int inputFrames = input.length / CHANNEL_COUNT;
+        int position = 0;
+        int outputFrames = 0;
+        while (!stretcher.isDrained()) {
+            if (position < inputFrames) {
+                position += stretcher.putInput(input, position * CHANNEL_COUNT,
+                        Math.min(CHUNK_FRAMES, inputFrames - position));
+                if (position >= inputFrames) {
+                    stretcher.finish();
+                }
+            }
+
+            int read;
+            while ((read = stretcher.receiveOutput(buffer, 0, CHUNK_FRAMES * 2)) > 0) {
+                if (output != null) {
+                    System.arraycopy(buffer, 0, output, outputFrames * CHANNEL_COUNT,
+                            read * CHANNEL_COUNT);
+                }
+
+                outputFrames += read;
+            }
+        }
+
+        return outputFrames;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.audio;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WaveformExtractorTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int PEAK_COUNT = 100;
+
+
+    @Test
+    public void testKnownDurationKeepsPeakCount() {
+        WaveformExtractor extractor = new WaveformExtractor(PEAK_COUNT);
+        extractor.onFormat(SAMPLE_RATE, 2, 1000000);
+
+        // One quiet second, then decoder padding past the declared duration.
+        feed(extractor, 2, SAMPLE_RATE, (short) 1000);
+        feed(extractor, 2, 1024, (short) 30000);
+
+        Waveform waveform = extractor.getWaveform();
+        assertEquals(PEAK_COUNT, waveform.getPeakCount());
+        assertTrue(waveform.getMax(0) < 0.1f);
+        assertTrue(waveform.getMax(PEAK_COUNT - 2) < 0.1f);
+        assertTrue(waveform.getMax(PEAK_COUNT - 1) > 0.8f);
+        assertEquals(1128, waveform.getDurationMs());
+    }
+
+    @Test
+    public void testUnknownDurationMergesPeaks() {
+        WaveformExtractor extractor = new WaveformExtractor(PEAK_COUNT);
+        extractor.onFormat(SAMPLE_RATE, 1, -1);
+        feed(extractor, 1, SAMPLE_RATE * 3, (short) 1000);
+
+        int peakCount = extractor.getWaveform().getPeakCount();
+        assertTrue("Got " + peakCount + " peaks.",
+                peakCount >= PEAK_COUNT / 2 && peakCount <= PEAK_COUNT);
+    }
+
+    /**
+     * Feeds {@code frames} of a square wave of {@code amplitude}, in decoder sized chunks.
+     */
+    private static void feed(
+            WaveformExtractor extractor, int channelCount, int frames, short amplitude) {
+        short[] chunk = new short[512 * channelCount];
+        int position = 0;
+        while (position < frames) {
+            int count = Math.min(512, frames - position);
+            for (int i = 0; i < count; ++i) {
+                short sample = (position + i) % 2 == 0 ? amplitude : (short) -amplitude;
+                for (int c = 0; c < channelCount; ++c) {
+                    chunk[i * channelCount + c] = sample;
+                }
+            }
+
+            extractor.onSamples(ShortBuffer.wrap(chunk, 0, count * channelCount));
+            position += count;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackPositionStoreTest {
+
+    private File mDirectory;
+
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("positions", "");
+        assertTrue(mDirectory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testPersist() {
+        PlaybackPositionStore store = new PlaybackPositionStore(mDirectory);
+        store.setPosition("HTTP://Example.com:80/a.mp4#t=1", 1000);
+        store.setPosition("http://example.com/b.mp4", 2000);
+        store.remove("http://example.com/b.mp4");
+        store.close();
+
+        store = new PlaybackPositionStore(mDirectory);
+        assertEquals(1000, store.getPosition("http://example.com/a.mp4"));
+        assertEquals(0, store.getPosition("http://example.com/b.mp4"));
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testCompactionKeepsLatestPositions() throws InterruptedException {
+        final PlaybackPositionStore store = new PlaybackPositionStore(mDirectory);
+        store.setFlushDelay(0);
+
+        // Another thread keeps updating while flushes compact the log.
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 20000; ++i) {
+                    store.setPosition("http://example.com/other-" + (i % 10) + ".mp4", i);
+                }
+            }
+        });
+        writer.start();
+
+        for (int round = 0; round < 20; ++round) {
+            for (int i = 0; i < 100; ++i) {
+                store.setPosition("http://example.com/video-" + i + ".mp4", round * 1000 + i);
+            }
+
+            store.flush();
+        }
+
+        writer.join();
+        store.close();
+        assertTrue(new File(mDirectory, "positions.log").length() < 1024 * 1024);
+
+        PlaybackPositionStore reopened = new PlaybackPositionStore(mDirectory);
+        assertEquals(110, reopened.size());
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(19000 + i, reopened.getPosition("http://example.com/video-" + i + ".mp4"));
+        }
+
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(19990 + i, reopened.getPosition("http://example.com/other-" + i + ".mp4"));
+        }
+
+        reopened.close();
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.base;
+
+import com.jungle.mediaplayer.Benchmarks;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VideoInfoListTest {
+
+    private static final int VIDEO_COUNT = 500;
+    private static final int ROUNDS = 200;
+
+
+    @Test
+    public void testRoundTrip() {
+        List<VideoInfo> videos = buildPlaylist(20);
+        videos.add(new VideoInfo());
+        List<VideoInfo> decoded = VideoInfoList.decode(VideoInfoList.encode(videos));
+
+        assertEquals(videos.size(), decoded.size());
+        for (int i = 0; i < 20; ++i) {
+            assertSameVideo(videos.get(i), decoded.get(i));
+        }
+
+        assertNull(decoded.get(20).getStreamUrl());
+    }
+
+    /**
+     * Benchmark against parcelling each video on its own, emulated with the layout
+     * {@code Parcel} uses: UTF-16 strings and 4-byte ints.
+     */
+    @Test
+    public void testThroughput() throws IOException {
+        List<VideoInfo> videos = buildPlaylist(VIDEO_COUNT);
+        byte[] encoded = VideoInfoList.encode(videos);
+        byte[] baseline = encodeBaseline(videos);
+        for (int i = 0; i < ROUNDS; ++i) {
+            VideoInfoList.decode(VideoInfoList.encode(videos));
+            decodeBaseline(encodeBaseline(videos));
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            encoded = VideoInfoList.encode(videos);
+        }
+
+        long encodeNanos = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        List<VideoInfo> decoded = null;
+        for (int i = 0; i < ROUNDS; ++i) {
+            decoded = VideoInfoList.decode(encoded);
+        }
+
+        long decodeNanos = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            baseline = encodeBaseline(videos);
+        }
+
+        long baselineEncodeNanos = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            decodeBaseline(baseline);
+        }
+
+        long baselineDecodeNanos = System.nanoTime() - startTime;
+        Benchmarks.report("VideoInfoList", VIDEO_COUNT + " videos: " + encoded.length
+                + " bytes, encode " + encodeNanos / ROUNDS / 1000
+                + " us, decode " + decodeNanos / ROUNDS / 1000 + " us");
+        Benchmarks.report("VideoInfo per object", VIDEO_COUNT + " videos: " + baseline.length
+                + " bytes, encode " + baselineEncodeNanos / ROUNDS / 1000
+                + " us, decode " + baselineDecodeNanos / ROUNDS / 1000 + " us");
+
+        assertEquals(VIDEO_COUNT, decoded.size());
+        assertSameVideo(videos.get(VIDEO_COUNT - 1), decoded.get(VIDEO_COUNT - 1));
+        assertTrue(encoded.length * 3 < baseline.length);
+    }
+
+    private static List<VideoInfo> buildPlaylist(int count) {
+        List<VideoInfo> videos = new ArrayList<>(count + 2);
+        for (int i = 0; i < count; ++i) {
+            String directory = "https://cdn" + (i % 3) + ".example.com/videos/2024/" + (i % 7) + "/";
+            List<Rendition> renditions = new ArrayList<>();
+            renditions.add(new Rendition(directory + "video-" + i + "-360p.mp4", 800000, 640, 360));
+            renditions.add(new Rendition(directory + "video-" + i + "-720p.mp4", 2500000, 1280, 720));
+            renditions.add(new Rendition(directory + "video-" + i + "-1080p.mp4", 5000000, 1920, 1080));
+
+            VideoInfo info = new VideoInfo(renditions);
+            info.selectRendition(info.getRenditions().get(i % 3));
+            info.setCurrentPosition(i * 1000);
+            videos.add(info);
+        }
+
+        return videos;
+    }
+
+    private static void assertSameVideo(VideoInfo expected, VideoInfo actual) {
+        assertEquals(expected.getStreamUrl(), actual.getStreamUrl());
+        assertEquals(expected.getCurrentPosition(), actual.getCurrentPosition());
+        assertEquals(expected.getRenditions().size(), actual.getRenditions().size());
+        for (int i = 0; i < expected.getRenditions().size(); ++i) {
+            Rendition rendition = expected.getRenditions().get(i);
+            Rendition actualRendition = actual.getRenditions().get(i);
+            assertEquals(rendition.getUrl(), actualRendition.getUrl());
+            assertEquals(rendition.getBitrate(), actualRendition.getBitrate());
+            assertEquals(rendition.getWidth(), actualRendition.getWidth());
+            assertEquals(rendition.getHeight(), actualRendition.getHeight());
+        }
+
+        int selected = expected.getRenditions().indexOf(expected.getSelectedRendition());
+        assertSame(actual.getRenditions().get(selected), actual.getSelectedRendition());
+    }
+
+    private static byte[] encodeBaseline(List<VideoInfo> videos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(videos.size());
+        for (VideoInfo info : videos) {
+            writeString(output, info.getStreamUrl());
+            output.writeInt(info.getCurrentPosition());
+            List<Rendition> renditions = info.getRenditions();
+            output.writeInt(renditions.size());
+            for (Rendition rendition : renditions) {
+                output.writeInt(1);
+                writeString(output, rendition.getUrl());
+                output.writeInt(rendition.getBitrate());
+                output.writeInt(rendition.getWidth());
+                output.writeInt(rendition.getHeight());
+            }
+
+            output.writeInt(renditions.indexOf(info.getSelectedRendition()));
+        }
+
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static List<VideoInfo> decodeBaseline(byte[] data) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        int count = input.readInt();
+        List<VideoInfo> videos = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            String url = readString(input);
+            int position = input.readInt();
+            int renditionCount = input.readInt();
+            List<Rendition> renditions = new ArrayList<>(renditionCount);
+            for (int j = 0; j < renditionCount; ++j) {
+                input.readInt();
+                renditions.add(new Rendition(readString(input),
+                        input.readInt(), input.readInt(), input.readInt()));
+            }
+
+            int selected = input.readInt();
+            VideoInfo info = renditions.isEmpty() ? new VideoInfo(url) : new VideoInfo(renditions);
+            if (selected >= 0) {
+                info.selectRendition(info.getRenditions().get(selected));
+            }
+
+            info.setCurrentPosition(position);
+            videos.add(info);
+        }
+
+        return videos;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeInt(value.length());
+        output.writeChars(value);
+        if ((value.length() & 1) == 0) {
+            // Terminator and padding to 4 bytes, as Parcel does.
+            output.writeInt(0);
+        } else {
+            output.writeShort(0);
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i) {
+            chars[i] = input.readChar();
+        }
+
+        if ((length & 1) == 0) {
+            input.readInt();
+        } else {
+            input.readShort();
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.hls;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HlsPlaylistRewriterTest {
+
+    private static final HlsPlaylistRewriter.UrlMapper PROXY_MAPPER =
+            new HlsPlaylistRewriter.UrlMapper() {
+                @Override
+                public String map(String absoluteUrl) {
+                    return "proxy:" + absoluteUrl;
+                }
+            };
+
+
+    @Test
+    public void testRewrite() {
+        String playlist = "#EXTM3U\r\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"key.bin\",IV=0x1\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                + "#EXTINF:6.0,\n"
+                + "a.ts\n"
+                + "\n"
+                + "#EXTINF:6.0,\n"
+                + "http://cdn.example.com/b.ts\n";
+
+        assertEquals("#EXTM3U\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"http://example.com/hls/key.bin\",IV=0x1\n"
+                + "#EXT-X-MAP:URI=\"proxy:http://example.com/hls/init.mp4\"\n"
+                + "#EXTINF:6.0,\n"
+                + "proxy:http://example.com/hls/a.ts\n"
+                + "\n"
+                + "#EXTINF:6.0,\n"
+                + "proxy:http://cdn.example.com/b.ts\n",
+                HlsPlaylistRewriter.rewrite(playlist, "http://example.com/hls/index.m3u8",
+                        PROXY_MAPPER));
+    }
+}
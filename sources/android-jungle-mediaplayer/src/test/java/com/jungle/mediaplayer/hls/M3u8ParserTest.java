@@ -0,0 +1,165 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.hls;
+
+import com.jungle.mediaplayer.Benchmarks;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class M3u8ParserTest {
+
+    private static final int SEGMENT_COUNT = 10000;
+    private static final int ROUNDS = 20;
+
+
+    private static class CountingHandler implements M3u8Parser.Handler {
+
+        int mVariants;
+        int mBandwidth;
+        int mWidth;
+        int mHeight;
+        int mSegments;
+        long mDurationUs;
+        boolean mEndList;
+
+        @Override
+        public void onVariant(int bandwidth, int width, int height, byte[] uri, int offset, int length) {
+            ++mVariants;
+            mBandwidth = bandwidth;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void onTargetDuration(int seconds) {
+        }
+
+        @Override
+        public void onMediaSequence(long sequence) {
+        }
+
+        @Override
+        public void onSegment(long durationUs, byte[] uri, int offset, int length) {
+            ++mSegments;
+            mDurationUs += durationUs;
+        }
+
+        @Override
+        public void onEndList() {
+            mEndList = true;
+        }
+    }
+
+
+    @Test
+    public void testVariantAttributes() throws IOException {
+        CountingHandler handler = new CountingHandler();
+        new M3u8Parser().parse(stream("#EXTM3U\n"
+                + "#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=800000,BANDWIDTH=1280000,"
+                + "FRAME-RESOLUTION=1x1,RESOLUTION=1280x720\n"
+                + "720p.m3u8\n"), handler);
+
+        assertEquals(1, handler.mVariants);
+        assertEquals(1280000, handler.mBandwidth);
+        assertEquals(1280, handler.mWidth);
+        assertEquals(720, handler.mHeight);
+    }
+
+    @Test
+    public void testAverageBandwidthOnly() throws IOException {
+        CountingHandler handler = new CountingHandler();
+        new M3u8Parser().parse(stream("#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=800000\n"
+                + "low.m3u8\n"), handler);
+
+        assertEquals(1, handler.mVariants);
+        assertEquals(0, handler.mBandwidth);
+    }
+
+    @Test
+    public void testMediaPlaylist() throws IOException {
+        HlsMediaPlaylist playlist = HlsMediaPlaylist.parse(
+                stream(buildMediaPlaylist(100)), "http://example.com/hls/index.m3u8");
+
+        assertEquals(100, playlist.getSegmentCount());
+        assertTrue(playlist.isEndList());
+        assertEquals("http://example.com/hls/segment-42.ts", playlist.getSegmentUrl(42));
+        assertEquals(42, playlist.getSegmentIndex(42 * 6006000L + 1));
+    }
+
+    /**
+     * Benchmark: a 10k-segment playlist parses without per-line allocations.
+     */
+    @Test
+    public void testParseLargePlaylist() throws IOException {
+        byte[] playlist = buildMediaPlaylist(SEGMENT_COUNT).getBytes("UTF-8");
+        M3u8Parser parser = new M3u8Parser();
+        CountingHandler handler = new CountingHandler();
+        ByteArrayInputStream input = new ByteArrayInputStream(playlist);
+        for (int i = 0; i < ROUNDS; ++i) {
+            input.reset();
+            parser.parse(input, handler);
+        }
+
+        handler = new CountingHandler();
+        long startBytes = Benchmarks.allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            input.reset();
+            parser.parse(input, handler);
+        }
+
+        long elapsed = (System.nanoTime() - startTime) / ROUNDS;
+        long allocated = (Benchmarks.allocatedBytes() - startBytes) / ROUNDS;
+
+        assertEquals(SEGMENT_COUNT * ROUNDS, handler.mSegments);
+        assertEquals(SEGMENT_COUNT * ROUNDS * 6006000L, handler.mDurationUs);
+        Benchmarks.report("M3u8Parser", SEGMENT_COUNT + " segments, " + playlist.length
+                + " bytes: " + elapsed / 1000 + " us/parse, " + allocated + " bytes/parse");
+
+        if (startBytes >= 0) {
+            assertTrue("Allocated " + allocated + " bytes per parse.", allocated < 1024);
+        }
+
+        startTime = System.nanoTime();
+        HlsMediaPlaylist mediaPlaylist = HlsMediaPlaylist.parse(
+                parser, new ByteArrayInputStream(playlist), "http://example.com/hls/index.m3u8");
+        Benchmarks.report("HlsMediaPlaylist", SEGMENT_COUNT + " segments: "
+                + (System.nanoTime() - startTime) / 1000 + " us/parse");
+        assertEquals(SEGMENT_COUNT, mediaPlaylist.getSegmentCount());
+    }
+
+    private static String buildMediaPlaylist(int segmentCount) {
+        StringBuilder builder = new StringBuilder(segmentCount * 40);
+        builder.append("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:7\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        for (int i = 0; i < segmentCount; ++i) {
+            builder.append("#EXTINF:6.006,\nsegment-").append(i).append(".ts\n");
+        }
+
+        return builder.append("#EXT-X-ENDLIST\n").toString();
+    }
+
+    private static ByteArrayInputStream stream(String text) throws IOException {
+        return new ByteArrayInputStream(text.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.player;
+
+import com.jungle.mediaplayer.Benchmarks;
+import com.jungle.mediaplayer.base.PlaylistMediaPlayerListener;
+import com.jungle.mediaplayer.base.VideoInfo;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * On the JVM {@code Looper.myLooper()} and the main looper are both null, so every
+ * dispatch is delivered inline, as on the main thread.
+ */
+public class PlayerListenerRegistryTest {
+
+    private static final int LISTENER_COUNT = 10;
+    private static final int EVENT_COUNT = 100000;
+
+
+    private static class CountingListener implements PlaylistMediaPlayerListener {
+
+        int mEvents;
+        int mLastIndex = -2;
+        VideoInfo mLastVideoInfo;
+
+        @Override public void onLoading() { ++mEvents; }
+        @Override public void onLoadFailed() { ++mEvents; }
+        @Override public void onFinishLoading() { ++mEvents; }
+        @Override public void onError(int what, boolean canReload, String message) { ++mEvents; }
+        @Override public void onStartPlay() { ++mEvents; }
+        @Override public void onPlayComplete() { ++mEvents; }
+        @Override public void onStartSeek() { ++mEvents; }
+        @Override public void onSeekComplete() { ++mEvents; }
+        @Override public void onResumed() { ++mEvents; }
+        @Override public void onPaused() { ++mEvents; }
+        @Override public void onStopped() { ++mEvents; }
+
+        @Override
+        public void onItemStarted(int index, VideoInfo videoInfo) {
+            ++mEvents;
+            mLastIndex = index;
+            mLastVideoInfo = videoInfo;
+        }
+
+        @Override
+        public void onItemCompleted(int index, VideoInfo videoInfo) {
+            ++mEvents;
+            mLastIndex = index;
+            mLastVideoInfo = videoInfo;
+        }
+
+        @Override
+        public void onPlaylistCompleted() {
+            ++mEvents;
+        }
+    }
+
+
+    @Test
+    public void testAddRemove() {
+        PlayerListenerRegistry registry = new PlayerListenerRegistry();
+        CountingListener listener = new CountingListener();
+        assertTrue(registry.add(listener));
+        assertFalse(registry.add(listener));
+        assertEquals(1, registry.size());
+
+        registry.dispatch(PlayerListenerRegistry.EVENT_PAUSED);
+        assertEquals(1, listener.mEvents);
+
+        assertTrue(registry.remove(listener));
+        assertFalse(registry.remove(listener));
+        registry.dispatch(PlayerListenerRegistry.EVENT_PAUSED);
+        assertEquals(1, listener.mEvents);
+    }
+
+    @Test
+    public void testPlaylistEvents() {
+        PlayerListenerRegistry registry = new PlayerListenerRegistry();
+        CountingListener listener = new CountingListener();
+        registry.add(listener);
+
+        VideoInfo videoInfo = new VideoInfo("http://example.com/1.mp4");
+        registry.dispatch(PlayerListenerRegistry.EVENT_ITEM_STARTED, 3, videoInfo);
+        assertEquals(3, listener.mLastIndex);
+        assertSame(videoInfo, listener.mLastVideoInfo);
+
+        registry.dispatch(PlayerListenerRegistry.EVENT_PLAYLIST_COMPLETED, -1, null);
+        assertEquals(2, listener.mEvents);
+    }
+
+    /**
+     * Benchmark: dispatching to 10 listeners must allocate nothing per event.
+     */
+    @Test
+    public void testDispatchAllocatesNothing() {
+        PlayerListenerRegistry registry = new PlayerListenerRegistry();
+        CountingListener[] listeners = new CountingListener[LISTENER_COUNT];
+        for (int i = 0; i < LISTENER_COUNT; ++i) {
+            listeners[i] = new CountingListener();
+            registry.add(listeners[i]);
+        }
+
+        VideoInfo videoInfo = new VideoInfo("http://example.com/1.mp4");
+        for (int i = 0; i < EVENT_COUNT; ++i) {
+            dispatchAll(registry, videoInfo);
+        }
+
+        long startBytes = Benchmarks.allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; ++i) {
+            dispatchAll(registry, videoInfo);
+        }
+
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = Benchmarks.allocatedBytes() - startBytes;
+
+        int events = EVENT_COUNT * 3;
+        assertEquals((long) events * 2, listeners[LISTENER_COUNT - 1].mEvents);
+        Benchmarks.report("PlayerListenerRegistry", events + " events to " + LISTENER_COUNT
+                + " listeners, " + elapsed / events + " ns/event, " + allocated + " bytes");
+
+        if (startBytes >= 0) {
+            // Leaves room for the measuring itself, far below one object per event.
+            assertTrue("Allocated " + allocated + " bytes.", allocated < 4096);
+        }
+    }
+
+    private static void dispatchAll(PlayerListenerRegistry registry, VideoInfo videoInfo) {
+        registry.dispatch(PlayerListenerRegistry.EVENT_PAUSED);
+        registry.dispatch(PlayerListenerRegistry.EVENT_ERROR, 1, true, "error");
+        registry.dispatch(PlayerListenerRegistry.EVENT_ITEM_STARTED, 1, videoInfo);
+    }
+}
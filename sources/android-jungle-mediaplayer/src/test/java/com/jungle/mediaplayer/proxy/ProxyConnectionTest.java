@@ -0,0 +1,201 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.proxy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link StreamProxy} against an embedded origin server.
+ */
+public class ProxyConnectionTest {
+
+    private static final int CONTENT_LENGTH = 300 * 1024 + 123;
+    private static final String PATH = "/video.mp4";
+
+
+    private final byte[] mContent = new byte[CONTENT_LENGTH];
+    private final AtomicInteger mOriginRequests = new AtomicInteger();
+    private HttpServer mOrigin;
+    private String mOriginUrl;
+    private File mCacheDir;
+    private StreamProxy mProxy;
+
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < CONTENT_LENGTH; ++i) {
+            mContent[i] = (byte) (i * 31 + (i >> 8));
+        }
+
+        mOrigin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mOrigin.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serveOrigin(exchange);
+            }
+        });
+        mOrigin.start();
+        mOriginUrl = "http://127.0.0.1:" + mOrigin.getAddress().getPort() + PATH;
+
+        mCacheDir = File.createTempFile("proxy", "cache");
+        assertTrue(mCacheDir.delete());
+        mProxy = new StreamProxy(new FileProxyCache(mCacheDir));
+        mProxy.start();
+    }
+
+    @After
+    public void tearDown() {
+        mProxy.shutdown();
+        mOrigin.stop(0);
+
+        File[] files = mCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        mCacheDir.delete();
+    }
+
+    @Test
+    public void testFullRequest() throws IOException {
+        HttpURLConnection connection = openProxy(null);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(String.valueOf(CONTENT_LENGTH), connection.getHeaderField("Content-Length"));
+        assertArrayEquals(mContent, readAll(connection));
+
+        assertEquals(CONTENT_LENGTH, mProxy.getNetworkBytes());
+        assertEquals(0, mProxy.getCacheBytes());
+    }
+
+    @Test
+    public void testRangedRequest() throws IOException {
+        HttpURLConnection connection = openProxy("bytes=1000-1999");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 1000-1999/" + CONTENT_LENGTH,
+                connection.getHeaderField("Content-Range"));
+        assertArrayEquals(slice(1000, 2000), readAll(connection));
+
+        connection = openProxy("bytes=" + (CONTENT_LENGTH - 10) + "-");
+        assertEquals(206, connection.getResponseCode());
+        assertArrayEquals(slice(CONTENT_LENGTH - 10, CONTENT_LENGTH), readAll(connection));
+
+        connection = openProxy("bytes=" + CONTENT_LENGTH + "-");
+        assertEquals(416, connection.getResponseCode());
+    }
+
+    @Test
+    public void testReplayCostsNoNetwork() throws IOException {
+        assertArrayEquals(mContent, readAll(openProxy(null)));
+        long networkBytes = mProxy.getNetworkBytes();
+        int originRequests = mOriginRequests.get();
+
+        assertArrayEquals(mContent, readAll(openProxy(null)));
+        assertArrayEquals(slice(5000, 6000), readAll(openProxy("bytes=5000-5999")));
+
+        assertEquals(networkBytes, mProxy.getNetworkBytes());
+        assertEquals(originRequests, mOriginRequests.get());
+        assertEquals(CONTENT_LENGTH + 1000, mProxy.getCacheBytes());
+    }
+
+    private HttpURLConnection openProxy(String range) throws IOException {
+        String proxyUrl = mProxy.getProxyUrl(mOriginUrl);
+        assertTrue(!proxyUrl.equals(mOriginUrl));
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(proxyUrl).openConnection();
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+
+        return connection;
+    }
+
+    private byte[] slice(int start, int end) {
+        byte[] result = new byte[end - start];
+        System.arraycopy(mContent, start, result, 0, result.length);
+        return result;
+    }
+
+    private static byte[] readAll(HttpURLConnection connection) throws IOException {
+        InputStream input = connection.getInputStream();
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, read);
+            }
+
+            return output.toByteArray();
+        } finally {
+            input.close();
+            connection.disconnect();
+        }
+    }
+
+    private void serveOrigin(HttpExchange exchange) throws IOException {
+        mOriginRequests.incrementAndGet();
+
+        int start = 0;
+        int end = CONTENT_LENGTH - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            int dash = range.indexOf('-');
+            start = Integer.parseInt(range.substring("bytes=".length(), dash));
+            if (dash + 1 < range.length()) {
+                end = Math.min(end, Integer.parseInt(range.substring(dash + 1)));
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "video/mp4");
+        if (range != null) {
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + end + "/" + CONTENT_LENGTH);
+        }
+
+        exchange.sendResponseHeaders(range != null ? 206 : 200, end - start + 1);
+        OutputStream output = exchange.getResponseBody();
+        try {
+            output.write(mContent, start, end - start + 1);
+        } catch (IOException e) {
+            // The proxy may stop reading early.
+        } finally {
+            exchange.close();
+        }
+    }
+}
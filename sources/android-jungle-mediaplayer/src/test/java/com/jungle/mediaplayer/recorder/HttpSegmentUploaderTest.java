@@ -0,0 +1,299 @@
+/**
+ * Android Jungle-MediaPlayer framework project.
+ *
+ * Copyright 2016 Arno Zhang <zyfgood12@163.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jungle.mediaplayer.recorder;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records from a fake microphone through {@link PcmAudioRecorder} and uploads the
+ * segments to an embedded HTTP server.
+ */
+public class HttpSegmentUploaderTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int SEGMENT_MILLIS = 500;
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int SEGMENT_SIZE =
+            WAV_HEADER_SIZE + SAMPLE_RATE * 2 * SEGMENT_MILLIS / 1000;
+
+
+    /**
+     * Produces a 440 Hz tone in real time, 20 ms per read.
+     */
+    private static class FakeAudioRecord extends AudioRecord {
+
+        private final int mSampleRate;
+        private long mFrames;
+        private volatile boolean mStopped;
+
+
+        FakeAudioRecord(int sampleRate, int channelConfig) {
+            super(MediaRecorder.AudioSource.MIC, sampleRate, channelConfig,
+                    AudioFormat.ENCODING_PCM_16BIT, 4096);
+            mSampleRate = sampleRate;
+        }
+
+        @Override
+        public int getState() {
+            return STATE_INITIALIZED;
+        }
+
+        @Override
+        public int getRecordingState() {
+            return mStopped ? RECORDSTATE_STOPPED : RECORDSTATE_RECORDING;
+        }
+
+        @Override
+        public void startRecording() {
+        }
+
+        @Override
+        public void stop() {
+            mStopped = true;
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public int read(short[] data, int offset, int size) {
+            if (mStopped) {
+                return 0;
+            }
+
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                return ERROR_INVALID_OPERATION;
+            }
+
+            int count = Math.min(size, mSampleRate / 50);
+            for (int i = 0; i < count; ++i) {
+                double phase = 2 * Math.PI * 440 * mFrames++ / mSampleRate;
+                data[offset + i] = (short) (Math.sin(phase) * 16000);
+            }
+
+            return count;
+        }
+    }
+
+
+    private static class FakeMicRecorder extends PcmAudioRecorder {
+
+        FakeMicRecorder() {
+            super(null);
+        }
+
+        @Override
+        protected AudioRecord createAudioRecord(
+                int audioSource, int sampleRate, int channelConfig) {
+            return new FakeAudioRecord(sampleRate, channelConfig);
+        }
+    }
+
+
+    /**
+     * Tells when the recorder has handed over its last segment.
+     */
+    private static class FinishAwareSink implements SegmentSink {
+
+        final SegmentSink mSink;
+        final CountDownLatch mFinished = new CountDownLatch(1);
+
+
+        FinishAwareSink(SegmentSink sink) {
+            mSink = sink;
+        }
+
+        @Override
+        public void onSegment(RecordSegment segment) {
+            mSink.onSegment(segment);
+        }
+
+        @Override
+        public void onFinished(int segmentCount, boolean failed) {
+            mSink.onFinished(segmentCount, failed);
+            mFinished.countDown();
+        }
+    }
+
+
+    private final List<Integer> mSegmentIndexes = new ArrayList<>();
+    private final List<Integer> mSegmentSizes = new ArrayList<>();
+    private final CountDownLatch mUploadFinished = new CountDownLatch(1);
+    private volatile int mRequestCount;
+    private volatile int mFinishedCount = -1;
+    private volatile int mResponseCode = 200;
+    private HttpServer mServer;
+    private String mUploadUrl;
+    private File mDirectory;
+
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/upload", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receive(exchange);
+            }
+        });
+        mServer.start();
+        mUploadUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/upload";
+
+        mDirectory = File.createTempFile("record", "");
+        assertTrue(mDirectory.delete());
+        assertTrue(mDirectory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testUploadWhileRecording() throws Exception {
+        FinishAwareSink sink = new FinishAwareSink(new HttpSegmentUploader(mUploadUrl));
+        File output = record(sink, 1700);
+        assertTrue(mUploadFinished.await(5, TimeUnit.SECONDS));
+
+        int segmentCount;
+        synchronized (mSegmentIndexes) {
+            segmentCount = mSegmentIndexes.size();
+            assertTrue("Got " + segmentCount + " segments.", segmentCount >= 3);
+            assertEquals(segmentCount, mFinishedCount);
+
+            long dataSize = 0;
+            for (int i = 0; i < segmentCount; ++i) {
+                assertEquals(i, (int) mSegmentIndexes.get(i));
+                int size = mSegmentSizes.get(i);
+                if (i < segmentCount - 1) {
+                    assertEquals(SEGMENT_SIZE, size);
+                }
+
+                dataSize += size - WAV_HEADER_SIZE;
+            }
+
+            // Segments together are exactly the whole recording.
+            assertEquals(WAV_HEADER_SIZE + dataSize, output.length());
+        }
+
+        // Uploaded segments are deleted, only the whole recording stays.
+        assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void testFailedUploadStopsAndCleansUp() throws Exception {
+        mResponseCode = 500;
+        HttpSegmentUploader uploader = new HttpSegmentUploader(mUploadUrl);
+        uploader.setMaxRetries(0);
+        FinishAwareSink sink = new FinishAwareSink(uploader);
+        record(sink, 1700);
+
+        // Segments after the failed one are dropped without a request.
+        File failedSegment = new File(mDirectory, "voice-0.wav");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mDirectory.listFiles().length > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(2, mDirectory.listFiles().length);
+        assertTrue(failedSegment.exists());
+        assertEquals(1, mRequestCount);
+        assertEquals(-1, mFinishedCount);
+    }
+
+    private File record(FinishAwareSink sink, long millis) throws Exception {
+        File output = new File(mDirectory, "voice.wav");
+        PcmAudioRecorder recorder = new FakeMicRecorder();
+        recorder.setFormat(SAMPLE_RATE, 1);
+        recorder.setOutputFile(output.getPath());
+        recorder.setSegmentSink(sink, SEGMENT_MILLIS);
+
+        assertTrue(recorder.startRecord(null));
+        Thread.sleep(millis);
+        recorder.stopRecord();
+        assertTrue(sink.mFinished.await(5, TimeUnit.SECONDS));
+        return output;
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        ++mRequestCount;
+        byte[] body = readAll(exchange.getRequestBody());
+        String index = exchange.getRequestHeaders().getFirst(
+                HttpSegmentUploader.HEADER_SEGMENT_INDEX);
+        String count = exchange.getRequestHeaders().getFirst(
+                HttpSegmentUploader.HEADER_SEGMENT_COUNT);
+        exchange.sendResponseHeaders(mResponseCode, -1);
+        exchange.close();
+        if (mResponseCode != 200) {
+            return;
+        }
+
+        if (index != null) {
+            synchronized (mSegmentIndexes) {
+                mSegmentIndexes.add(Integer.parseInt(index));
+                mSegmentSizes.add(body.length);
+            }
+        } else if (count != null) {
+            mFinishedCount = Integer.parseInt(count);
+            mUploadFinished.countDown();
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+
+        return output.toByteArray();
+    }
+}